@@ -0,0 +1,20 @@
+package splitmindq.caloriecounter.cache;
+
+/**
+ * Реализация хранилища регионов {@link DailyIntakeCache}.
+ */
+public enum CacheBackend {
+    /**
+     * Неограниченная {@link java.util.concurrent.ConcurrentHashMap} с TTL.
+     */
+    HEAP,
+    /**
+     * {@link CacheRegion}: ограничение по числу записей и памяти, LRU/TinyLFU, колесо таймеров.
+     */
+    BOUNDED,
+    /**
+     * {@link CacheRegion} плюс дисковый уровень на memory-mapped сегментах для регионов КБЖУ,
+     * переживающий перезапуск.
+     */
+    TIERED
+}
@@ -0,0 +1,32 @@
+package splitmindq.caloriecounter.cache;
+
+import lombok.Getter;
+
+/**
+ * Значение региона кэша со сроком истечения в монотонных наносекундах ({@link System#nanoTime()}).
+ * Хранит оценку удерживаемой памяти, посчитанную при вставке.
+ * Одновременно является узлом {@link TimerWheel}, по которому запись удаляется после истечения.
+ */
+final class CacheEntry<K, V> extends TimerWheel.Node {
+    @Getter
+    private final K key;
+    @Getter
+    private final V value;
+    @Getter
+    private final long weight;
+    /**
+     * Для записи уже запущено фоновое обновление. Защищено блокировкой хранилища.
+     */
+    boolean refreshing;
+
+    CacheEntry(K key, V value, long expiresAtNanos, long weight) {
+        this.key = key;
+        this.value = value;
+        this.weight = weight;
+        this.deadlineNanos = expiresAtNanos;
+    }
+
+    boolean isExpired(long nowNanos) {
+        return nowNanos - deadlineNanos >= 0L;
+    }
+}
@@ -0,0 +1,359 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Регион кэша, ограниченный числом записей и оценкой занимаемой памяти, с вытеснением за O(1).
+ * Порядок доступа хранится в {@link LinkedHashMap} с accessOrder, поэтому самая старая
+ * по обращению запись всегда находится в голове и удаляется без сортировки.
+ * При политике {@link EvictionPolicy#TINY_LFU} новая запись допускается в заполненный
+ * регион, только если обращений к ней было больше, чем к вытесняемой.
+ * Запись тяжелее {@value #MAX_ENTRY_BUDGET_DIVISOR}-й части бюджета не кэшируется вовсе,
+ * чтобы один пользователь с большой историей не вытеснил сотни легких записей.
+ * Истекшие записи удаляются через {@link TimerWheel} при вызове {@link #expire(long)}.
+ * Удаление записи продвигает поколение ключа ({@link GenerationCounters}), и значения,
+ * загруженные до удаления, отклоняются в {@link #put(Object, Object, long)}.
+ */
+final class CacheRegion<K, V> implements CacheStore<K, V> {
+    static final int MAX_ENTRY_BUDGET_DIVISOR = 10;
+
+    private final String name;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+    private final FrequencySketch sketch;
+    private final EntryWeigher<K, V> weigher;
+    private final RegionStats stats = new RegionStats();
+    private final GenerationCounters generations = new GenerationCounters();
+    private final LinkedHashMap<K, CacheEntry<K, V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final TimerWheel<CacheEntry<K, V>> timerWheel = new TimerWheel<>(System.nanoTime());
+    private final ReentrantLock lock = new ReentrantLock();
+    private long weightedSize;
+
+    CacheRegion(String name, DailyIntakeCacheProperties.Region settings, EntryWeigher<K, V> weigher) {
+        if (settings.getMaxEntries() <= 0) {
+            throw new IllegalArgumentException("Cache region " + name + " must allow at least one entry");
+        }
+        if (settings.getTtl() == null || settings.getTtl().isNegative() || settings.getTtl().isZero()) {
+            throw new IllegalArgumentException("Cache region " + name + " must have a positive ttl");
+        }
+        this.name = name;
+        this.maxEntries = settings.getMaxEntries();
+        this.maxWeight = settings.maxWeightBytes();
+        this.ttlNanos = settings.getTtl().toNanos();
+        this.refreshAheadNanos = settings.getRefreshAhead() == null ? 0L : settings.getRefreshAhead().toNanos();
+        this.weigher = weigher;
+        this.sketch = settings.getPolicy() == EvictionPolicy.TINY_LFU
+                ? new FrequencySketch(settings.getMaxEntries())
+                : null;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public RegionStats stats() {
+        return stats;
+    }
+
+    /**
+     * Читает значение с учетом статистики и частоты обращений.
+     */
+    @Override
+    public V get(K key) {
+        V value = lookup(key, true);
+        if (value != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return value;
+    }
+
+    /**
+     * Читает значение, не затрагивая статистику и частотный фильтр.
+     */
+    @Override
+    public V peek(K key) {
+        return lookup(key, false);
+    }
+
+    /**
+     * Читает значение и учитывает обращение в частотном фильтре, но не в статистике —
+     * для составных хранилищ, которые сами решают, был ли это промах.
+     */
+    V access(K key) {
+        return lookup(key, true);
+    }
+
+    private V lookup(K key, boolean recordAccess) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (recordAccess && sketch != null) {
+                sketch.increment(key);
+            }
+            CacheEntry<K, V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(now)) {
+                unlink(entry);
+                stats.recordExpiredEviction();
+                return null;
+            }
+            return entry.getValue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Помечает запись как обновляемую, если до ее истечения осталось меньше окна refresh-ahead
+     * и обновление еще не запущено.
+     *
+     * @return true, если вызывающий должен запустить обновление
+     */
+    @Override
+    public boolean claimRefresh(K key) {
+        if (refreshAheadNanos <= 0L) {
+            return false;
+        }
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            CacheEntry<K, V> entry = entries.get(key);
+            if (entry == null || entry.refreshing || entry.isExpired(now)
+                    || entry.getDeadlineNanos() - now > refreshAheadNanos) {
+                return false;
+            }
+            entry.refreshing = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void releaseRefresh(K key) {
+        lock.lock();
+        try {
+            CacheEntry<K, V> entry = entries.get(key);
+            if (entry != null) {
+                entry.refreshing = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Текущее поколение ключа; его нужно прочитать до загрузки значения из базы
+     * и передать в {@link #put(Object, Object, long)}.
+     */
+    @Override
+    public long generation(K key) {
+        return generations.current(key);
+    }
+
+    /**
+     * Кладет значение, загруженное при поколении {@code generation}.
+     *
+     * @return false, если ключ с тех пор инвалидировали, запись слишком тяжелая
+     *         или частотный фильтр не допустил ее в заполненный регион
+     */
+    @Override
+    public boolean put(K key, V value, long generation) {
+        return put(key, value, generation, ttlNanos);
+    }
+
+    /**
+     * Кладет значение с собственным сроком жизни, не больше TTL региона.
+     */
+    boolean put(K key, V value, long generation, long entryTtlNanos) {
+        long weight = weigher.weigh(key, value);
+        CacheEntry<K, V> entry = new CacheEntry<>(key, value,
+                System.nanoTime() + Math.min(entryTtlNanos, ttlNanos), weight);
+        lock.lock();
+        try {
+            if (generations.current(key) != generation) {
+                return false;
+            }
+            if (sketch != null) {
+                sketch.increment(key);
+            }
+            CacheEntry<K, V> previous = entries.get(key);
+            if (weight > maxWeight / MAX_ENTRY_BUDGET_DIVISOR) {
+                if (previous != null) {
+                    unlink(previous);
+                }
+                return false;
+            }
+            if (previous != null) {
+                unlink(previous);
+            } else if (exceedsBounds(weight) && !admit(key)) {
+                return false;
+            }
+            while (exceedsBounds(weight)) {
+                unlink(entries.values().iterator().next());
+                stats.recordSizeEviction();
+            }
+            entries.put(key, entry);
+            timerWheel.schedule(entry);
+            weightedSize += weight;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean exceedsBounds(long additionalWeight) {
+        return !entries.isEmpty()
+                && (entries.size() >= maxEntries || weightedSize + additionalWeight > maxWeight);
+    }
+
+    private boolean admit(K candidate) {
+        if (sketch == null) {
+            return true;
+        }
+        CacheEntry<K, V> victim = entries.values().iterator().next();
+        return victim.isExpired(System.nanoTime())
+                || sketch.frequency(candidate) > sketch.frequency(victim.getKey());
+    }
+
+    @Override
+    public Object stamp(K key) {
+        lock.lock();
+        try {
+            CacheEntry<K, V> entry = entries.get(key);
+            return entry == null || entry.isExpired(System.nanoTime()) ? null : entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean update(K key, Object stamp, UnaryOperator<V> function) {
+        lock.lock();
+        try {
+            generations.advance(key);
+            CacheEntry<K, V> previous = entries.get(key);
+            if (previous == null) {
+                return false;
+            }
+            unlink(previous);
+            V value = previous == stamp && !previous.isExpired(System.nanoTime())
+                    ? function.apply(previous.getValue())
+                    : null;
+            if (value == null) {
+                return false;
+            }
+            CacheEntry<K, V> entry = new CacheEntry<>(key, value, previous.getDeadlineNanos(),
+                    weigher.weigh(key, value));
+            entries.put(key, entry);
+            timerWheel.schedule(entry);
+            weightedSize += entry.getWeight();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        lock.lock();
+        try {
+            generations.advance(key);
+            CacheEntry<K, V> entry = entries.get(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет все записи, удовлетворяющие фильтру.
+     *
+     * @return количество удаленных записей
+     */
+    @Override
+    public int removeIf(BiPredicate<? super K, ? super V> filter) {
+        lock.lock();
+        try {
+            generations.advanceAll();
+            int removed = 0;
+            Iterator<Map.Entry<K, CacheEntry<K, V>>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                CacheEntry<K, V> entry = iterator.next().getValue();
+                if (filter.test(entry.getKey(), entry.getValue())) {
+                    iterator.remove();
+                    timerWheel.deschedule(entry);
+                    weightedSize -= entry.getWeight();
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int clear() {
+        return removeIf((key, value) -> true);
+    }
+
+    /**
+     * Удаляет записи, срок которых истек к моменту {@code nowNanos}.
+     */
+    @Override
+    public void expire(long nowNanos) {
+        lock.lock();
+        try {
+            timerWheel.advance(nowNanos, entry -> {
+                if (entries.remove(entry.getKey(), entry)) {
+                    weightedSize -= entry.getWeight();
+                    stats.recordExpiredEviction();
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void unlink(CacheEntry<K, V> entry) {
+        entries.remove(entry.getKey());
+        timerWheel.deschedule(entry);
+        weightedSize -= entry.getWeight();
+    }
+}
@@ -0,0 +1,81 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.function.BiPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Хранилище одного региона {@link DailyIntakeCache}. Реализация выбирается свойством
+ * {@code cache.daily-intake.backend} (см. {@link CacheBackend}); логика загрузки,
+ * объединения запросов и инвалидации остается в {@link DailyIntakeCache}.
+ * Удаление ключа обязано продвигать его поколение, а {@link #put(Object, Object, long)} —
+ * отклонять значения, загруженные при старом поколении.
+ */
+interface CacheStore<K, V> {
+    String name();
+
+    RegionStats stats();
+
+    /**
+     * Читает значение с учетом статистики.
+     */
+    V get(K key);
+
+    /**
+     * Читает значение, не затрагивая статистику.
+     */
+    V peek(K key);
+
+    long generation(K key);
+
+    /**
+     * Кладет значение, загруженное при поколении {@code generation}, прочитанном через
+     * {@link #generation(Object)} до загрузки.
+     *
+     * @return false, если ключ с тех пор инвалидировали или значение не допущено в хранилище
+     */
+    boolean put(K key, V value, long generation);
+
+    /**
+     * Непрозрачная метка текущей записи ключа для {@link #update}; null, если записи нет.
+     */
+    Object stamp(K key);
+
+    /**
+     * Атомарно заменяет значение результатом {@code function}, если запись не менялась
+     * с момента {@link #stamp}; иначе удаляет ключ. Поколение ключа продвигается в обоих
+     * случаях, срок жизни записи сохраняется. Если функция вернула null, запись удаляется.
+     *
+     * @return true, если значение обновлено
+     */
+    boolean update(K key, Object stamp, UnaryOperator<V> function);
+
+    void remove(K key);
+
+    int removeIf(BiPredicate<? super K, ? super V> filter);
+
+    int clear();
+
+    /**
+     * Помечает запись как обновляемую, если она близка к истечению (refresh-ahead).
+     *
+     * @return true, если вызывающий должен запустить обновление
+     */
+    boolean claimRefresh(K key);
+
+    void releaseRefresh(K key);
+
+    /**
+     * Удаляет записи, срок которых истек к моменту {@code nowNanos}.
+     */
+    void expire(long nowNanos);
+
+    int size();
+
+    long weightedSize();
+
+    /**
+     * Освобождает ресурсы хранилища при остановке приложения.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,46 @@
+package splitmindq.caloriecounter.cache;
+
+import java.nio.file.Path;
+
+/**
+ * Создает хранилища регионов по {@link DailyIntakeCacheProperties#getBackend()}.
+ */
+final class CacheStores {
+    private CacheStores() {
+    }
+
+    static <K, V> CacheStore<K, V> create(String name, DailyIntakeCacheProperties properties,
+                                          DailyIntakeCacheProperties.Region settings,
+                                          EntryWeigher<K, V> weigher) {
+        return create(name, properties, settings, weigher, null, null);
+    }
+
+    /**
+     * Регионы с кодеками ключа и значения в режиме {@link CacheBackend#TIERED} получают
+     * дисковый уровень; остальные остаются в куче.
+     */
+    static <K, V> CacheStore<K, V> create(String name, DailyIntakeCacheProperties properties,
+                                          DailyIntakeCacheProperties.Region settings,
+                                          EntryWeigher<K, V> weigher,
+                                          DiskCodec<K> keyCodec, DiskCodec<V> valueCodec) {
+        return switch (properties.getBackend()) {
+            case HEAP -> new HeapCacheStore<>(name, settings, weigher);
+            case BOUNDED -> new CacheRegion<>(name, settings, weigher);
+            case TIERED -> {
+                CacheRegion<K, V> heap = new CacheRegion<>(name, settings, weigher);
+                if (keyCodec == null || valueCodec == null) {
+                    yield heap;
+                }
+                DailyIntakeCacheProperties.Disk disk = properties.getDisk();
+                yield new TieredCacheStore<>(heap, new MappedSegmentStore<>(
+                        Path.of(disk.getDirectory(), name),
+                        Math.toIntExact(disk.getSegmentSize().toBytes()),
+                        disk.getMaxSegments(),
+                        settings.getTtl(),
+                        disk.getRecoveredTtl(),
+                        keyCodec,
+                        valueCodec));
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.List;
+import splitmindq.caloriecounter.dto.IntakeFoodSnapshot;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Грубые оценки размера значений кэша для 64-битной JVM со сжатыми указателями.
+ * Точность не нужна: оценка используется для статистики и сравнения записей между собой.
+ */
+final class CacheWeights {
+    private static final long ENTRY_OVERHEAD = 64; // CacheEntry, узел LinkedHashMap
+    private static final long LIST_OVERHEAD = 40;
+    private static final long REFERENCE = 4;
+    private static final long LOCAL_DATE = 24;
+    private static final long BOXED_LONG = 16;
+    private static final long INTAKE = 24; // IntakeSnapshot
+    private static final long INTAKE_FOOD = 24; // IntakeFoodSnapshot
+    private static final long FOOD = 48; // FoodSnapshot
+    private static final long NUTRITION_TOTALS = 16 + 4 * 8;
+
+    private CacheWeights() {
+    }
+
+    static long userDateKey(UserDateKey key) {
+        return 16 + string(key.email()) + LOCAL_DATE;
+    }
+
+    static long intakes(List<IntakeSnapshot> intakes) {
+        long size = LIST_OVERHEAD + intakes.size() * REFERENCE;
+        for (IntakeSnapshot intake : intakes) {
+            size += INTAKE + BOXED_LONG + LOCAL_DATE + LIST_OVERHEAD + intake.dailyIntakeFoods().size() * REFERENCE;
+            for (IntakeFoodSnapshot intakeFood : intake.dailyIntakeFoods()) {
+                size += INTAKE_FOOD + BOXED_LONG + FOOD + BOXED_LONG + string(intakeFood.food().name());
+            }
+        }
+        return size;
+    }
+
+    static long intakesWithDate(UserDateKey key, List<IntakeSnapshot> intakes) {
+        return ENTRY_OVERHEAD + userDateKey(key) + intakes(intakes);
+    }
+
+    static long intakesWithoutDate(String email, List<IntakeSnapshot> intakes) {
+        return ENTRY_OVERHEAD + string(email) + intakes(intakes);
+    }
+
+    static long nutrition(UserDateKey key, NutritionTotals nutrition) {
+        return ENTRY_OVERHEAD + userDateKey(key) + NUTRITION_TOTALS;
+    }
+
+    static long emptyIntakes(UserDateKey key, Boolean empty) {
+        return ENTRY_OVERHEAD + userDateKey(key);
+    }
+
+    static long intakeNutrition(Long intakeId, NutritionTotals nutrition) {
+        return ENTRY_OVERHEAD + BOXED_LONG + NUTRITION_TOTALS;
+    }
+
+    private static long string(String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+}
@@ -1,86 +1,572 @@
 package splitmindq.caloriecounter.cache;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import lombok.Getter;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidation;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidationBus;
+import splitmindq.caloriecounter.dto.CacheRegionStatsDto;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
 import splitmindq.caloriecounter.listener.DailyIntakeDeletedEvent;
-import splitmindq.caloriecounter.model.DailyIntake;
+import splitmindq.caloriecounter.model.NutritionTotals;
 
 @Component
 public class DailyIntakeCache {
-    private static final long INTAKES_WITH_DATE_TTL = 10; // 10 минут
-    private static final long INTAKES_WITHOUT_DATE_TTL = 10; // 10 минут
-    private static final long NUTRITION_DATA_TTL = 30; // 30 минут
-    private static final long INTAKE_NUTRITION_TTL = 30; // 30 минут
+    /**
+     * Предел очереди ключей на сверку; сверка выборочная, лишние ключи просто не попадают в нее.
+     */
+    private static final int MAX_PENDING_VERIFICATIONS = 10_000;
+
+    private final CacheStore<UserDateKey, List<IntakeSnapshot>> intakesWithDateCache;
+    private final CacheStore<String, List<IntakeSnapshot>> intakesWithoutDateCache;
+    private final CacheStore<UserDateKey, NutritionTotals> nutritionCache;
+    private final CacheStore<Long, NutritionTotals> intakeNutritionCache;
+    private final CacheStore<UserDateKey, Boolean> emptyIntakesCache;
+    private final IntakeDayFilter intakeDayFilter;
+
+    private final SingleFlight<UserDateKey, List<IntakeSnapshot>> intakesWithDateLoads = new SingleFlight<>();
+    private final SingleFlight<String, List<IntakeSnapshot>> intakesWithoutDateLoads = new SingleFlight<>();
+    private final SingleFlight<UserDateKey, NutritionTotals> nutritionLoads = new SingleFlight<>();
+    private final SingleFlight<Long, NutritionTotals> intakeNutritionLoads = new SingleFlight<>();
+
+    private final Map<String, RegionView> regionsByName = new LinkedHashMap<>();
+
+    private final Set<UserDateKey> deltaUpdatedDays = ConcurrentHashMap.newKeySet();
+    private final Set<Long> deltaUpdatedIntakes = ConcurrentHashMap.newKeySet();
+    private final LongAdder nutritionDrift = new LongAdder();
+
+    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "daily-intake-cache-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ThreadPoolExecutor refreshExecutor;
+    private final CacheInvalidationBus invalidationBus;
 
-    private static final int INTAKES_WITH_DATE_LIMIT = 100;
-    private static final int INTAKES_WITHOUT_DATE_LIMIT = 100;
-    private static final int NUTRITION_LIMIT = 100;
-    private static final int INTAKE_NUTRITION_LIMIT = 100;
+    private static final Logger logger = LoggerFactory.getLogger(DailyIntakeCache.class);
 
-    private final Map<String, Map<LocalDate, CacheEntry<List<DailyIntake>>>> intakesWithDateCache = new ConcurrentHashMap<>();
-    private final Map<String, CacheEntry<List<DailyIntake>>> intakesWithoutDateCache = new ConcurrentHashMap<>();
-    private final Map<String, Map<LocalDate, CacheEntry<Map<String, Double>>>> nutritionCache = new ConcurrentHashMap<>();
-    private final Map<Long, CacheEntry<Map<String, Double>>> intakeNutritionCache = new ConcurrentHashMap<>();
+    public DailyIntakeCache(DailyIntakeCacheProperties properties, CacheInvalidationBus invalidationBus) {
+        this.intakesWithDateCache = CacheStores.create("intakesWithDate", properties,
+                properties.getIntakesWithDate(), CacheWeights::intakesWithDate);
+        this.intakesWithoutDateCache = CacheStores.create("intakesWithoutDate", properties,
+                properties.getIntakesWithoutDate(), CacheWeights::intakesWithoutDate);
+        this.nutritionCache = CacheStores.create("nutrition", properties,
+                properties.getNutrition(), CacheWeights::nutrition,
+                DiskCodec.USER_DATE_KEY, DiskCodec.NUTRITION_TOTALS);
+        this.intakeNutritionCache = CacheStores.create("intakeNutrition", properties,
+                properties.getIntakeNutrition(), CacheWeights::intakeNutrition,
+                DiskCodec.LONG, DiskCodec.NUTRITION_TOTALS);
+        register(intakesWithDateCache, intakesWithDateLoads);
+        register(intakesWithoutDateCache, intakesWithoutDateLoads);
+        register(nutritionCache, nutritionLoads);
+        register(intakeNutritionCache, intakeNutritionLoads);
+        this.emptyIntakesCache = CacheStores.create("emptyIntakes", properties,
+                properties.getEmptyIntakes(), CacheWeights::emptyIntakes);
+        register(emptyIntakesCache, new SingleFlight<>());
+        this.intakeDayFilter = new IntakeDayFilter(properties.getDayFilter());
+        AtomicInteger refreshThreadCount = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(
+                properties.getRefreshThreads(), properties.getRefreshThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(properties.getRefreshQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "daily-intake-cache-refresh-" + refreshThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        long intervalMillis = properties.getExpiryInterval().toMillis();
+        this.cleanupExecutor.scheduleWithFixedDelay(
+                this::cleanupExpiredEntries, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        this.invalidationBus = invalidationBus;
+        invalidationBus.subscribe(this::applyInvalidation);
+    }
 
-    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
+    private record RegionView(CacheStore<?, ?> region, SingleFlight<?, ?> loads) {
+    }
 
-    private static final Logger logger = LoggerFactory.getLogger(DailyIntakeCache.class);
+    private void register(CacheStore<?, ?> region, SingleFlight<?, ?> loads) {
+        regionsByName.put(region.name(), new RegionView(region, loads));
+    }
 
-    public DailyIntakeCache() {
-        this.cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredEntries, 1, 1, TimeUnit.MINUTES);
+    private void cleanupExpiredEntries() {
+        try {
+            long now = System.nanoTime();
+            intakesWithDateCache.expire(now);
+            intakesWithoutDateCache.expire(now);
+            nutritionCache.expire(now);
+            intakeNutritionCache.expire(now);
+            emptyIntakesCache.expire(now);
+            intakeDayFilter.prune();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все последующие запуски задачи
+            logger.error("Cache expiry failed", e);
+        }
     }
 
-    private static class CacheEntry<V> {
-        @Getter
-        private final V value;
-        @Getter
-        private final LocalDateTime createdAt;
-        private final long ttlMinutes;
+    @PreDestroy
+    public void shutdown() {
+        cleanupExecutor.shutdownNow();
+        refreshExecutor.shutdownNow();
+        regionsByName.values().forEach(view -> view.region().close());
+        logger.info("Stopped daily intake cache executors and closed region stores");
+    }
 
-        CacheEntry(V value, long ttlMinutes) {
-            this.value = value;
-            this.createdAt = LocalDateTime.now();
-            this.ttlMinutes = ttlMinutes;
+    /**
+     * Возвращает рационы из кэша, а при промахе загружает их через {@code loader}.
+     * Параллельные промахи по одному ключу объединяются: загрузчик выполняется один раз.
+     * Если ключ инвалидировали во время загрузки, результат возвращается, но не кэшируется.
+     * Пустой результат запоминается отметкой с коротким TTL; кроме того, если фильтр дня
+     * точно знает, что у пользователя нет рационов за дату, база не запрашивается.
+     */
+    public List<IntakeSnapshot> getOrLoadIntakesWithDate(String email, LocalDate date,
+                                                      Supplier<List<IntakeSnapshot>> loader) {
+        Optional<List<IntakeSnapshot>> cached = getIntakesWithDate(email, date);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        if (email == null || date == null) {
+            return loader.get();
+        }
+        UserDateKey key = new UserDateKey(email, date);
+        if (emptyIntakesCache.get(key) != null || !intakeDayFilter.mightHaveIntakes(email, date)) {
+            logger.debug("Known to have no intakes: email={}, date={}", email, date);
+            return List.of();
         }
+        return intakesWithDateLoads.load(key, () -> Optional.ofNullable(intakesWithDateCache.peek(key))
+                .orElseGet(() -> {
+                    long generation = intakesWithDateCache.generation(key);
+                    long emptyGeneration = emptyIntakesCache.generation(key);
+                    List<IntakeSnapshot> intakes = timedLoad(intakesWithDateCache, loader);
+                    if (intakes.isEmpty()) {
+                        emptyIntakesCache.put(key, Boolean.TRUE, emptyGeneration);
+                    } else {
+                        storeIntakesWithDate(email, date, intakes, generation);
+                    }
+                    return intakes;
+                }));
+    }
 
-        boolean isExpired() {
-            return createdAt.plusMinutes(ttlMinutes).isBefore(LocalDateTime.now());
+    public List<IntakeSnapshot> getOrLoadIntakesWithoutDate(String email, Supplier<List<IntakeSnapshot>> loader) {
+        Optional<List<IntakeSnapshot>> cached = getIntakesWithoutDate(email);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        if (email == null) {
+            return loader.get();
         }
+        UserDateKey emptyKey = new UserDateKey(email, null);
+        if (emptyIntakesCache.get(emptyKey) != null) {
+            logger.debug("Known to have no intakes: email={}", email);
+            return List.of();
+        }
+        return intakesWithoutDateLoads.load(email, () -> Optional.ofNullable(intakesWithoutDateCache.peek(email))
+                .orElseGet(() -> {
+                    long generation = intakesWithoutDateCache.generation(email);
+                    long emptyGeneration = emptyIntakesCache.generation(emptyKey);
+                    List<IntakeSnapshot> intakes = timedLoad(intakesWithoutDateCache, loader);
+                    if (intakes.isEmpty()) {
+                        emptyIntakesCache.put(emptyKey, Boolean.TRUE, emptyGeneration);
+                    } else {
+                        storeIntakesWithoutDate(email, intakes, generation);
+                    }
+                    return intakes;
+                }));
     }
 
-    private void cleanupExpiredEntries() {
-        cleanCacheWithDate(intakesWithDateCache);
-        cleanSimpleCache(intakesWithoutDateCache);
-        cleanCacheWithDate(nutritionCache);
-        cleanSimpleCache(intakeNutritionCache);
-        logger.debug("Performed cache cleanup");
-    }
-
-    private <K1, K2, V> void cleanCacheWithDate(Map<K1, Map<K2, CacheEntry<V>>> cache) {
-        cache.forEach((key1, dateMap) -> {
-            dateMap.entrySet().removeIf(entry -> entry.getValue().isExpired());
-            if (dateMap.isEmpty()) {
-                cache.remove(key1);
+    /**
+     * Возвращает КБЖУ за день из кэша или загружает их через {@code loader}.
+     * Загрузчик может вернуть null, если данных нет: такой результат не кэшируется.
+     * Если запись близка к истечению, она возвращается сразу, а {@code loader}
+     * перезапускается в фоне (refresh-ahead).
+     */
+    public Optional<NutritionTotals> getOrLoadNutritionData(String email, LocalDate date,
+                                                            Supplier<NutritionTotals> loader) {
+        Optional<NutritionTotals> cached = getNutritionData(email, date);
+        if (cached.isPresent()) {
+            refreshAheadIfDue(nutritionCache, new UserDateKey(email, date), loader,
+                    (nutrition, generation) -> storeNutritionData(email, date, nutrition, generation));
+            return cached;
+        }
+        if (email == null || date == null) {
+            return Optional.ofNullable(loader.get());
+        }
+        UserDateKey key = new UserDateKey(email, date);
+        return Optional.ofNullable(nutritionLoads.load(key, () -> Optional.ofNullable(nutritionCache.peek(key))
+                .orElseGet(() -> {
+                    long generation = nutritionCache.generation(key);
+                    NutritionTotals nutrition = timedLoad(nutritionCache, loader);
+                    if (nutrition != null) {
+                        storeNutritionData(email, date, nutrition, generation);
+                    }
+                    return nutrition;
+                })));
+    }
+
+    public Optional<NutritionTotals> getOrLoadNutritionDataForIntake(Long intakeId,
+                                                                     Supplier<NutritionTotals> loader) {
+        Optional<NutritionTotals> cached = getNutritionDataForIntake(intakeId);
+        if (cached.isPresent()) {
+            refreshAheadIfDue(intakeNutritionCache, intakeId, loader,
+                    (nutrition, generation) -> storeNutritionDataForIntake(intakeId, nutrition, generation));
+            return cached;
+        }
+        if (intakeId == null) {
+            return Optional.ofNullable(loader.get());
+        }
+        return Optional.ofNullable(intakeNutritionLoads.load(intakeId,
+                () -> Optional.ofNullable(intakeNutritionCache.peek(intakeId))
+                        .orElseGet(() -> {
+                            long generation = intakeNutritionCache.generation(intakeId);
+                            NutritionTotals nutrition = timedLoad(intakeNutritionCache, loader);
+                            if (nutrition != null) {
+                                storeNutritionDataForIntake(intakeId, nutrition, generation);
+                            }
+                            return nutrition;
+                        })));
+    }
+
+    /**
+     * Возвращает КБЖУ нескольких рационов: найденные в кэше берутся из него, остальные id
+     * передаются в {@code loader} одним вызовом. Рационы, которых нет в результате загрузчика,
+     * не кэшируются и в ответ не попадают.
+     */
+    public Map<Long, NutritionTotals> getOrLoadNutritionDataForIntakes(
+            Collection<Long> intakeIds,
+            Function<Collection<Long>, Map<Long, NutritionTotals>> loader) {
+        Map<Long, NutritionTotals> result = new HashMap<>();
+        Map<Long, Long> missingGenerations = new HashMap<>();
+        for (Long intakeId : intakeIds) {
+            if (intakeId == null || result.containsKey(intakeId) || missingGenerations.containsKey(intakeId)) {
+                continue;
+            }
+            NutritionTotals cached = intakeNutritionCache.get(intakeId);
+            if (cached != null) {
+                result.put(intakeId, cached);
+            } else {
+                // Поколение фиксируется до загрузки, чтобы не закэшировать устаревшие итоги
+                missingGenerations.put(intakeId, intakeNutritionCache.generation(intakeId));
+            }
+        }
+        if (missingGenerations.isEmpty()) {
+            return result;
+        }
+
+        int hits = result.size();
+        Map<Long, NutritionTotals> loaded = timedLoad(intakeNutritionCache,
+                () -> loader.apply(Set.copyOf(missingGenerations.keySet())));
+        int stored = 0;
+        for (Map.Entry<Long, NutritionTotals> entry : loaded.entrySet()) {
+            Long generation = missingGenerations.get(entry.getKey());
+            if (generation == null || entry.getValue() == null) {
+                continue;
             }
+            result.put(entry.getKey(), entry.getValue());
+            if (intakeNutritionCache.put(entry.getKey(), entry.getValue(), generation)) {
+                stored++;
+            }
+        }
+        logger.info("Bulk intake nutrition lookup: {} cached, {} loaded, {} newly cached",
+                hits, result.size() - hits, stored);
+        return result;
+    }
+
+    private <K> void refreshAheadIfDue(CacheStore<K, NutritionTotals> region, K key,
+                                       Supplier<NutritionTotals> loader,
+                                       ObjLongConsumer<NutritionTotals> store) {
+        if (!region.claimRefresh(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    long generation = region.generation(key);
+                    NutritionTotals nutrition = timedLoad(region, loader);
+                    if (nutrition != null) {
+                        store.accept(nutrition, generation);
+                    } else {
+                        region.remove(key);
+                    }
+                    logger.debug("Refreshed {} entry for key={}", region.name(), key);
+                } catch (RuntimeException e) {
+                    region.releaseRefresh(key);
+                    logger.warn("Refresh of {} entry for key={} failed: {}", region.name(), key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            region.releaseRefresh(key);
+            logger.debug("Refresh queue is full, {} entry for key={} will expire normally", region.name(), key);
+        }
+    }
+
+    private static <V> V timedLoad(CacheStore<?, ?> region, Supplier<V> loader) {
+        long start = System.nanoTime();
+        try {
+            return loader.get();
+        } finally {
+            region.stats().recordLoad(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Прибавляет {@code delta} к закэшированным КБЖУ за день и за рацион вместо их удаления,
+     * чтобы следующее чтение не пересчитывало агрегат в базе. Внутри транзакции приращение
+     * применяется после фиксации. Если записи не было или с момента вызова ее перезагрузили
+     * либо изменили, запись удаляется: иначе приращение могло бы учесться дважды.
+     * Другим узлам уходит обычная инвалидация.
+     */
+    public void applyNutritionDelta(String email, LocalDate date, Long intakeId, NutritionTotals delta) {
+        UserDateKey dayKey = email != null && date != null ? new UserDateKey(email, date) : null;
+        Object dayStamp = dayKey != null ? nutritionCache.stamp(dayKey) : null;
+        Object intakeStamp = intakeId != null ? intakeNutritionCache.stamp(intakeId) : null;
+        Runnable apply = () -> {
+            if (dayKey != null) {
+                applyDelta(nutritionCache, dayKey, dayStamp, delta, deltaUpdatedDays);
+            }
+            if (intakeId != null) {
+                applyDelta(intakeNutritionCache, intakeId, intakeStamp, delta, deltaUpdatedIntakes);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+        if (dayKey != null) {
+            invalidationBus.publish(CacheInvalidation.nutrition(email, date));
+        }
+        if (intakeId != null) {
+            invalidationBus.publish(CacheInvalidation.intakeNutrition(intakeId));
+        }
+    }
+
+    private <K> void applyDelta(CacheStore<K, NutritionTotals> region, K key, Object stamp,
+                                NutritionTotals delta, Set<K> pendingVerification) {
+        boolean updated = region.update(key, stamp, nutrition -> {
+            NutritionTotals result = nutrition.plus(delta);
+            // Нулевые КБЖУ не кэшируются и при загрузке из базы
+            return result.rounded().isZero() ? null : result;
         });
+        if (updated) {
+            if (pendingVerification.size() < MAX_PENDING_VERIFICATIONS) {
+                pendingVerification.add(key);
+            }
+            logger.debug("Applied nutrition delta to {} entry for key={}", region.name(), key);
+        } else {
+            logger.debug("Evicted {} entry for key={} instead of applying nutrition delta", region.name(), key);
+        }
+    }
+
+    /**
+     * Забирает до {@code max} ключей, обновленных приращениями с прошлой сверки.
+     */
+    public List<UserDateKey> drainDeltaUpdatedDays(int max) {
+        return drain(deltaUpdatedDays, max);
+    }
+
+    public List<Long> drainDeltaUpdatedIntakes(int max) {
+        return drain(deltaUpdatedIntakes, max);
+    }
+
+    private static <K> List<K> drain(Set<K> keys, int max) {
+        List<K> drained = new ArrayList<>();
+        Iterator<K> iterator = keys.iterator();
+        while (drained.size() < max && iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * Сверяет закэшированные КБЖУ за день с результатом {@code loader} после округления
+     * и при расхождении удаляет запись. Если запись изменилась во время сверки, она пропускается.
+     *
+     * @return true, если найдено расхождение
+     */
+    public boolean verifyNutritionData(String email, LocalDate date, Supplier<NutritionTotals> loader) {
+        return verify(nutritionCache, new UserDateKey(email, date), loader);
+    }
+
+    public boolean verifyNutritionDataForIntake(Long intakeId, Supplier<NutritionTotals> loader) {
+        return verify(intakeNutritionCache, intakeId, loader);
+    }
+
+    private <K> boolean verify(CacheStore<K, NutritionTotals> region, K key, Supplier<NutritionTotals> loader) {
+        Object stamp = region.stamp(key);
+        NutritionTotals cached = region.peek(key);
+        if (stamp == null || cached == null) {
+            return false;
+        }
+        NutritionTotals actual = Objects.requireNonNullElse(loader.get(), NutritionTotals.ZERO);
+        if (region.stamp(key) != stamp || cached.rounded().equals(actual.rounded())) {
+            return false;
+        }
+        region.remove(key);
+        nutritionDrift.increment();
+        logger.warn("Nutrition drift in {} entry for key={}: cached={}, actual={}",
+                region.name(), key, cached, actual);
+        return true;
+    }
+
+    /**
+     * Сколько записей КБЖУ сверка удалила из-за расхождения с базой.
+     */
+    public long getNutritionDriftCount() {
+        return nutritionDrift.sum();
+    }
+
+    public boolean isIntakeDayFilterEnabled() {
+        return intakeDayFilter.isEnabled();
+    }
+
+    /**
+     * Первая дата, за которую ведется фильтр дней; данные для {@link #rebuildIntakeDayFilter}
+     * нужно загружать начиная с нее.
+     */
+    public LocalDate getIntakeDayFilterStart() {
+        return intakeDayFilter.windowStart(LocalDate.now());
+    }
+
+    /**
+     * Заполняет фильтр дней пользователями с рационами из загрузчика и продлевает доверие
+     * к отрицательным ответам, отсчитывая срок от момента перед загрузкой.
+     */
+    public void rebuildIntakeDayFilter(Supplier<? extends Map<LocalDate, ? extends Collection<String>>> loader) {
+        intakeDayFilter.rebuild(loader);
+        logger.debug("Rebuilt intake day filter");
+    }
+
+    /**
+     * Сколько запросов рационов фильтр дней отклонил без обращения к базе.
+     */
+    public long getIntakeDayFilterRejections() {
+        return intakeDayFilter.rejectionCount();
+    }
+
+    /**
+     * Количество загрузок по регионам, которые не пошли в базу, а дождались уже идущей загрузки.
+     */
+    public Map<String, Long> getCoalescedLoadCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        regionsByName.forEach((name, view) -> counts.put(name, view.loads().coalescedCount()));
+        return counts;
+    }
+
+    public Set<String> getRegionNames() {
+        return Collections.unmodifiableSet(regionsByName.keySet());
+    }
+
+    /**
+     * Снимок счетчиков всех регионов.
+     */
+    public List<CacheRegionStatsDto> getStats() {
+        List<CacheRegionStatsDto> stats = new ArrayList<>();
+        regionsByName.keySet().forEach(name -> stats.add(getRegionStats(name)));
+        return stats;
+    }
+
+    /**
+     * Снимок счетчиков региона или null, если региона с таким именем нет.
+     */
+    public CacheRegionStatsDto getRegionStats(String regionName) {
+        RegionView view = regionsByName.get(regionName);
+        if (view == null) {
+            return null;
+        }
+        RegionStats stats = view.region().stats();
+        return new CacheRegionStatsDto(
+                regionName,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.loadCount(),
+                view.loads().coalescedCount(),
+                stats.totalLoadTimeNanos(),
+                stats.expiredEvictionCount(),
+                stats.sizeEvictionCount(),
+                view.region().size(),
+                view.region().weightedSize());
+    }
+
+    /**
+     * Полностью очищает регион.
+     *
+     * @return false, если региона с таким именем нет
+     */
+    public boolean clearRegion(String regionName) {
+        if (!regionsByName.containsKey(regionName)) {
+            return false;
+        }
+        invalidate(CacheInvalidation.region(regionName));
+        return true;
+    }
+
+    /**
+     * Удаляет все данные, относящиеся к указанной дате: дневные регионы по ключу и
+     * списки без даты, содержащие рацион за эту дату.
+     */
+    public void evictDate(LocalDate date) {
+        if (date != null) {
+            invalidate(CacheInvalidation.date(date));
+        }
+    }
+
+    /**
+     * Кладет в кэш данные прогрева. Уже загруженные записи не перезаписываются,
+     * каждая запись не логируется.
+     *
+     * @return true, если запись добавлена
+     */
+    public boolean preloadIntakesWithDate(String email, LocalDate date, List<IntakeSnapshot> intakes,
+                                          long generation) {
+        UserDateKey key = new UserDateKey(email, date);
+        return !intakes.isEmpty() && intakesWithDateCache.peek(key) == null
+                && intakesWithDateCache.put(key, List.copyOf(intakes), generation);
+    }
+
+    public boolean preloadNutritionData(String email, LocalDate date, NutritionTotals nutrition, long generation) {
+        UserDateKey key = new UserDateKey(email, date);
+        return !nutrition.isZero() && nutritionCache.peek(key) == null
+                && nutritionCache.put(key, nutrition, generation);
+    }
+
+    /**
+     * Поколения ключей, которые нужно прочитать до загрузки данных для
+     * {@link #preloadIntakesWithDate} и {@link #preloadNutritionData}.
+     */
+    public long intakesWithDateGeneration(String email, LocalDate date) {
+        return intakesWithDateCache.generation(new UserDateKey(email, date));
     }
 
-    private <K, V> void cleanSimpleCache(Map<K, CacheEntry<V>> cache) {
-        cache.entrySet().removeIf(entry -> entry.getValue().isExpired());
+    public long nutritionGeneration(String email, LocalDate date) {
+        return nutritionCache.generation(new UserDateKey(email, date));
     }
 
-    public void putIntakesWithDate(String email, LocalDate date, List<DailyIntake> intakes) {
+    private void storeIntakesWithDate(String email, LocalDate date, List<IntakeSnapshot> intakes, long generation) {
         if (email == null || date == null || intakes == null) {
             logger.warn("Attempt to cache null data: email={}, date={}", email, date);
             return;
@@ -91,51 +577,49 @@ public class DailyIntakeCache {
             return;
         }
 
-        var dateCache = intakesWithDateCache.computeIfAbsent(email, k -> new ConcurrentHashMap<>());
-        dateCache.put(date, new CacheEntry<>(Collections.unmodifiableList(new ArrayList<>(intakes)), INTAKES_WITH_DATE_TTL));
-        enforceLimit(dateCache, INTAKES_WITH_DATE_LIMIT);
+        if (!intakesWithDateCache.put(new UserDateKey(email, date),
+                List.copyOf(intakes), generation)) {
+            logger.debug("Not cached stale or rejected intakes for email={} and date={}", email, date);
+            return;
+        }
         logger.info("Cached {} intakes for email={} and date={}", intakes.size(), email, date);
     }
 
-    public Optional<List<DailyIntake>> getIntakesWithDate(String email, LocalDate date) {
+    public Optional<List<IntakeSnapshot>> getIntakesWithDate(String email, LocalDate date) {
         if (email == null || date == null) {
             logger.warn("Attempt to retrieve data with null parameters: email={}, date={}", email, date);
             return Optional.empty();
         }
 
-        Optional<List<DailyIntake>> result = Optional.ofNullable(intakesWithDateCache.get(email))
-                .map(map -> map.get(date))
-                .filter(entry -> !entry.isExpired())
-                .map(CacheEntry::getValue);
+        Optional<List<IntakeSnapshot>> result = Optional.ofNullable(
+                intakesWithDateCache.get(new UserDateKey(email, date)));
 
         logCacheAccess("with date", email, date, result);
         return result;
     }
 
-    public Optional<List<DailyIntake>> getIntakesWithoutDate(String email) {
+    public Optional<List<IntakeSnapshot>> getIntakesWithoutDate(String email) {
         if (email == null) {
             logger.warn("Attempt to retrieve data with null email");
             return Optional.empty();
         }
 
-        Optional<List<DailyIntake>> result = Optional.ofNullable(intakesWithoutDateCache.get(email))
-                .filter(entry -> !entry.isExpired())
-                .map(CacheEntry::getValue);
+        Optional<List<IntakeSnapshot>> result = Optional.ofNullable(intakesWithoutDateCache.get(email));
 
         logCacheAccess("without date", email, null, result);
         return result;
     }
 
-    private void logCacheAccess(String cacheType, String email, LocalDate date, Optional<List<DailyIntake>> result) {
+    private void logCacheAccess(String cacheType, String email, LocalDate date, Optional<List<IntakeSnapshot>> result) {
         if (result.isPresent()) {
-            List<DailyIntake> intakes = result.get();
+            List<IntakeSnapshot> intakes = result.get();
             String intakeInfo = intakes.stream()
                     .limit(3)
                     .map(i -> String.format(
-                            "{id=%d, date=%s, userId=%s}",
-                            i.getId(),
-                            i.getCreationDate(),
-                            i.getUser() != null ? i.getUser().getId() : "null"))
+                            "{id=%d, date=%s, foods=%d}",
+                            i.id(),
+                            i.creationDate(),
+                            i.dailyIntakeFoods().size()))
                     .collect(Collectors.joining(", "));
 
             if (intakes.size() > 3) {
@@ -156,41 +640,38 @@ public class DailyIntakeCache {
         }
     }
 
-    public Optional<Map<String, Double>> getNutritionData(String email, LocalDate date) {
+    public Optional<NutritionTotals> getNutritionData(String email, LocalDate date) {
         if (email == null || date == null) {
             logger.warn("Attempt to retrieve nutrition data with null parameters: email={}, date={}", email, date);
             return Optional.empty();
         }
 
-        Optional<Map<String, Double>> result = Optional.ofNullable(nutritionCache.get(email))
-                .map(map -> map.get(date))
-                .filter(entry -> !entry.isExpired())
-                .map(CacheEntry::getValue);
+        Optional<NutritionTotals> result = Optional.ofNullable(
+                nutritionCache.get(new UserDateKey(email, date)));
 
         logNutritionCacheAccess(email, date, result);
         return result;
     }
 
-    public void putNutritionData(String email, LocalDate date, Map<String, Double> nutrition) {
+    private void storeNutritionData(String email, LocalDate date, NutritionTotals nutrition, long generation) {
         if (email == null || date == null || nutrition == null) {
             logger.warn("Attempt to cache null nutrition data: email={}, date={}", email, date);
             return;
         }
-        var nutritionMap = nutritionCache.computeIfAbsent(email, k -> new ConcurrentHashMap<>());
-        nutritionMap.put(date, new CacheEntry<>(new HashMap<>(nutrition), NUTRITION_DATA_TTL));
-        enforceLimit(nutritionMap, NUTRITION_LIMIT);
+        if (!nutritionCache.put(new UserDateKey(email, date), nutrition, generation)) {
+            logger.debug("Not cached stale or rejected nutrition data for email={} and date={}", email, date);
+            return;
+        }
         logger.info("Cached nutrition data for email={} and date={}: {}", email, date, nutrition);
     }
 
-    public Optional<Map<String, Double>> getNutritionDataForIntake(Long intakeId) {
+    public Optional<NutritionTotals> getNutritionDataForIntake(Long intakeId) {
         if (intakeId == null) {
             logger.warn("Attempt to retrieve nutrition data with null intakeId");
             return Optional.empty();
         }
 
-        Optional<Map<String, Double>> result = Optional.ofNullable(intakeNutritionCache.get(intakeId))
-                .filter(entry -> !entry.isExpired())
-                .map(CacheEntry::getValue);
+        Optional<NutritionTotals> result = Optional.ofNullable(intakeNutritionCache.get(intakeId));
 
         if (result.isPresent()) {
             logger.info("Found cached nutrition data for intakeId={}: {}", intakeId, result.get());
@@ -200,24 +681,25 @@ public class DailyIntakeCache {
         return result;
     }
 
-    public void putNutritionDataForIntake(Long intakeId, Map<String, Double> nutrition) {
+    private void storeNutritionDataForIntake(Long intakeId, NutritionTotals nutrition, long generation) {
         if (intakeId == null || nutrition == null) {
             logger.warn("Attempt to cache null nutrition data for intakeId={}", intakeId);
             return;
         }
-        intakeNutritionCache.put(intakeId, new CacheEntry<>(new HashMap<>(nutrition), INTAKE_NUTRITION_TTL));
-        enforceLimit(intakeNutritionCache, INTAKE_NUTRITION_LIMIT);
+        if (!intakeNutritionCache.put(intakeId, nutrition, generation)) {
+            logger.debug("Not cached stale or rejected nutrition data for intakeId={}", intakeId);
+            return;
+        }
         logger.info("Cached nutrition data for intakeId={}: {}", intakeId, nutrition);
     }
 
     public void evictNutritionDataForIntake(Long intakeId) {
         if (intakeId != null) {
-            intakeNutritionCache.remove(intakeId);
-            logger.info("Evicted nutrition cache for intakeId={}", intakeId);
+            invalidate(CacheInvalidation.intakeNutrition(intakeId));
         }
     }
 
-    public void putIntakesWithoutDate(String email, List<DailyIntake> intakes) {
+    private void storeIntakesWithoutDate(String email, List<IntakeSnapshot> intakes, long generation) {
         if (email == null || intakes == null) {
             logger.warn("Attempt to cache null data: email={}", email);
             return;
@@ -228,68 +710,172 @@ public class DailyIntakeCache {
             return;
         }
 
-        intakesWithoutDateCache.put(
-                email,
-                new CacheEntry<>(Collections.unmodifiableList(new ArrayList<>(intakes)), INTAKES_WITHOUT_DATE_TTL)
-        );
-        enforceLimit(intakesWithoutDateCache, INTAKES_WITHOUT_DATE_LIMIT);
+        if (!intakesWithoutDateCache.put(email, List.copyOf(intakes), generation)) {
+            logger.debug("Not cached stale or rejected intakes for email={}", email);
+            return;
+        }
         logger.info("Cached {} intakes for email={}", intakes.size(), email);
     }
 
     public void evictIntakesWithDate(String email, LocalDate date) {
         if (email != null && date != null) {
-            Optional.ofNullable(intakesWithDateCache.get(email))
-                    .ifPresent(map -> map.remove(date));
-            logger.info("Evicted intakesWithDate cache for email={} and date={}", email, date);
+            invalidate(CacheInvalidation.intakesWithDate(email, date));
         }
     }
 
     public void evictNutritionData(String email, LocalDate date) {
         if (email != null && date != null) {
-            Optional.ofNullable(nutritionCache.get(email))
-                    .ifPresent(map -> map.remove(date));
-            logger.info("Evicted nutrition cache for email={} and date={}", email, date);
+            invalidate(CacheInvalidation.nutrition(email, date));
         }
     }
 
     public void evictIntakesWithoutDate(String email) {
         if (email != null) {
-            intakesWithoutDateCache.remove(email);
-            logger.info("Evicted intakesWithoutDate cache for email={}", email);
+            invalidate(CacheInvalidation.intakesWithoutDate(email));
         }
     }
 
     public void evictAllUserData(String email) {
-        intakesWithDateCache.remove(email);
-        intakesWithoutDateCache.remove(email);
-        nutritionCache.remove(email);
-        logger.info("Evicted all cached data for email={}", email);
+        if (email != null) {
+            invalidate(CacheInvalidation.user(email));
+        }
     }
 
-    private <K, V> void enforceLimit(Map<K, CacheEntry<V>> cache, int limit) {
-        if (cache.size() <= limit) {
-            return;
+    /**
+     * Удаляет списки рационов и КБЖУ пачки дней и рационов, например после удаления продукта
+     * из всех рационов. Локальное удаление то же, что в {@link #applyInvalidation}, но без записи
+     * в журнал на каждый ключ; другим узлам инвалидации уходят одной публикацией.
+     */
+    public void evictIntakeData(Collection<UserDateKey> days, Collection<Long> intakeIds) {
+        List<CacheInvalidation> invalidations = new ArrayList<>(days.size() * 3 + intakeIds.size());
+        Set<String> emails = new HashSet<>();
+        for (UserDateKey day : days) {
+            invalidations.add(CacheInvalidation.intakesWithDate(day.email(), day.date()));
+            invalidations.add(CacheInvalidation.nutrition(day.email(), day.date()));
+            emails.add(day.email());
+        }
+        for (String email : emails) {
+            invalidations.add(CacheInvalidation.intakesWithoutDate(email));
+        }
+        for (Long intakeId : intakeIds) {
+            invalidations.add(CacheInvalidation.intakeNutrition(intakeId));
         }
-        // Сортируем по времени создания и удаляем самые старые записи
-        List<Map.Entry<K, CacheEntry<V>>> entries = new ArrayList<>(cache.entrySet());
-        entries.sort(Comparator.comparing(e -> e.getValue().getCreatedAt()));
-        while (cache.size() > limit && !entries.isEmpty()) {
-            cache.remove(entries.remove(0).getKey());
+        Runnable evictLocally = () -> {
+            for (UserDateKey day : days) {
+                intakesWithDateCache.remove(day);
+                emptyIntakesCache.remove(day);
+                intakeDayFilter.add(day.email(), day.date());
+                nutritionCache.remove(day);
+            }
+            for (String email : emails) {
+                intakesWithoutDateCache.remove(email);
+                emptyIntakesCache.remove(new UserDateKey(email, null));
+            }
+            intakeIds.forEach(intakeNutritionCache::remove);
+        };
+        evictLocally.run();
+        afterCommit(evictLocally);
+        invalidationBus.publishAll(invalidations);
+        logger.info("Evicted cached data of {} days, {} users and {} intakes", days.size(), emails.size(),
+                intakeIds.size());
+    }
+
+    /**
+     * Удаляет данные локально и рассылает инвалидацию остальным узлам. Внутри транзакции
+     * удаление повторяется после фиксации: чтение, начавшееся между первым удалением и
+     * фиксацией, видит еще старые данные и могло положить их в кэш под новым поколением.
+     */
+    private void invalidate(CacheInvalidation invalidation) {
+        applyInvalidation(invalidation, false);
+        afterCommit(() -> applyInvalidation(invalidation, true));
+        invalidationBus.publish(invalidation);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
         }
-        logger.debug("Enforced cache limit of {} entries, current size={}", limit, cache.size());
     }
 
-    private void logNutritionCacheAccess(String email, LocalDate date, Optional<Map<String, Double>> result) {
-        if (result.isPresent()) {
-            Map<String, Double> nutrition = result.get();
-            String example = nutrition.entrySet().stream()
-                    .limit(3)
-                    .map(e -> e.getKey() + "=" + e.getValue())
-                    .collect(Collectors.joining(", "));
-            if (nutrition.size() > 3) {
-                example += ", ... (total " + nutrition.size() + " elements)";
+    /**
+     * Удаляет данные только из локального кэша; сюда же приходят инвалидации с других узлов.
+     */
+    private void applyInvalidation(CacheInvalidation invalidation) {
+        applyInvalidation(invalidation, false);
+    }
+
+    /**
+     * @param repeat повторное удаление после фиксации транзакции, пишется в журнал на уровне debug
+     */
+    private void applyInvalidation(CacheInvalidation invalidation, boolean repeat) {
+        String email = invalidation.email();
+        LocalDate date = invalidation.date();
+        switch (invalidation.kind()) {
+            case INTAKES_WITH_DATE -> {
+                intakesWithDateCache.remove(new UserDateKey(email, date));
+                emptyIntakesCache.remove(new UserDateKey(email, date));
+                intakeDayFilter.add(email, date);
+                logEviction(repeat, "Evicted intakesWithDate cache for email={} and date={}", email, date);
+            }
+            case NUTRITION -> {
+                nutritionCache.remove(new UserDateKey(email, date));
+                logEviction(repeat, "Evicted nutrition cache for email={} and date={}", email, date);
+            }
+            case INTAKES_WITHOUT_DATE -> {
+                intakesWithoutDateCache.remove(email);
+                emptyIntakesCache.remove(new UserDateKey(email, null));
+                logEviction(repeat, "Evicted intakesWithoutDate cache for email={}", email);
+            }
+            case INTAKE_NUTRITION -> {
+                intakeNutritionCache.remove(invalidation.intakeId());
+                logEviction(repeat, "Evicted nutrition cache for intakeId={}", invalidation.intakeId());
+            }
+            case USER -> {
+                intakesWithDateCache.removeIf((key, intakes) -> key.email().equals(email));
+                intakesWithoutDateCache.remove(email);
+                nutritionCache.removeIf((key, nutrition) -> key.email().equals(email));
+                emptyIntakesCache.removeIf((key, empty) -> key.email().equals(email));
+                // Email мог перейти к другому пользователю вместе с его рационами
+                intakeDayFilter.addToAllDays(email);
+                logEviction(repeat, "Evicted all cached data for email={}", email);
+            }
+            case DATE -> {
+                int removed = intakesWithDateCache.removeIf((key, intakes) -> date.equals(key.date()))
+                        + nutritionCache.removeIf((key, nutrition) -> date.equals(key.date()))
+                        + intakesWithoutDateCache.removeIf((key, intakes) -> intakes.stream()
+                                .anyMatch(intake -> date.equals(intake.creationDate())))
+                        + emptyIntakesCache.removeIf((key, empty) -> key.date() == null || date.equals(key.date()));
+                logEviction(repeat, "Evicted {} cache entries for date={}", removed, date);
+            }
+            case REGION -> {
+                RegionView view = regionsByName.get(invalidation.region());
+                if (view != null) {
+                    int removed = view.region().clear();
+                    logEviction(repeat, "Cleared cache region {}: {} entries removed", invalidation.region(), removed);
+                }
+            }
+            case FOOD -> {
+                // Продукты кэширует FoodNutrientIndex, он подписан на шину сам
             }
-            logger.info("Found nutrition data for email={} and date={}: {}", email, date, example);
+        }
+    }
+
+    private static void logEviction(boolean repeat, String message, Object... arguments) {
+        if (repeat) {
+            logger.debug(message, arguments);
+        } else {
+            logger.info(message, arguments);
+        }
+    }
+
+    private void logNutritionCacheAccess(String email, LocalDate date, Optional<NutritionTotals> result) {
+        if (result.isPresent()) {
+            logger.info("Found nutrition data for email={} and date={}: {}", email, date, result.get());
         } else {
             logger.debug("No nutrition data found for email={} and date={}", email, date);
         }
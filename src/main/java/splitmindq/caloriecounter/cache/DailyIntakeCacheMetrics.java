@@ -0,0 +1,91 @@
+package splitmindq.caloriecounter.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import org.springframework.stereotype.Component;
+import splitmindq.caloriecounter.dto.CacheRegionStatsDto;
+
+/**
+ * Публикует счетчики регионов {@link DailyIntakeCache} в Micrometer с тегом {@code region}.
+ */
+@Component
+public class DailyIntakeCacheMetrics implements MeterBinder {
+    private static final String PREFIX = "daily_intake_cache";
+
+    private final DailyIntakeCache dailyIntakeCache;
+    private final FoodNutrientIndex foodNutrientIndex;
+
+    public DailyIntakeCacheMetrics(DailyIntakeCache dailyIntakeCache, FoodNutrientIndex foodNutrientIndex) {
+        this.dailyIntakeCache = dailyIntakeCache;
+        this.foodNutrientIndex = foodNutrientIndex;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String region : dailyIntakeCache.getRegionNames()) {
+            counter(registry, region, PREFIX + ".gets", "result", "hit", CacheRegionStatsDto::getHits);
+            counter(registry, region, PREFIX + ".gets", "result", "miss", CacheRegionStatsDto::getMisses);
+            counter(registry, region, PREFIX + ".evictions", "cause", "expired",
+                    CacheRegionStatsDto::getExpiredEvictions);
+            counter(registry, region, PREFIX + ".evictions", "cause", "size",
+                    CacheRegionStatsDto::getSizeEvictions);
+            counter(registry, region, PREFIX + ".loads.coalesced", null, null,
+                    CacheRegionStatsDto::getCoalescedLoads);
+
+            FunctionTimer.builder(PREFIX + ".loads", dailyIntakeCache,
+                            cache -> stats(cache, region).getLoads(),
+                            cache -> stats(cache, region).getTotalLoadTimeNanos(),
+                            TimeUnit.NANOSECONDS)
+                    .tag("region", region)
+                    .description("Cache loads from the database")
+                    .register(registry);
+
+            gauge(registry, region, PREFIX + ".size", CacheRegionStatsDto::getEntryCount);
+            gauge(registry, region, PREFIX + ".estimated.bytes", CacheRegionStatsDto::getEstimatedBytes);
+        }
+
+        FunctionCounter.builder(PREFIX + ".day_filter.rejections", dailyIntakeCache,
+                        DailyIntakeCache::getIntakeDayFilterRejections)
+                .description("Intake lookups answered empty by the per-day Bloom filter")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".nutrition.drift", dailyIntakeCache,
+                        DailyIntakeCache::getNutritionDriftCount)
+                .description("Delta-updated nutrition entries evicted after disagreeing with the database")
+                .register(registry);
+        Gauge.builder("food_nutrient_index.size", foodNutrientIndex, FoodNutrientIndex::size)
+                .description("Foods held in the in-memory nutrient index")
+                .register(registry);
+        FunctionCounter.builder("food_nutrient_index.misses", foodNutrientIndex, FoodNutrientIndex::getMissCount)
+                .description("Nutrient index lookups that fell back to the database")
+                .register(registry);
+    }
+
+    private void counter(MeterRegistry registry, String region, String name, String tagKey, String tagValue,
+                         ToLongFunction<CacheRegionStatsDto> value) {
+        FunctionCounter.Builder<DailyIntakeCache> builder = FunctionCounter.builder(name, dailyIntakeCache,
+                        cache -> value.applyAsLong(stats(cache, region)))
+                .tag("region", region);
+        if (tagKey != null) {
+            builder.tag(tagKey, tagValue);
+        }
+        builder.register(registry);
+    }
+
+    private void gauge(MeterRegistry registry, String region, String name,
+                       ToLongFunction<CacheRegionStatsDto> value) {
+        ToDoubleFunction<DailyIntakeCache> function = cache -> value.applyAsLong(stats(cache, region));
+        Gauge.builder(name, dailyIntakeCache, function)
+                .tag("region", region)
+                .register(registry);
+    }
+
+    private static CacheRegionStatsDto stats(DailyIntakeCache cache, String region) {
+        return cache.getRegionStats(region);
+    }
+}
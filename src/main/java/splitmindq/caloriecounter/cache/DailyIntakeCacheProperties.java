@@ -0,0 +1,177 @@
+package splitmindq.caloriecounter.cache;
+
+import java.time.Duration;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Настройки регионов {@link DailyIntakeCache}, задаются свойствами {@code cache.daily-intake.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.daily-intake")
+public class DailyIntakeCacheProperties {
+    /**
+     * Реализация хранилища регионов, см. {@link CacheBackend}.
+     */
+    private CacheBackend backend = CacheBackend.BOUNDED;
+
+    private Region intakesWithDate = new Region(10_000, Duration.ofMinutes(10), 0.05);
+    private Region intakesWithoutDate = new Region(1_000, Duration.ofMinutes(10), 0.05);
+    private Region nutrition = new Region(10_000, Duration.ofMinutes(30), 0.01, Duration.ofMinutes(5));
+    private Region intakeNutrition = new Region(10_000, Duration.ofMinutes(30), 0.01, Duration.ofMinutes(5));
+    /**
+     * Отметки «рационов нет» для пары (email, дата) и для email без даты.
+     * Короткий TTL ограничивает ошибку, если инвалидация до узла не дошла.
+     */
+    private Region emptyIntakes = new Region(50_000, Duration.ofSeconds(30), 0.01);
+
+    private DayFilter dayFilter = new DayFilter();
+
+    /**
+     * Период продвижения колеса таймеров, удаляющего истекшие записи.
+     */
+    private Duration expiryInterval = Duration.ofSeconds(1);
+
+    /**
+     * Потоки и длина очереди фонового обновления записей (refresh-ahead).
+     * Задачи сверх очереди отбрасываются: запись просто истечет и загрузится при промахе.
+     */
+    private int refreshThreads = 2;
+    private int refreshQueueCapacity = 256;
+
+    private Warmup warmup = new Warmup();
+
+    private DeltaVerification deltaVerification = new DeltaVerification();
+
+    private FoodIndex foodIndex = new FoodIndex();
+
+    /**
+     * Фильтры Блума пользователей с рационами за последние {@code days} дней, см. {@link IntakeDayFilter}.
+     */
+    @Data
+    public static class DayFilter {
+        private boolean enabled = true;
+        private int days = 7;
+        private long expectedUsersPerDay = 100_000;
+        private double falsePositiveRate = 0.01;
+        /**
+         * Сколько доверять отрицательным ответам после начала загрузки последней перестройки:
+         * столько же, сколько живет запись {@code emptyIntakes}.
+         */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+        /**
+         * Период перестройки фильтра из базы, должен быть короче {@link #negativeTtl}:
+         * так потерянная инвалидация с другого узла исправляется до истечения срока доверия.
+         */
+        private Duration rebuildInterval = Duration.ofSeconds(20);
+    }
+
+    private Disk disk = new Disk();
+
+    /**
+     * Дисковый уровень для {@link CacheBackend#TIERED}. У каждого узла должен быть свой каталог.
+     */
+    @Data
+    public static class Disk {
+        private String directory = "cache-data";
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+        /**
+         * Сверх этого числа самый старый сегмент удаляется вместе с записями.
+         */
+        private int maxSegments = 8;
+        /**
+         * Предельный срок записей, восстановленных с диска после перезапуска: пока узел
+         * был остановлен, он мог пропустить инвалидации от других узлов.
+         */
+        private Duration recoveredTtl = Duration.ofMinutes(2);
+    }
+
+    /**
+     * Прогрев кэша при старте: рационы и КБЖУ за сегодня и вчера для недавно активных пользователей.
+     * Выполняется до того, как приложение начинает принимать трафик.
+     */
+    @Data
+    public static class Warmup {
+        private boolean enabled = true;
+        /**
+         * Пользователь считается активным, если у него есть рацион не старше этого числа дней.
+         */
+        private int activeDays = 7;
+        private int maxUsers = 5_000;
+        /**
+         * Количество email в одном запросе {@code IN (...)}.
+         */
+        private int batchSize = 500;
+        private int parallelism = 4;
+        /**
+         * Предельное время прогрева; по его истечении старт продолжается с частично заполненным кэшем.
+         */
+        private Duration timeout = Duration.ofMinutes(1);
+    }
+
+    /**
+     * Сверка КБЖУ, обновленных приращениями ({@link DailyIntakeCache#applyNutritionDelta}),
+     * с агрегатом из базы. Расхождение удаляет запись, и она перечитывается при следующем запросе.
+     */
+    @Data
+    public static class DeltaVerification {
+        private boolean enabled = true;
+        private Duration interval = Duration.ofMinutes(5);
+        /**
+         * Сколько ключей каждого региона сверяется за один проход.
+         */
+        private int maxKeysPerRun = 200;
+    }
+
+    /**
+     * Полная перезагрузка {@link FoodNutrientIndex} из базы: исправляет КБЖУ продуктов,
+     * инвалидация которых с другого узла потерялась.
+     */
+    @Data
+    public static class FoodIndex {
+        private Duration reloadInterval = Duration.ofMinutes(1);
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class Region {
+        private int maxEntries;
+        private Duration ttl;
+        private EvictionPolicy policy = EvictionPolicy.LRU;
+        /**
+         * Доля максимального размера кучи, которую может занимать регион по оценке
+         * {@link CacheWeights}. Нулевое значение отключает ограничение по памяти.
+         */
+        private double heapShare;
+        /**
+         * Окно перед истечением, в котором обращение к записи запускает ее фоновое обновление.
+         * Нулевое значение отключает refresh-ahead.
+         */
+        private Duration refreshAhead = Duration.ZERO;
+
+        Region(int maxEntries, Duration ttl, double heapShare) {
+            this.maxEntries = maxEntries;
+            this.ttl = ttl;
+            this.heapShare = heapShare;
+        }
+
+        Region(int maxEntries, Duration ttl, double heapShare, Duration refreshAhead) {
+            this(maxEntries, ttl, heapShare);
+            this.refreshAhead = refreshAhead;
+        }
+
+        /**
+         * Бюджет региона в байтах или {@link Long#MAX_VALUE}, если он не ограничен.
+         */
+        public long maxWeightBytes() {
+            if (heapShare <= 0.0) {
+                return Long.MAX_VALUE;
+            }
+            return (long) (Runtime.getRuntime().maxMemory() * Math.min(heapShare, 1.0));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package splitmindq.caloriecounter.cache;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.IntakeFoodRow;
+import splitmindq.caloriecounter.dao.UserDay;
+import splitmindq.caloriecounter.dao.UserNutritionTotalsView;
+
+/**
+ * Прогревает {@link DailyIntakeCache} после старта: перестраивает фильтр дней по рационам
+ * за его окно (и далее повторяет перестройку каждые {@code rebuildInterval}), затем
+ * для недавно активных пользователей загружает рационы и КБЖУ за сегодня и вчера
+ * групповыми запросами по пачкам email.
+ * Spring Boot переводит readiness в ACCEPTING_TRAFFIC только после завершения
+ * всех {@link ApplicationRunner}, поэтому трафик приходит уже на прогретый кэш.
+ */
+@Slf4j
+@Component
+public class DailyIntakeCacheWarmer implements ApplicationRunner {
+    private final DailyIntakeRepository dailyIntakeRepository;
+    private final DailyIntakeCache dailyIntakeCache;
+    private final DailyIntakeCacheProperties.Warmup settings;
+    private final DailyIntakeCacheProperties.DayFilter dayFilterSettings;
+    private final ScheduledExecutorService dayFilterExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "intake-day-filter-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DailyIntakeCacheWarmer(DailyIntakeRepository dailyIntakeRepository,
+                                  DailyIntakeCache dailyIntakeCache,
+                                  DailyIntakeCacheProperties properties) {
+        this.dailyIntakeRepository = dailyIntakeRepository;
+        this.dailyIntakeCache = dailyIntakeCache;
+        this.settings = properties.getWarmup();
+        this.dayFilterSettings = properties.getDayFilter();
+    }
+
+    @PreDestroy
+    public void stop() {
+        dayFilterExecutor.shutdownNow();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (dailyIntakeCache.isIntakeDayFilterEnabled()) {
+            long start = System.nanoTime();
+            int userDays = rebuildIntakeDayFilter();
+            log.info("Intake day filter loaded {} user-days in {} ms", userDays,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+            long intervalMillis = dayFilterSettings.getRebuildInterval().toMillis();
+            dayFilterExecutor.scheduleWithFixedDelay(this::rebuildIntakeDayFilterSafely,
+                    intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        if (!settings.isEnabled()) {
+            log.info("Cache warm-up is disabled");
+            return;
+        }
+        long start = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        List<String> emails = dailyIntakeRepository.findRecentlyActiveEmails(
+                today.minusDays(settings.getActiveDays()), PageRequest.of(0, settings.getMaxUsers()));
+        if (emails.isEmpty()) {
+            log.info("Cache warm-up skipped: no users active in the last {} days", settings.getActiveDays());
+            return;
+        }
+
+        List<Runnable> batches = new ArrayList<>();
+        AtomicInteger intakeEntries = new AtomicInteger();
+        AtomicInteger nutritionEntries = new AtomicInteger();
+        for (int from = 0; from < emails.size(); from += settings.getBatchSize()) {
+            List<String> chunk = emails.subList(from, Math.min(from + settings.getBatchSize(), emails.size()));
+            for (LocalDate date : List.of(today, today.minusDays(1))) {
+                batches.add(() -> intakeEntries.addAndGet(warmIntakes(chunk, date)));
+                batches.add(() -> nutritionEntries.addAndGet(warmNutrition(chunk, date)));
+            }
+        }
+        log.info("Cache warm-up started: {} users, {} batches", emails.size(), batches.size());
+
+        int completed = runBatches(batches, start);
+        log.info("Cache warm-up finished in {} ms: {}/{} batches, {} intake lists and {} nutrition entries cached",
+                Duration.ofNanos(System.nanoTime() - start).toMillis(), completed, batches.size(),
+                intakeEntries.get(), nutritionEntries.get());
+    }
+
+    private void rebuildIntakeDayFilterSafely() {
+        try {
+            rebuildIntakeDayFilter();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все последующие запуски; отрицательные ответы
+            // фильтра отключатся сами по истечении срока доверия
+            log.warn("Intake day filter rebuild failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return количество загруженных пар пользователь-день
+     */
+    private int rebuildIntakeDayFilter() {
+        AtomicInteger userDays = new AtomicInteger();
+        dailyIntakeCache.rebuildIntakeDayFilter(() -> {
+            List<UserDay> rows = dailyIntakeRepository.findUserDaysSince(dailyIntakeCache.getIntakeDayFilterStart());
+            userDays.set(rows.size());
+            return rows.stream()
+                    .collect(Collectors.groupingBy(UserDay::date,
+                            Collectors.mapping(UserDay::email, Collectors.toList())));
+        });
+        return userDays.get();
+    }
+
+    private int runBatches(List<Runnable> batches, long start) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(settings.getParallelism(), batches.size())), runnable -> {
+                    Thread thread = new Thread(runnable, "daily-intake-cache-warmup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        long deadline = start + settings.getTimeout().toNanos();
+        int completed = 0;
+        try {
+            List<Future<?>> futures = batches.stream().<Future<?>>map(executor::submit).toList();
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    completed++;
+                    if (completed % 10 == 0) {
+                        log.info("Cache warm-up progress: {}/{} batches", completed, batches.size());
+                    }
+                } catch (ExecutionException e) {
+                    log.warn("Cache warm-up batch failed: {}", e.getCause().getMessage());
+                } catch (TimeoutException e) {
+                    log.warn("Cache warm-up timed out after {}, continuing startup", settings.getTimeout());
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return completed;
+    }
+
+    private int warmIntakes(List<String> emails, LocalDate date) {
+        Map<String, Long> generations = new HashMap<>();
+        emails.forEach(email -> generations.put(email, dailyIntakeCache.intakesWithDateGeneration(email, date)));
+        Map<String, List<IntakeFoodRow>> byEmail = dailyIntakeRepository.findIntakeRowsForEmailsWithDate(emails, date)
+                .stream()
+                .collect(Collectors.groupingBy(IntakeFoodRow::email, LinkedHashMap::new, Collectors.toList()));
+        int cached = 0;
+        for (Map.Entry<String, List<IntakeFoodRow>> entry : byEmail.entrySet()) {
+            Long generation = generations.get(entry.getKey());
+            if (generation != null && dailyIntakeCache.preloadIntakesWithDate(
+                    entry.getKey(), date, IntakeFoodRow.toSnapshots(entry.getValue()), generation)) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+
+    private int warmNutrition(List<String> emails, LocalDate date) {
+        Map<String, Long> generations = new HashMap<>();
+        emails.forEach(email -> generations.put(email, dailyIntakeCache.nutritionGeneration(email, date)));
+        int cached = 0;
+        for (UserNutritionTotalsView row : dailyIntakeRepository.calculateDailyNutritionForEmails(emails, date)) {
+            Long generation = generations.get(row.getEmail());
+            if (generation != null
+                    && dailyIntakeCache.preloadNutritionData(row.getEmail(), date, row.toTotals(), generation)) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,76 @@
+package splitmindq.caloriecounter.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Двоичное представление ключа или значения в дисковом уровне {@link MappedSegmentStore}.
+ */
+interface DiskCodec<T> {
+    int size(T value);
+
+    void write(T value, ByteBuffer target);
+
+    T read(ByteBuffer source);
+
+    DiskCodec<Long> LONG = new DiskCodec<>() {
+        @Override
+        public int size(Long value) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(Long value, ByteBuffer target) {
+            target.putLong(value);
+        }
+
+        @Override
+        public Long read(ByteBuffer source) {
+            return source.getLong();
+        }
+    };
+
+    DiskCodec<UserDateKey> USER_DATE_KEY = new DiskCodec<>() {
+        @Override
+        public int size(UserDateKey value) {
+            return Short.BYTES + value.email().getBytes(StandardCharsets.UTF_8).length + Long.BYTES;
+        }
+
+        @Override
+        public void write(UserDateKey value, ByteBuffer target) {
+            byte[] email = value.email().getBytes(StandardCharsets.UTF_8);
+            target.putShort((short) email.length);
+            target.put(email);
+            target.putLong(value.date().toEpochDay());
+        }
+
+        @Override
+        public UserDateKey read(ByteBuffer source) {
+            byte[] email = new byte[Short.toUnsignedInt(source.getShort())];
+            source.get(email);
+            return new UserDateKey(new String(email, StandardCharsets.UTF_8), LocalDate.ofEpochDay(source.getLong()));
+        }
+    };
+
+    DiskCodec<NutritionTotals> NUTRITION_TOTALS = new DiskCodec<>() {
+        @Override
+        public int size(NutritionTotals value) {
+            return 4 * Double.BYTES;
+        }
+
+        @Override
+        public void write(NutritionTotals value, ByteBuffer target) {
+            target.putDouble(value.calories());
+            target.putDouble(value.protein());
+            target.putDouble(value.fats());
+            target.putDouble(value.carbs());
+        }
+
+        @Override
+        public NutritionTotals read(ByteBuffer source) {
+            return new NutritionTotals(source.getDouble(), source.getDouble(), source.getDouble(), source.getDouble());
+        }
+    };
+}
@@ -0,0 +1,9 @@
+package splitmindq.caloriecounter.cache;
+
+/**
+ * Оценивает объем памяти, удерживаемый записью региона (ключ и значение), в байтах.
+ */
+@FunctionalInterface
+interface EntryWeigher<K, V> {
+    long weigh(K key, V value);
+}
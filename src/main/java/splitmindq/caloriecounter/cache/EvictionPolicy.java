@@ -0,0 +1,17 @@
+package splitmindq.caloriecounter.cache;
+
+/**
+ * Политика вытеснения записей из региона кэша при превышении лимита.
+ */
+public enum EvictionPolicy {
+    /**
+     * Вытесняется запись, к которой дольше всего не обращались.
+     */
+    LRU,
+
+    /**
+     * LRU с частотным фильтром допуска: новая запись вытесняет LRU-жертву,
+     * только если по оценке {@link FrequencySketch} к ней обращаются чаще.
+     */
+    TINY_LFU
+}
@@ -0,0 +1,408 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidation;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidationBus;
+import splitmindq.caloriecounter.dao.FoodRepository;
+import splitmindq.caloriecounter.dao.IntakeFoodWeightView;
+import splitmindq.caloriecounter.model.Food;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * КБЖУ на 100 г всех продуктов в памяти: открытая адресация по id продукта над параллельными
+ * массивами {@code long[]}/{@code double[]}, без упаковки значений. Таблица неизменяема и
+ * заменяется целиком при изменении каталога (copy-on-write), поэтому чтение не берет блокировок.
+ * Изменения применяются после фиксации транзакции и рассылаются другим узлам через
+ * {@link CacheInvalidationBus}; промах догружает продукт из базы. Доставка инвалидаций
+ * best-effort, поэтому таблица еще и периодически перезагружается целиком.
+ */
+@Slf4j
+@Component
+public class FoodNutrientIndex {
+    private final FoodRepository foodRepository;
+    private final CacheInvalidationBus invalidationBus;
+    private final DailyIntakeCacheProperties.FoodIndex settings;
+    private final LongAdder misses = new LongAdder();
+    private final ScheduledExecutorService reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "food-nutrient-index-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Table table = new Table(0);
+    /**
+     * Продукты, измененные во время идущей перезагрузки; {@code null}, пока перезагрузки нет.
+     * Доступ под монитором индекса.
+     */
+    private Set<Long> changedDuringReload;
+
+    public FoodNutrientIndex(FoodRepository foodRepository, CacheInvalidationBus invalidationBus,
+                             DailyIntakeCacheProperties properties) {
+        this.foodRepository = foodRepository;
+        this.invalidationBus = invalidationBus;
+        this.settings = properties.getFoodIndex();
+        invalidationBus.subscribe(this::applyInvalidation);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        reload();
+        log.info("Loaded {} foods into nutrient index", size());
+        long intervalMillis = settings.getReloadInterval().toMillis();
+        reloadExecutor.scheduleWithFixedDelay(this::reloadSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        reloadExecutor.shutdownNow();
+    }
+
+    private void reloadSafely() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все последующие запуски задачи
+            log.warn("Food nutrient index reload failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Загружает все продукты и заменяет таблицу. Продукты, измененные за время загрузки,
+     * сохраняют значения из текущей таблицы: они свежее прочитанного снимка.
+     */
+    public void reload() {
+        synchronized (this) {
+            changedDuringReload = new HashSet<>();
+        }
+        try {
+            List<Food> foods = foodRepository.findAll();
+            Table loaded = new Table(foods.size());
+            for (Food food : foods) {
+                loaded.insert(food.getId(), food.getCalories(), food.getProtein(), food.getFats(), food.getCarbs());
+            }
+            synchronized (this) {
+                Table current = table;
+                if (!changedDuringReload.isEmpty()) {
+                    // Запас под продукты, которых нет в снимке
+                    loaded = loaded.copy(loaded.size + changedDuringReload.size(), Table.NO_ID);
+                }
+                List<Long> removed = new ArrayList<>();
+                for (Long foodId : changedDuringReload) {
+                    int slot = current.indexOf(foodId);
+                    if (slot >= 0) {
+                        loaded.insert(foodId, current.calories[slot], current.protein[slot],
+                                current.fats[slot], current.carbs[slot]);
+                    } else if (loaded.indexOf(foodId) >= 0) {
+                        removed.add(foodId);
+                    }
+                }
+                // Копия без продукта рассчитана только на оставшиеся, поэтому удаления идут после вставок
+                for (Long foodId : removed) {
+                    loaded = loaded.copy(loaded.size - 1, foodId);
+                }
+                table = loaded;
+            }
+            log.debug("Loaded {} foods into nutrient index", loaded.size);
+        } finally {
+            synchronized (this) {
+                changedDuringReload = null;
+            }
+        }
+    }
+
+    /**
+     * Суммирует КБЖУ строк рационов по id рациона. Строки одного рациона, идущие подряд,
+     * складываются в локальные переменные без промежуточных объектов.
+     */
+    public Map<Long, NutritionTotals> totalsByIntake(List<? extends IntakeFoodWeightView> rows) {
+        Map<Long, NutritionTotals> totals = new HashMap<>();
+        Table current = table;
+        long intakeId = 0;
+        boolean hasIntake = false;
+        double calories = 0.0;
+        double protein = 0.0;
+        double fats = 0.0;
+        double carbs = 0.0;
+        for (IntakeFoodWeightView row : rows) {
+            if (hasIntake && row.getIntakeId() != intakeId) {
+                totals.merge(intakeId, new NutritionTotals(calories, protein, fats, carbs), NutritionTotals::plus);
+                calories = 0.0;
+                protein = 0.0;
+                fats = 0.0;
+                carbs = 0.0;
+            }
+            intakeId = row.getIntakeId();
+            hasIntake = true;
+
+            long foodId = row.getFoodId();
+            int slot = current.indexOf(foodId);
+            if (slot < 0) {
+                current = loadMissing(foodId);
+                slot = current.indexOf(foodId);
+                if (slot < 0) {
+                    log.warn("Food id={} of intake id={} not found, skipping it in nutrition totals", foodId, intakeId);
+                    continue;
+                }
+            }
+            double weight = row.getWeight();
+            // Тот же порядок операций, что и в NutritionTotals.ofPortion
+            calories += current.calories[slot] * weight / 100.0;
+            protein += current.protein[slot] * weight / 100.0;
+            fats += current.fats[slot] * weight / 100.0;
+            carbs += current.carbs[slot] * weight / 100.0;
+        }
+        if (hasIntake) {
+            totals.merge(intakeId, new NutritionTotals(calories, protein, fats, carbs), NutritionTotals::plus);
+        }
+        return totals;
+    }
+
+    /**
+     * Заполняет колонки КБЖУ на 100 г для первых {@code count} id продуктов пачки.
+     * Отсутствующие в индексе продукты догружаются одним запросом на пачку;
+     * продукты, которых нет и в базе, получают нули.
+     *
+     * @return количество таких продуктов
+     */
+    public int gather(long[] foodIds, int count,
+                      double[] calories, double[] protein, double[] fats, double[] carbs) {
+        Table current = table;
+        Set<Long> missing = null;
+        for (int i = 0; i < count; i++) {
+            if (current.indexOf(foodIds[i]) < 0) {
+                if (missing == null) {
+                    missing = new HashSet<>();
+                }
+                missing.add(foodIds[i]);
+            }
+        }
+        if (missing != null) {
+            current = loadMissing(missing);
+        }
+        int unknown = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = current.indexOf(foodIds[i]);
+            if (slot < 0) {
+                calories[i] = 0.0;
+                protein[i] = 0.0;
+                fats[i] = 0.0;
+                carbs[i] = 0.0;
+                unknown++;
+                continue;
+            }
+            calories[i] = current.calories[slot];
+            protein[i] = current.protein[slot];
+            fats[i] = current.fats[slot];
+            carbs[i] = current.carbs[slot];
+        }
+        return unknown;
+    }
+
+    /**
+     * Запоминает КБЖУ созданного или измененного продукта после фиксации транзакции.
+     */
+    public void onFoodSaved(Food food) {
+        long foodId = food.getId();
+        double calories = food.getCalories();
+        double protein = food.getProtein();
+        double fats = food.getFats();
+        double carbs = food.getCarbs();
+        afterCommit(() -> put(foodId, calories, protein, fats, carbs, false));
+        invalidationBus.publish(CacheInvalidation.food(foodId));
+    }
+
+    public void onFoodDeleted(Long foodId) {
+        afterCommit(() -> remove(foodId));
+        invalidationBus.publish(CacheInvalidation.food(foodId));
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    private Table loadMissing(long foodId) {
+        misses.increment();
+        foodRepository.findById(foodId).ifPresent(food ->
+                // Не перетираем значение, которое успела записать фиксация изменения продукта
+                put(foodId, food.getCalories(), food.getProtein(), food.getFats(), food.getCarbs(), true));
+        return table;
+    }
+
+    /**
+     * Догружает продукты одним запросом и вставляет их одной копией таблицы.
+     */
+    private Table loadMissing(Collection<Long> foodIds) {
+        misses.add(foodIds.size());
+        List<Food> foods = foodRepository.findAllById(foodIds);
+        if (!foods.isEmpty()) {
+            putAllIfAbsent(foods);
+        }
+        return table;
+    }
+
+    private void applyInvalidation(CacheInvalidation invalidation) {
+        if (invalidation.kind() != CacheInvalidation.Kind.FOOD) {
+            return;
+        }
+        Long foodId = invalidation.foodId();
+        foodRepository.findById(foodId).ifPresentOrElse(
+                food -> put(foodId, food.getCalories(), food.getProtein(), food.getFats(), food.getCarbs(), false),
+                () -> remove(foodId));
+        log.debug("Refreshed food id={} in nutrient index after remote change", foodId);
+    }
+
+    private synchronized void put(long foodId, double calories, double protein, double fats, double carbs,
+                                  boolean onlyIfAbsent) {
+        Table current = table;
+        int slot = current.indexOf(foodId);
+        if (slot >= 0 && onlyIfAbsent) {
+            return;
+        }
+        Table copy = current.copy(slot < 0 ? current.size + 1 : current.size, Table.NO_ID);
+        copy.insert(foodId, calories, protein, fats, carbs);
+        table = copy;
+        markChanged(foodId);
+    }
+
+    private synchronized void putAllIfAbsent(List<Food> foods) {
+        Table current = table;
+        Table copy = current.copy(current.size + foods.size(), Table.NO_ID);
+        for (Food food : foods) {
+            // Не перетираем значения, которые успела записать фиксация изменения продукта
+            if (current.indexOf(food.getId()) < 0) {
+                copy.insert(food.getId(), food.getCalories(), food.getProtein(), food.getFats(), food.getCarbs());
+                markChanged(food.getId());
+            }
+        }
+        table = copy;
+    }
+
+    private synchronized void remove(long foodId) {
+        Table current = table;
+        if (current.indexOf(foodId) >= 0) {
+            table = current.copy(current.size - 1, foodId);
+        }
+        markChanged(foodId);
+    }
+
+    private void markChanged(long foodId) {
+        if (changedDuringReload != null) {
+            changedDuringReload.add(foodId);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Хэш-таблица с линейным пробированием, заполненная не больше чем наполовину.
+     * Пустой слот помечен id 0: идентификаторы продуктов начинаются с 1.
+     */
+    private static final class Table {
+        static final long NO_ID = 0L;
+        private static final int MIN_CAPACITY = 16;
+
+        final long[] ids;
+        final double[] calories;
+        final double[] protein;
+        final double[] fats;
+        final double[] carbs;
+        final int mask;
+        int size;
+
+        Table(int expectedSize) {
+            int capacity = MIN_CAPACITY;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            ids = new long[capacity];
+            calories = new double[capacity];
+            protein = new double[capacity];
+            fats = new double[capacity];
+            carbs = new double[capacity];
+            mask = capacity - 1;
+        }
+
+        int indexOf(long id) {
+            if (id == NO_ID) {
+                return -1;
+            }
+            for (int slot = slotOf(id); ; slot = (slot + 1) & mask) {
+                long current = ids[slot];
+                if (current == id) {
+                    return slot;
+                }
+                if (current == NO_ID) {
+                    return -1;
+                }
+            }
+        }
+
+        void insert(long id, double calories, double protein, double fats, double carbs) {
+            if (id == NO_ID) {
+                return;
+            }
+            int slot = slotOf(id);
+            while (ids[slot] != NO_ID && ids[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (ids[slot] == NO_ID) {
+                ids[slot] = id;
+                size++;
+            }
+            this.calories[slot] = calories;
+            this.protein[slot] = protein;
+            this.fats[slot] = fats;
+            this.carbs[slot] = carbs;
+        }
+
+        /**
+         * Копия таблицы без продукта {@code excludedId}, рассчитанная на {@code expectedSize} продуктов.
+         */
+        Table copy(int expectedSize, long excludedId) {
+            Table copy = new Table(expectedSize);
+            for (int slot = 0; slot < ids.length; slot++) {
+                long id = ids[slot];
+                if (id != NO_ID && id != excludedId) {
+                    copy.insert(id, calories[slot], protein[slot], fats[slot], carbs[slot]);
+                }
+            }
+            return copy;
+        }
+
+        private int slotOf(long id) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
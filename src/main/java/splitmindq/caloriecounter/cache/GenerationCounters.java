@@ -0,0 +1,42 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Счетчики поколений ключей региона. Каждая инвалидация увеличивает поколение ключа,
+ * а запись, загруженная при более старом поколении, в регион не допускается:
+ * так чтение, начавшееся до изменения данных, не вернет устаревшее значение в кэш
+ * после эвикции. Ключи распределены по фиксированному числу полос, поэтому память
+ * не растет с числом ключей; коллизия лишь изредка отклоняет актуальное значение.
+ */
+final class GenerationCounters {
+    private static final int STRIPES = 1024;
+
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    long current(Object key) {
+        return generations.get(stripe(key));
+    }
+
+    void advance(Object key) {
+        generations.incrementAndGet(stripe(key));
+    }
+
+    /**
+     * Продвигает все поколения — для инвалидаций по условию, когда затронутые
+     * ключи (в том числе еще загружаемые) заранее неизвестны.
+     */
+    void advanceAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+    }
+
+    private static int stripe(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        hash ^= hash >>> 16;
+        return hash & (STRIPES - 1);
+    }
+}
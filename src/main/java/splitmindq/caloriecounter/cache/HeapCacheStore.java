@@ -0,0 +1,221 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Простое хранилище на {@link ConcurrentHashMap} без ограничения размера:
+ * записи удаляются только по TTL и инвалидацией. Подходит для небольших инсталляций
+ * и как эталон при сравнении с {@link CacheRegion}.
+ * Точечные операции идут под блокировкой чтения (сериализуются по ключу внутри {@code compute}),
+ * удаление по условию — под блокировкой записи, чтобы проверка поколения в
+ * {@link #put(Object, Object, long)} не разошлась с одновременным {@link #removeIf}.
+ */
+final class HeapCacheStore<K, V> implements CacheStore<K, V> {
+    private final String name;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+    private final EntryWeigher<K, V> weigher;
+    private final RegionStats stats = new RegionStats();
+    private final GenerationCounters generations = new GenerationCounters();
+    private final ConcurrentHashMap<K, CacheEntry<K, V>> entries = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong weightedSize = new AtomicLong();
+
+    HeapCacheStore(String name, DailyIntakeCacheProperties.Region settings, EntryWeigher<K, V> weigher) {
+        if (settings.getTtl() == null || settings.getTtl().isNegative() || settings.getTtl().isZero()) {
+            throw new IllegalArgumentException("Cache region " + name + " must have a positive ttl");
+        }
+        this.name = name;
+        this.ttlNanos = settings.getTtl().toNanos();
+        this.refreshAheadNanos = settings.getRefreshAhead() == null ? 0L : settings.getRefreshAhead().toNanos();
+        this.weigher = weigher;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public RegionStats stats() {
+        return stats;
+    }
+
+    @Override
+    public V get(K key) {
+        V value = peek(key);
+        if (value != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+        }
+        return value;
+    }
+
+    @Override
+    public V peek(K key) {
+        CacheEntry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            if (entries.remove(key, entry)) {
+                weightedSize.addAndGet(-entry.getWeight());
+                stats.recordExpiredEviction();
+            }
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    @Override
+    public long generation(K key) {
+        return generations.current(key);
+    }
+
+    @Override
+    public boolean put(K key, V value, long generation) {
+        long weight = weigher.weigh(key, value);
+        CacheEntry<K, V> entry = new CacheEntry<>(key, value, System.nanoTime() + ttlNanos, weight);
+        boolean[] stored = new boolean[1];
+        lock.readLock().lock();
+        try {
+            entries.compute(key, (k, previous) -> {
+                if (generations.current(k) != generation) {
+                    return previous;
+                }
+                weightedSize.addAndGet(weight - (previous == null ? 0L : previous.getWeight()));
+                stored[0] = true;
+                return entry;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stored[0];
+    }
+
+    @Override
+    public Object stamp(K key) {
+        CacheEntry<K, V> entry = entries.get(key);
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry;
+    }
+
+    @Override
+    public boolean update(K key, Object stamp, UnaryOperator<V> function) {
+        boolean[] updated = new boolean[1];
+        lock.readLock().lock();
+        try {
+            entries.compute(key, (k, previous) -> {
+                generations.advance(k);
+                if (previous == null) {
+                    return null;
+                }
+                weightedSize.addAndGet(-previous.getWeight());
+                V value = previous == stamp && !previous.isExpired(System.nanoTime())
+                        ? function.apply(previous.getValue())
+                        : null;
+                if (value == null) {
+                    return null;
+                }
+                CacheEntry<K, V> entry = new CacheEntry<>(k, value, previous.getDeadlineNanos(),
+                        weigher.weigh(k, value));
+                weightedSize.addAndGet(entry.getWeight());
+                updated[0] = true;
+                return entry;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return updated[0];
+    }
+
+    @Override
+    public void remove(K key) {
+        lock.readLock().lock();
+        try {
+            entries.compute(key, (k, previous) -> {
+                generations.advance(k);
+                if (previous != null) {
+                    weightedSize.addAndGet(-previous.getWeight());
+                }
+                return null;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int removeIf(BiPredicate<? super K, ? super V> filter) {
+        lock.writeLock().lock();
+        try {
+            generations.advanceAll();
+            int removed = 0;
+            for (CacheEntry<K, V> entry : entries.values()) {
+                if (filter.test(entry.getKey(), entry.getValue()) && entries.remove(entry.getKey(), entry)) {
+                    weightedSize.addAndGet(-entry.getWeight());
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int clear() {
+        return removeIf((key, value) -> true);
+    }
+
+    @Override
+    public boolean claimRefresh(K key) {
+        if (refreshAheadNanos <= 0L) {
+            return false;
+        }
+        long now = System.nanoTime();
+        boolean[] claimed = new boolean[1];
+        entries.computeIfPresent(key, (k, entry) -> {
+            if (!entry.refreshing && !entry.isExpired(now)
+                    && entry.getDeadlineNanos() - now <= refreshAheadNanos) {
+                entry.refreshing = true;
+                claimed[0] = true;
+            }
+            return entry;
+        });
+        return claimed[0];
+    }
+
+    @Override
+    public void releaseRefresh(K key) {
+        entries.computeIfPresent(key, (k, entry) -> {
+            entry.refreshing = false;
+            return entry;
+        });
+    }
+
+    @Override
+    public void expire(long nowNanos) {
+        for (CacheEntry<K, V> entry : entries.values()) {
+            if (entry.isExpired(nowNanos) && entries.remove(entry.getKey(), entry)) {
+                weightedSize.addAndGet(-entry.getWeight());
+                stats.recordExpiredEviction();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public long weightedSize() {
+        return weightedSize.get();
+    }
+}
@@ -0,0 +1,133 @@
+package splitmindq.caloriecounter.cache;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Фильтры Блума по дням: какие пользователи могли создавать рационы за дату.
+ * Отрицательный ответ позволяет вернуть пустой список без запроса в базу.
+ * Фильтры только пополняются: создание рациона, любая инвалидация рационов за день
+ * (в том числе пришедшая с другого узла) и смена email добавляют пользователя,
+ * удаление ничего не убирает — отсюда лишь ложные «возможно», но не ложные «нет».
+ * Исключение — потерянная инвалидация с другого узла, поэтому отрицательным ответам
+ * доверяют не дольше {@code negativeTtl} с начала загрузки последней перестройки.
+ * До первой перестройки, после истечения этого срока и для дат вне окна ответ всегда «возможно».
+ */
+final class IntakeDayFilter {
+    private final int days;
+    private final long expectedUsersPerDay;
+    private final double falsePositiveRate;
+    private final long negativeTtlNanos;
+    private final LongSupplier nanoClock;
+    private final Map<LocalDate, BloomFilter> filters = new ConcurrentHashMap<>();
+    private final LongAdder rejections = new LongAdder();
+    private volatile boolean ready;
+    private volatile long trustedSince;
+
+    IntakeDayFilter(DailyIntakeCacheProperties.DayFilter settings) {
+        this(settings, System::nanoTime);
+    }
+
+    IntakeDayFilter(DailyIntakeCacheProperties.DayFilter settings, LongSupplier nanoClock) {
+        this.days = settings.isEnabled() ? settings.getDays() : 0;
+        this.expectedUsersPerDay = settings.getExpectedUsersPerDay();
+        this.falsePositiveRate = settings.getFalsePositiveRate();
+        this.negativeTtlNanos = settings.getNegativeTtl().toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    boolean isEnabled() {
+        return days > 0;
+    }
+
+    /**
+     * Первая дата окна, за которое ведутся фильтры.
+     */
+    LocalDate windowStart(LocalDate today) {
+        return today.minusDays(days - 1L);
+    }
+
+    /**
+     * @return false, только если у пользователя точно нет рационов за дату
+     */
+    boolean mightHaveIntakes(String email, LocalDate date) {
+        if (!ready || nanoClock.getAsLong() - trustedSince >= negativeTtlNanos || !inWindow(date)) {
+            return true;
+        }
+        if (filterFor(date).mightContain(email)) {
+            return true;
+        }
+        rejections.increment();
+        return false;
+    }
+
+    void add(String email, LocalDate date) {
+        if (isEnabled() && inWindow(date)) {
+            filterFor(date).put(email);
+        }
+    }
+
+    /**
+     * Добавляет пользователя во все дни окна — когда затронутые даты неизвестны.
+     */
+    void addToAllDays(String email) {
+        if (!isEnabled()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        for (LocalDate date = windowStart(today); !date.isAfter(today); date = date.plusDays(1)) {
+            filterFor(date).put(email);
+        }
+    }
+
+    /**
+     * Заполняет фильтры данными из базы и включает отрицательные ответы на {@code negativeTtl}
+     * с момента перед загрузкой. Данные добавляются к текущим фильтрам, поэтому изменения,
+     * пришедшие во время перестройки, не теряются. Если загрузка упала, срок доверия не продлевается.
+     */
+    void rebuild(Supplier<? extends Map<LocalDate, ? extends Collection<String>>> loader) {
+        if (!isEnabled()) {
+            return;
+        }
+        long loadStarted = nanoClock.getAsLong();
+        Map<LocalDate, ? extends Collection<String>> emailsByDate = loader.get();
+        LocalDate today = LocalDate.now();
+        for (LocalDate date = windowStart(today); !date.isAfter(today); date = date.plusDays(1)) {
+            filterFor(date);
+        }
+        emailsByDate.forEach((date, emails) -> emails.forEach(email -> add(email, date)));
+        trustedSince = loadStarted;
+        ready = true;
+    }
+
+    /**
+     * Удаляет фильтры за дни, вышедшие из окна.
+     */
+    void prune() {
+        if (isEnabled()) {
+            LocalDate start = windowStart(LocalDate.now());
+            filters.keySet().removeIf(date -> date.isBefore(start));
+        }
+    }
+
+    long rejectionCount() {
+        return rejections.sum();
+    }
+
+    private boolean inWindow(LocalDate date) {
+        if (date == null || days <= 0) {
+            return false;
+        }
+        LocalDate today = LocalDate.now();
+        return !date.isAfter(today) && !date.isBefore(windowStart(today));
+    }
+
+    private BloomFilter filterFor(LocalDate date) {
+        return filters.computeIfAbsent(date, d -> new BloomFilter(expectedUsersPerDay, falsePositiveRate));
+    }
+}
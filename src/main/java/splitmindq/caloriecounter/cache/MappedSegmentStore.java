@@ -0,0 +1,413 @@
+package splitmindq.caloriecounter.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Дисковый уровень кэша: журнал записей в memory-mapped файлах-сегментах фиксированного размера
+ * и индекс ключей в куче. Запись только дописывается в активный сегмент; удаление пишет
+ * надгробие. Когда сегментов становится больше {@code maxSegments}, самый старый удаляется
+ * вместе с его записями — для кэша это допустимо, так как к этому моменту они обычно истекли.
+ * При старте индекс восстанавливается чтением сегментов по порядку; запись с неверной
+ * контрольной суммой считается концом журнала. Срок восстановленных записей ограничивается
+ * {@code recoveredTtl}: пока узел был остановлен, он мог пропустить инвалидации.
+ *
+ * <p>Формат записи: длина (int), CRC32 остатка (int), тип (byte), срок в epoch millis (long),
+ * ключ, значение. Нулевая длина — конец сегмента. Запись не потокобезопасна и должна
+ * сериализоваться вызывающим; чтение — без блокировок.
+ *
+ * <p>Отображение удаленного сегмента освобождается сразу, а не сборщиком мусора: чтение
+ * закрепляет сегмент счетчиком, и последний освободивший его поток снимает отображение.
+ */
+@Slf4j
+final class MappedSegmentStore<K, V> implements AutoCloseable {
+    private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + 1 + Long.BYTES;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final long ttlMillis;
+    private final DiskCodec<K> keyCodec;
+    private final DiskCodec<V> valueCodec;
+    private final Map<K, Location> index = new ConcurrentHashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private Segment active;
+    private long nextSegmentId;
+    private boolean closed;
+
+    record Stored<V>(V value, long expiresAtMillis) {
+    }
+
+    private record Location(Segment segment, int valueOffset, long expiresAtMillis) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        // Ссылка журнала плюс по одной на каждое идущее чтение; ноль — отображение снято
+        private final AtomicInteger references = new AtomicInteger(1);
+        private int writePosition;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private boolean retain() {
+            int current;
+            do {
+                current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                unmap(buffer);
+            }
+        }
+    }
+
+    MappedSegmentStore(Path directory, int segmentBytes, int maxSegments, Duration ttl, Duration recoveredTtl,
+                       DiskCodec<K> keyCodec, DiskCodec<V> valueCodec) {
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("Disk cache needs at least two segments");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.ttlMillis = ttl.toMillis();
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        try {
+            Files.createDirectories(directory);
+            recover(System.currentTimeMillis() + recoveredTtl.toMillis());
+            if (active == null) {
+                active = createSegment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open disk cache in " + directory, e);
+        }
+    }
+
+    boolean contains(K key) {
+        return index.containsKey(key);
+    }
+
+    Stored<V> read(K key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        if (location.expiresAtMillis() <= System.currentTimeMillis()) {
+            index.remove(key, location);
+            return null;
+        }
+        Segment segment = location.segment();
+        if (!segment.retain()) {
+            // Сегмент удалили между чтением индекса и закреплением
+            return null;
+        }
+        try {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(location.valueOffset());
+            return new Stored<>(valueCodec.read(buffer), location.expiresAtMillis());
+        } finally {
+            segment.release();
+        }
+    }
+
+    void write(K key, V value) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            int valueOffset = append(PUT, expiresAt, key, value);
+            if (valueOffset >= 0) {
+                index.put(key, new Location(active, valueOffset, expiresAt));
+            } else {
+                index.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(K key) {
+        lock.lock();
+        try {
+            if (index.remove(key) != null && !closed) {
+                append(TOMBSTONE, 0L, key, null);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int removeIf(BiPredicate<? super K, ? super V> filter) {
+        lock.lock();
+        try {
+            List<K> matching = new ArrayList<>();
+            for (K key : index.keySet()) {
+                Stored<V> stored = read(key);
+                if (stored != null && filter.test(key, stored.value())) {
+                    matching.add(key);
+                }
+            }
+            matching.forEach(this::remove);
+            return matching.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет все сегменты и начинает журнал заново.
+     */
+    int clear() {
+        lock.lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            int removed = index.size();
+            index.clear();
+            while (!segments.isEmpty()) {
+                deleteSegment(segments.pollFirst());
+            }
+            active = createSegment();
+            return removed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot reset disk cache in " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Сбрасывает сегменты на диск и снимает их отображения; файлы остаются для восстановления.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            index.clear();
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.release();
+            }
+            segments.clear();
+            active = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает запись в активный сегмент, при необходимости открывая новый.
+     *
+     * @return смещение значения в сегменте или -1, если запись больше сегмента
+     */
+    private int append(byte type, long expiresAtMillis, K key, V value) {
+        int keySize = keyCodec.size(key);
+        int length = HEADER_BYTES + keySize + (value == null ? 0 : valueCodec.size(value));
+        if (length + Integer.BYTES > segmentBytes) {
+            return -1;
+        }
+        try {
+            if (active.writePosition + length + Integer.BYTES > active.buffer.capacity()) {
+                active = createSegment();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot roll disk cache segment in " + directory, e);
+        }
+        int start = active.writePosition;
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(start + 2 * Integer.BYTES);
+        buffer.put(type);
+        buffer.putLong(expiresAtMillis);
+        keyCodec.write(key, buffer);
+        int valueOffset = buffer.position();
+        if (value != null) {
+            valueCodec.write(value, buffer);
+        }
+        buffer.putInt(start + length, 0);
+        buffer.putInt(start + Integer.BYTES, checksum(buffer, start, length));
+        // Длина пишется последней: запись без нее при восстановлении не видна
+        buffer.putInt(start, length);
+        active.writePosition = start + length;
+        return valueOffset;
+    }
+
+    private void recover(long maxRecoveredExpiry) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        long now = System.currentTimeMillis();
+        int recovered = 0;
+        for (Path path : files) {
+            Segment segment = openSegment(path, segmentId(path), Files.size(path));
+            segments.addLast(segment);
+            nextSegmentId = segment.id + 1;
+            recovered += replay(segment, now, maxRecoveredExpiry);
+            active = segment;
+        }
+        while (segments.size() > maxSegments) {
+            dropOldestSegment();
+        }
+        if (!files.isEmpty()) {
+            log.info("Recovered disk cache {}: {} segments, {} live entries", directory, segments.size(), index.size());
+        }
+        log.debug("Replayed {} disk cache records from {}", recovered, directory);
+    }
+
+    private int replay(Segment segment, long now, long maxRecoveredExpiry) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int capacity = buffer.capacity();
+        int position = 0;
+        int records = 0;
+        while (position + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < HEADER_BYTES || position + length > capacity
+                    || buffer.getInt(position + Integer.BYTES) != checksum(buffer, position, length)) {
+                break;
+            }
+            buffer.position(position + 2 * Integer.BYTES);
+            byte type = buffer.get();
+            long expiresAt = buffer.getLong();
+            K key = keyCodec.read(buffer);
+            if (type == PUT && expiresAt > now) {
+                index.put(key, new Location(segment, buffer.position(), Math.min(expiresAt, maxRecoveredExpiry)));
+            } else {
+                index.remove(key);
+            }
+            position += length;
+            records++;
+        }
+        segment.writePosition = position;
+        return records;
+    }
+
+    private Segment createSegment() throws IOException {
+        if (segments.size() >= maxSegments) {
+            dropOldestSegment();
+        }
+        long id = nextSegmentId++;
+        Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = openSegment(path, id, segmentBytes);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private Segment openSegment(Path path, long id, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    private void dropOldestSegment() throws IOException {
+        Segment oldest = segments.pollFirst();
+        if (oldest != null) {
+            index.values().removeIf(location -> location.segment() == oldest);
+            deleteSegment(oldest);
+        }
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        segment.release();
+        Files.deleteIfExists(segment.path);
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.warn("Cannot unmap disk cache segment, leaving it to garbage collection", e);
+        }
+    }
+
+    /**
+     * {@code sun.misc.Unsafe#invokeCleaner} — единственный способ снять отображение до сборки
+     * мусора буфера; без него сегменты освобождаются сборщиком, как раньше.
+     */
+    private static MethodHandle findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Explicit unmapping of disk cache segments is unavailable: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(start + 2 * Integer.BYTES);
+        body.limit(start + length);
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+}
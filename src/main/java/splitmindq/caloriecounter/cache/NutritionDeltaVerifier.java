@@ -0,0 +1,93 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.NutritionTotalsView;
+
+/**
+ * Периодически сверяет КБЖУ, обновленные в {@link DailyIntakeCache} приращениями, с агрегатом
+ * из базы. Приращения складываются в другом порядке, чем {@code SUM} в базе, и могут потеряться
+ * при сбое между фиксацией и обновлением кэша; сверка удаляет разошедшиеся записи.
+ */
+@Slf4j
+@Component
+public class NutritionDeltaVerifier {
+    private final DailyIntakeRepository dailyIntakeRepository;
+    private final DailyIntakeCache dailyIntakeCache;
+    private final DailyIntakeCacheProperties.DeltaVerification settings;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "nutrition-delta-verifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NutritionDeltaVerifier(DailyIntakeRepository dailyIntakeRepository,
+                                  DailyIntakeCache dailyIntakeCache,
+                                  DailyIntakeCacheProperties properties) {
+        this.dailyIntakeRepository = dailyIntakeRepository;
+        this.dailyIntakeCache = dailyIntakeCache;
+        this.settings = properties.getDeltaVerification();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!settings.isEnabled()) {
+            log.info("Nutrition delta verification is disabled");
+            return;
+        }
+        long intervalMillis = settings.getInterval().toMillis();
+        executor.scheduleWithFixedDelay(this::verifySafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void verifySafely() {
+        try {
+            verify();
+        } catch (RuntimeException e) {
+            // Исключение отменило бы все последующие запуски задачи
+            log.error("Nutrition delta verification failed", e);
+        }
+    }
+
+    /**
+     * Сверяет ключи, обновленные приращениями с прошлого прохода.
+     *
+     * @return количество удаленных из-за расхождения записей
+     */
+    public int verify() {
+        int checked = 0;
+        int drifted = 0;
+        for (UserDateKey key : dailyIntakeCache.drainDeltaUpdatedDays(settings.getMaxKeysPerRun())) {
+            checked++;
+            if (dailyIntakeCache.verifyNutritionData(key.email(), key.date(),
+                    () -> dailyIntakeRepository.calculateDailyNutrition(key.email(), key.date())
+                            .map(NutritionTotalsView::toTotals)
+                            .orElse(null))) {
+                drifted++;
+            }
+        }
+        for (Long intakeId : dailyIntakeCache.drainDeltaUpdatedIntakes(settings.getMaxKeysPerRun())) {
+            checked++;
+            if (dailyIntakeCache.verifyNutritionDataForIntake(intakeId,
+                    () -> dailyIntakeRepository.calculateNutritionForIntake(intakeId)
+                            .map(NutritionTotalsView::toTotals)
+                            .orElse(null))) {
+                drifted++;
+            }
+        }
+        if (checked > 0) {
+            log.info("Verified {} delta-updated nutrition entries, {} evicted after drift", checked, drifted);
+        }
+        return drifted;
+    }
+}
@@ -0,0 +1,61 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики одного региона кэша. Обновляются без блокировок и читаются
+ * метриками и административным API.
+ */
+final class RegionStats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+    private final LongAdder expiredEvictions = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordMiss() {
+        misses.increment();
+    }
+
+    void recordLoad(long elapsedNanos) {
+        loads.increment();
+        loadTimeNanos.add(elapsedNanos);
+    }
+
+    void recordExpiredEviction() {
+        expiredEvictions.increment();
+    }
+
+    void recordSizeEviction() {
+        sizeEvictions.increment();
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long loadCount() {
+        return loads.sum();
+    }
+
+    long totalLoadTimeNanos() {
+        return loadTimeNanos.sum();
+    }
+
+    long expiredEvictionCount() {
+        return expiredEvictions.sum();
+    }
+
+    long sizeEvictionCount() {
+        return sizeEvictions.sum();
+    }
+}
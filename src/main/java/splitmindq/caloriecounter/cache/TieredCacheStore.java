@@ -0,0 +1,195 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Двухуровневое хранилище: горячие записи в {@link CacheRegion}, все записи — в
+ * {@link MappedSegmentStore} на диске. Промах в куче проверяется на диске, найденное
+ * значение поднимается в кучу с оставшимся сроком жизни. На диск попадает только значение,
+ * принятое кучей, поэтому после перезапуска регион сразу отдает данные с диска.
+ * Поколения ключей ведет куча; изменения обоих уровней и подъем с диска сериализуются
+ * одной блокировкой, чтобы удаление или новая запись не разошлись с тем, что лежит на диске.
+ * Размер и статистика в метриках относятся к уровню в куче.
+ */
+final class TieredCacheStore<K, V> implements CacheStore<K, V> {
+    private final CacheRegion<K, V> heap;
+    private final MappedSegmentStore<K, V> disk;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    TieredCacheStore(CacheRegion<K, V> heap, MappedSegmentStore<K, V> disk) {
+        this.heap = heap;
+        this.disk = disk;
+    }
+
+    @Override
+    public String name() {
+        return heap.name();
+    }
+
+    @Override
+    public RegionStats stats() {
+        return heap.stats();
+    }
+
+    @Override
+    public V get(K key) {
+        V value = heap.access(key);
+        if (value == null) {
+            value = promote(key);
+        }
+        if (value != null) {
+            heap.stats().recordHit();
+        } else {
+            heap.stats().recordMiss();
+        }
+        return value;
+    }
+
+    @Override
+    public V peek(K key) {
+        V value = heap.peek(key);
+        return value != null ? value : promote(key);
+    }
+
+    /**
+     * Поднимает значение с диска под блокировкой записи: без нее между чтением диска и
+     * записью в кучу могли пройти удаление или более новая запись, и куча получила бы
+     * устаревшее значение.
+     */
+    private V promote(K key) {
+        if (!disk.contains(key)) {
+            return null;
+        }
+        writeLock.lock();
+        try {
+            V cached = heap.peek(key);
+            if (cached != null) {
+                return cached;
+            }
+            MappedSegmentStore.Stored<V> stored = disk.read(key);
+            if (stored == null) {
+                return null;
+            }
+            long remainingMillis = stored.expiresAtMillis() - System.currentTimeMillis();
+            if (remainingMillis <= 0L) {
+                return null;
+            }
+            heap.put(key, stored.value(), heap.generation(key), TimeUnit.MILLISECONDS.toNanos(remainingMillis));
+            return stored.value();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long generation(K key) {
+        return heap.generation(key);
+    }
+
+    /**
+     * Пишет значение на диск, только если его приняла куча; иначе прежнее значение на диске
+     * удаляется, чтобы подъем с диска не вернул его вместо отвергнутого нового.
+     */
+    @Override
+    public boolean put(K key, V value, long generation) {
+        writeLock.lock();
+        try {
+            if (!heap.put(key, value, generation)) {
+                disk.remove(key);
+                return false;
+            }
+            disk.write(key, value);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Object stamp(K key) {
+        return heap.stamp(key);
+    }
+
+    /**
+     * Обновляет запись в куче; запись, которой в куче нет, удаляется и с диска.
+     */
+    @Override
+    public boolean update(K key, Object stamp, UnaryOperator<V> function) {
+        writeLock.lock();
+        try {
+            V value = heap.update(key, stamp, function) ? heap.peek(key) : null;
+            if (value != null) {
+                disk.write(key, value);
+                return true;
+            }
+            disk.remove(key);
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        writeLock.lock();
+        try {
+            heap.remove(key);
+            disk.remove(key);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int removeIf(BiPredicate<? super K, ? super V> filter) {
+        writeLock.lock();
+        try {
+            return Math.max(heap.removeIf(filter), disk.removeIf(filter));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int clear() {
+        writeLock.lock();
+        try {
+            return Math.max(heap.clear(), disk.clear());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean claimRefresh(K key) {
+        return heap.claimRefresh(key);
+    }
+
+    @Override
+    public void releaseRefresh(K key) {
+        heap.releaseRefresh(key);
+    }
+
+    @Override
+    public void expire(long nowNanos) {
+        heap.expire(nowNanos);
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+
+    @Override
+    public long weightedSize() {
+        return heap.weightedSize();
+    }
+
+    @Override
+    public void close() {
+        disk.close();
+    }
+}
@@ -0,0 +1,128 @@
+package splitmindq.caloriecounter.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Иерархическое колесо таймеров для истечения записей кэша.
+ * Запись попадает в ячейку уровня, соответствующего оставшемуся времени жизни, а при
+ * продвижении колеса обходятся только ячейки, через которые прошло время. Поэтому стоимость
+ * очистки пропорциональна числу истекающих записей, а не размеру кэша.
+ * Класс не потокобезопасен: доступ синхронизирует владеющий регион.
+ */
+final class TimerWheel<T extends TimerWheel.Node> {
+    // Уровни: ~1 с x 64, ~1 мин x 64, ~1 ч x 32, ~19 ч x 4 и ячейка переполнения
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+        1L << 30,
+        1L << 36,
+        1L << 42,
+        1L << 46,
+        1L << 48
+    };
+    private static final int[] SHIFT = {
+        Long.numberOfTrailingZeros(SPANS[0]),
+        Long.numberOfTrailingZeros(SPANS[1]),
+        Long.numberOfTrailingZeros(SPANS[2]),
+        Long.numberOfTrailingZeros(SPANS[3]),
+        Long.numberOfTrailingZeros(SPANS[4])
+    };
+
+    /**
+     * Узел таймера: срок истечения и ссылки на соседей в ячейке колеса.
+     */
+    static class Node {
+        long deadlineNanos;
+        Node previous;
+        Node next;
+
+        long getDeadlineNanos() {
+            return deadlineNanos;
+        }
+    }
+
+    private final Node[][] wheel;
+    private long nanos;
+
+    TimerWheel(long currentTimeNanos) {
+        this.nanos = currentTimeNanos;
+        this.wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Node sentinel = new Node();
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    void schedule(T node) {
+        Node sentinel = findBucket(node.deadlineNanos);
+        node.previous = sentinel.previous;
+        node.next = sentinel;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+    }
+
+    void deschedule(T node) {
+        if (node.next != null) {
+            node.next.previous = node.previous;
+            node.previous.next = node.next;
+            node.next = null;
+            node.previous = null;
+        }
+    }
+
+    /**
+     * Продвигает колесо до текущего времени и передает истекшие узлы в {@code onExpired}.
+     * Узлы из пройденных ячеек старших уровней, срок которых еще не наступил,
+     * переносятся на более точные уровни.
+     */
+    @SuppressWarnings("unchecked")
+    void advance(long currentTimeNanos, Consumer<T> onExpired) {
+        long previousTimeNanos = nanos;
+        nanos = currentTimeNanos;
+        for (int level = 0; level < BUCKETS.length; level++) {
+            long previousTicks = previousTimeNanos >>> SHIFT[level];
+            long currentTicks = currentTimeNanos >>> SHIFT[level];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0L) {
+                break;
+            }
+            Node[] buckets = wheel[level];
+            int mask = buckets.length - 1;
+            int steps = (int) Math.min(delta + 1, buckets.length);
+            int start = (int) (previousTicks & mask);
+            for (int i = start; i < start + steps; i++) {
+                Node sentinel = buckets[i & mask];
+                Node node = sentinel.next;
+                sentinel.next = sentinel;
+                sentinel.previous = sentinel;
+                while (node != sentinel) {
+                    Node next = node.next;
+                    node.previous = null;
+                    node.next = null;
+                    if (node.deadlineNanos - nanos > 0L) {
+                        schedule((T) node);
+                    } else {
+                        onExpired.accept((T) node);
+                    }
+                    node = next;
+                }
+            }
+        }
+    }
+
+    private Node findBucket(long deadlineNanos) {
+        long duration = deadlineNanos - nanos;
+        int last = wheel.length - 1;
+        for (int level = 0; level < last; level++) {
+            if (duration < SPANS[level + 1]) {
+                long ticks = deadlineNanos >>> SHIFT[level];
+                return wheel[level][(int) (ticks & (wheel[level].length - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+}
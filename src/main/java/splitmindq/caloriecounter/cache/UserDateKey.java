@@ -0,0 +1,9 @@
+package splitmindq.caloriecounter.cache;
+
+import java.time.LocalDate;
+
+/**
+ * Ключ региона кэша для данных пользователя за конкретную дату.
+ */
+public record UserDateKey(String email, LocalDate date) {
+}
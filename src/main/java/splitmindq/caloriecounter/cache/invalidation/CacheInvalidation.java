@@ -0,0 +1,75 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.time.LocalDate;
+
+/**
+ * Одна инвалидация {@code DailyIntakeCache}, передаваемая между узлами.
+ * Заполнены только поля, нужные для ее вида.
+ */
+public record CacheInvalidation(Kind kind, String email, LocalDate date, Long intakeId, String region,
+                                Long foodId) {
+    public enum Kind {
+        INTAKES_WITH_DATE('W'),
+        INTAKES_WITHOUT_DATE('A'),
+        NUTRITION('N'),
+        INTAKE_NUTRITION('I'),
+        USER('U'),
+        DATE('D'),
+        REGION('R'),
+        FOOD('F');
+
+        private final char code;
+
+        Kind(char code) {
+            this.code = code;
+        }
+
+        char code() {
+            return code;
+        }
+
+        static Kind fromCode(char code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Unknown invalidation kind: " + code);
+        }
+    }
+
+    public static CacheInvalidation intakesWithDate(String email, LocalDate date) {
+        return new CacheInvalidation(Kind.INTAKES_WITH_DATE, email, date, null, null, null);
+    }
+
+    public static CacheInvalidation intakesWithoutDate(String email) {
+        return new CacheInvalidation(Kind.INTAKES_WITHOUT_DATE, email, null, null, null, null);
+    }
+
+    public static CacheInvalidation nutrition(String email, LocalDate date) {
+        return new CacheInvalidation(Kind.NUTRITION, email, date, null, null, null);
+    }
+
+    public static CacheInvalidation intakeNutrition(Long intakeId) {
+        return new CacheInvalidation(Kind.INTAKE_NUTRITION, null, null, intakeId, null, null);
+    }
+
+    public static CacheInvalidation user(String email) {
+        return new CacheInvalidation(Kind.USER, email, null, null, null, null);
+    }
+
+    public static CacheInvalidation date(LocalDate date) {
+        return new CacheInvalidation(Kind.DATE, null, date, null, null, null);
+    }
+
+    public static CacheInvalidation region(String region) {
+        return new CacheInvalidation(Kind.REGION, null, null, null, region, null);
+    }
+
+    /**
+     * КБЖУ продукта изменились или продукт удален: узлы перечитывают его в {@code FoodNutrientIndex}.
+     */
+    public static CacheInvalidation food(Long foodId) {
+        return new CacheInvalidation(Kind.FOOD, null, null, null, null, foodId);
+    }
+}
@@ -0,0 +1,158 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Рассылает локальные инвалидации кэша остальным узлам и применяет полученные.
+ * Инвалидации копятся в очереди и уходят пакетами; внутри транзакции публикация
+ * откладывается до ее завершения, чтобы другие узлы не перечитали еще незафиксированные данные.
+ * Собственные сообщения узнаются по идентификатору узла и пропускаются.
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus {
+    private final String nodeId = UUID.randomUUID().toString();
+    private final InvalidationTransport transport;
+    private final int maxBatchSize;
+    private final ConcurrentLinkedQueue<CacheInvalidation> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final List<Consumer<CacheInvalidation>> subscribers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService flushExecutor;
+
+    public CacheInvalidationBus(InvalidationTransport transport, CacheInvalidationProperties properties) {
+        this.transport = transport;
+        this.maxBatchSize = properties.getMaxBatchSize();
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-invalidation-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = properties.getFlushInterval().toMillis();
+        flushExecutor.scheduleWithFixedDelay(this::flushSafely, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+        transport.start(this::receive);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Регистрирует обработчик инвалидаций, пришедших от других узлов.
+     */
+    public void subscribe(Consumer<CacheInvalidation> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Ставит инвалидацию в очередь на рассылку. Внутри активной транзакции —
+     * после ее завершения (при откате тоже: лишняя инвалидация безопасна).
+     */
+    public void publish(CacheInvalidation invalidation) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    enqueue(invalidation);
+                }
+            });
+        } else {
+            enqueue(invalidation);
+        }
+    }
+
+    /**
+     * Ставит пачку инвалидаций в очередь одной синхронизацией транзакции.
+     */
+    public void publishAll(Collection<CacheInvalidation> invalidations) {
+        if (invalidations.isEmpty()) {
+            return;
+        }
+        List<CacheInvalidation> batch = List.copyOf(invalidations);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    batch.forEach(CacheInvalidationBus.this::enqueue);
+                }
+            });
+        } else {
+            batch.forEach(this::enqueue);
+        }
+    }
+
+    private void enqueue(CacheInvalidation invalidation) {
+        pending.add(invalidation);
+        if (pendingCount.incrementAndGet() >= maxBatchSize) {
+            flushExecutor.execute(this::flushSafely);
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish cache invalidations: {}", e.getMessage());
+        }
+    }
+
+    synchronized void flush() {
+        List<CacheInvalidation> batch = new ArrayList<>();
+        CacheInvalidation invalidation;
+        while ((invalidation = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(invalidation);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (byte[] payload : InvalidationCodec.encode(nodeId, batch, transport.maxPayloadBytes())) {
+            transport.send(payload);
+        }
+        log.debug("Published {} cache invalidations", batch.size());
+    }
+
+    private void receive(byte[] payload) {
+        InvalidationCodec.Batch batch;
+        try {
+            batch = InvalidationCodec.decode(payload);
+        } catch (RuntimeException e) {
+            log.warn("Dropping malformed cache invalidation batch: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(batch.nodeId())) {
+            return;
+        }
+        for (CacheInvalidation invalidation : batch.invalidations()) {
+            for (Consumer<CacheInvalidation> subscriber : subscribers) {
+                try {
+                    subscriber.accept(invalidation);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to apply remote invalidation {}: {}", invalidation, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+        flushSafely();
+        transport.close();
+    }
+}
@@ -0,0 +1,38 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import javax.sql.DataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+@Configuration
+public class CacheInvalidationConfig {
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnProperty(prefix = "cache.invalidation", name = "transport",
+            havingValue = "loopback", matchIfMissing = true)
+    public InvalidationTransport loopbackInvalidationTransport() {
+        return new LoopbackInvalidationTransport();
+    }
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnProperty(prefix = "cache.invalidation", name = "transport", havingValue = "postgres")
+    public InvalidationTransport postgresInvalidationTransport(DataSource dataSource,
+                                                               DataSourceProperties dataSourceProperties,
+                                                               CacheInvalidationProperties properties) {
+        // LISTEN держит соединение постоянно: открываем его в обход пула
+        DataSource listenerDataSource = new DriverManagerDataSource(dataSourceProperties.determineUrl(),
+                dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+        return new PostgresInvalidationTransport(dataSource, listenerDataSource, properties.getChannel(),
+                properties.getPollInterval());
+    }
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnProperty(prefix = "cache.invalidation", name = "transport", havingValue = "multicast")
+    public InvalidationTransport multicastInvalidationTransport(CacheInvalidationProperties properties) {
+        return new MulticastInvalidationTransport(properties.getMulticastGroup(),
+                properties.getMulticastPort());
+    }
+}
@@ -0,0 +1,35 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.time.Duration;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Настройки межузловой инвалидации кэша, задаются свойствами {@code cache.invalidation.*}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.invalidation")
+public class CacheInvalidationProperties {
+    /**
+     * Транспорт: {@code loopback} (один узел), {@code postgres} (LISTEN/NOTIFY) или {@code multicast}.
+     */
+    private String transport = "loopback";
+
+    private String channel = "daily_intake_cache";
+    private String multicastGroup = "239.255.42.99";
+    private int multicastPort = 4446;
+
+    /**
+     * Инвалидации копятся и отправляются пакетом раз в этот интервал
+     * или сразу по достижении {@link #maxBatchSize}.
+     */
+    private Duration flushInterval = Duration.ofMillis(50);
+    private int maxBatchSize = 500;
+
+    /**
+     * Таймаут ожидания уведомлений на слушающем соединении PostgreSQL.
+     */
+    private Duration pollInterval = Duration.ofMillis(500);
+}
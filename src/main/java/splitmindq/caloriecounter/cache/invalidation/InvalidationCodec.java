@@ -0,0 +1,106 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Компактный текстовый формат пакета инвалидаций:
+ * первая строка — идентификатор узла-отправителя, далее по строке на инвалидацию
+ * вида {@code <код>\t<поле>[\t<поле>]}. Пакет режется на части не длиннее
+ * ограничения транспорта (NOTIFY, UDP-датаграмма).
+ */
+final class InvalidationCodec {
+    private static final char SEPARATOR = '\t';
+    private static final char LINE_END = '\n';
+
+    private InvalidationCodec() {
+    }
+
+    static List<byte[]> encode(String nodeId, Collection<CacheInvalidation> invalidations, int maxPayloadBytes) {
+        List<byte[]> payloads = new ArrayList<>();
+        String header = nodeId + LINE_END;
+        StringBuilder current = new StringBuilder(header);
+        int currentBytes = utf8Length(header);
+        for (CacheInvalidation invalidation : invalidations) {
+            String line = encodeLine(invalidation);
+            int lineBytes = utf8Length(line);
+            if (currentBytes + lineBytes > maxPayloadBytes && current.length() > header.length()) {
+                payloads.add(current.toString().getBytes(StandardCharsets.UTF_8));
+                current = new StringBuilder(header);
+                currentBytes = utf8Length(header);
+            }
+            current.append(line);
+            currentBytes += lineBytes;
+        }
+        if (current.length() > header.length()) {
+            payloads.add(current.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    static Batch decode(byte[] payload) {
+        String text = new String(payload, StandardCharsets.UTF_8);
+        String[] lines = text.split(String.valueOf(LINE_END));
+        List<CacheInvalidation> invalidations = new ArrayList<>(Math.max(lines.length - 1, 0));
+        for (int i = 1; i < lines.length; i++) {
+            if (!lines[i].isEmpty()) {
+                invalidations.add(decodeLine(lines[i]));
+            }
+        }
+        return new Batch(lines.length > 0 ? lines[0] : "", invalidations);
+    }
+
+    record Batch(String nodeId, List<CacheInvalidation> invalidations) {
+    }
+
+    private static String encodeLine(CacheInvalidation invalidation) {
+        StringBuilder line = new StringBuilder().append(invalidation.kind().code());
+        switch (invalidation.kind()) {
+            case INTAKES_WITH_DATE, NUTRITION -> line.append(SEPARATOR).append(invalidation.email())
+                    .append(SEPARATOR).append(invalidation.date());
+            case INTAKES_WITHOUT_DATE, USER -> line.append(SEPARATOR).append(invalidation.email());
+            case INTAKE_NUTRITION -> line.append(SEPARATOR).append(invalidation.intakeId());
+            case DATE -> line.append(SEPARATOR).append(invalidation.date());
+            case REGION -> line.append(SEPARATOR).append(invalidation.region());
+            case FOOD -> line.append(SEPARATOR).append(invalidation.foodId());
+            default -> throw new IllegalArgumentException("Unsupported invalidation: " + invalidation);
+        }
+        return line.append(LINE_END).toString();
+    }
+
+    private static CacheInvalidation decodeLine(String line) {
+        String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+        CacheInvalidation.Kind kind = CacheInvalidation.Kind.fromCode(fields[0].charAt(0));
+        return switch (kind) {
+            case INTAKES_WITH_DATE -> CacheInvalidation.intakesWithDate(fields[1], LocalDate.parse(fields[2]));
+            case NUTRITION -> CacheInvalidation.nutrition(fields[1], LocalDate.parse(fields[2]));
+            case INTAKES_WITHOUT_DATE -> CacheInvalidation.intakesWithoutDate(fields[1]);
+            case USER -> CacheInvalidation.user(fields[1]);
+            case INTAKE_NUTRITION -> CacheInvalidation.intakeNutrition(Long.parseLong(fields[1]));
+            case DATE -> CacheInvalidation.date(LocalDate.parse(fields[1]));
+            case REGION -> CacheInvalidation.region(fields[1]);
+            case FOOD -> CacheInvalidation.food(Long.parseLong(fields[1]));
+        };
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,24 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.util.function.Consumer;
+
+/**
+ * Транспорт пакетов инвалидаций между узлами. Доставка best-effort:
+ * потерянное сообщение означает лишь, что запись на другом узле доживет до своего TTL.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+    /**
+     * Максимальный размер одного сообщения в байтах.
+     */
+    int maxPayloadBytes();
+
+    void send(byte[] payload);
+
+    /**
+     * Начинает прием сообщений от других узлов (включая, возможно, собственные).
+     */
+    void start(Consumer<byte[]> receiver);
+
+    @Override
+    void close();
+}
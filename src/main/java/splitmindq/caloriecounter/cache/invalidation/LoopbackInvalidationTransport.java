@@ -0,0 +1,34 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Транспорт внутри одной JVM: доставляет сообщение всем подключенным получателям.
+ * Несколько шин на одном экземпляре имитируют несколько узлов в тестах;
+ * в одиночном узле фактически ничего не делает, так как свои сообщения шина игнорирует.
+ */
+public class LoopbackInvalidationTransport implements InvalidationTransport {
+    private final List<Consumer<byte[]>> receivers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public int maxPayloadBytes() {
+        return 64 * 1024;
+    }
+
+    @Override
+    public void send(byte[] payload) {
+        receivers.forEach(receiver -> receiver.accept(payload.clone()));
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void close() {
+        receivers.clear();
+    }
+}
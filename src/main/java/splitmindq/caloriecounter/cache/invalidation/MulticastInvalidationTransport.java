@@ -0,0 +1,88 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Транспорт на UDP multicast для узлов в одной сети: без нагрузки на базу,
+ * но и без гарантий доставки. Размер пакета ограничен так, чтобы датаграмма
+ * помещалась в один Ethernet-кадр без фрагментации.
+ */
+@Slf4j
+public class MulticastInvalidationTransport implements InvalidationTransport {
+    private static final int MAX_PAYLOAD_BYTES = 1_400;
+
+    private final InetAddress group;
+    private final int port;
+    private final MulticastSocket socket;
+    private volatile boolean running;
+    private Thread receiverThread;
+
+    public MulticastInvalidationTransport(String group, int port) {
+        try {
+            this.group = InetAddress.getByName(group);
+            this.port = port;
+            this.socket = new MulticastSocket(port);
+            socket.joinGroup(new InetSocketAddress(this.group, port), null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot join multicast group " + group + ":" + port, e);
+        }
+    }
+
+    @Override
+    public int maxPayloadBytes() {
+        return MAX_PAYLOAD_BYTES;
+    }
+
+    @Override
+    public void send(byte[] payload) {
+        try {
+            socket.send(new DatagramPacket(payload, payload.length, group, port));
+        } catch (IOException e) {
+            log.warn("Failed to send cache invalidation datagram: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void start(Consumer<byte[]> receiver) {
+        if (running) {
+            throw new IllegalStateException("Transport already started");
+        }
+        running = true;
+        receiverThread = new Thread(() -> receive(receiver), "cache-invalidation-multicast");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    private void receive(Consumer<byte[]> receiver) {
+        byte[] buffer = new byte[MAX_PAYLOAD_BYTES * 2];
+        while (running) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+                receiver.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(),
+                        packet.getOffset() + packet.getLength()));
+            } catch (SocketException e) {
+                if (running) {
+                    log.warn("Multicast socket failed: {}", e.getMessage());
+                }
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Dropping cache invalidation datagram: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        socket.close();
+    }
+}
@@ -0,0 +1,126 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Транспорт поверх PostgreSQL LISTEN/NOTIFY: узлы уже делят одну базу,
+ * поэтому отдельный брокер не нужен. Отправка идет через {@code pg_notify}
+ * из пула, прием — на выделенном соединении вне пула ({@code listenerDataSource}),
+ * которое опрашивается фоновым потоком и переподключается с экспоненциальной
+ * задержкой при обрыве. Слушающее соединение живет все время работы узла,
+ * поэтому оно не занимает слот пула и не попадает под его проверки и ротацию.
+ */
+@Slf4j
+public class PostgresInvalidationTransport implements InvalidationTransport {
+    // Лимит NOTIFY — 8000 байт; Base64 раздувает данные на треть.
+    private static final int MAX_PAYLOAD_BYTES = 5_900;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final DataSource listenerDataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String channel;
+    private final Duration pollInterval;
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    /**
+     * @param dataSource         пул приложения, через него отправляются уведомления
+     * @param listenerDataSource источник соединений без пула для LISTEN
+     */
+    public PostgresInvalidationTransport(DataSource dataSource, DataSource listenerDataSource,
+                                         String channel, Duration pollInterval) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid notification channel: " + channel);
+        }
+        this.listenerDataSource = listenerDataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.channel = channel;
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public int maxPayloadBytes() {
+        return MAX_PAYLOAD_BYTES;
+    }
+
+    @Override
+    public void send(byte[] payload) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class,
+                channel, Base64.getEncoder().encodeToString(payload));
+    }
+
+    @Override
+    public synchronized void start(Consumer<byte[]> receiver) {
+        if (running) {
+            throw new IllegalStateException("Transport already started");
+        }
+        running = true;
+        listenerThread = new Thread(() -> listen(receiver), "cache-invalidation-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    private void listen(Consumer<byte[]> receiver) {
+        long backoffMillis = pollInterval.toMillis();
+        while (running) {
+            try (Connection connection = listenerDataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for cache invalidations on channel '{}'", channel);
+                backoffMillis = pollInterval.toMillis();
+                while (running) {
+                    PGNotification[] notifications =
+                            pgConnection.getNotifications((int) pollInterval.toMillis());
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        deliver(receiver, notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache invalidation listener failed, reconnecting in {} ms: {}",
+                        backoffMillis, e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void deliver(Consumer<byte[]> receiver, String parameter) {
+        try {
+            receiver.accept(Base64.getDecoder().decode(parameter.getBytes(StandardCharsets.US_ASCII)));
+        } catch (RuntimeException e) {
+            log.warn("Dropping malformed cache invalidation message: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package splitmindq.caloriecounter.controller;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.dto.CacheRegionStatsDto;
+
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+    private final DailyIntakeCache dailyIntakeCache;
+
+    public CacheController(DailyIntakeCache dailyIntakeCache) {
+        this.dailyIntakeCache = dailyIntakeCache;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<List<CacheRegionStatsDto>> getStats() {
+        return ResponseEntity.ok(dailyIntakeCache.getStats());
+    }
+
+    @GetMapping("/stats/{region}")
+    public ResponseEntity<CacheRegionStatsDto> getRegionStats(@PathVariable String region) {
+        CacheRegionStatsDto stats = dailyIntakeCache.getRegionStats(region);
+        return stats != null ? ResponseEntity.ok(stats) : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/regions/{region}")
+    public ResponseEntity<Void> clearRegion(@PathVariable String region) {
+        return dailyIntakeCache.clearRegion(region)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/users")
+    public ResponseEntity<Void> evictUser(@RequestParam String email) {
+        dailyIntakeCache.evictAllUserData(email);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/dates")
+    public ResponseEntity<Void> evictDate(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        dailyIntakeCache.evictDate(date);
+        return ResponseEntity.noContent().build();
+    }
+}
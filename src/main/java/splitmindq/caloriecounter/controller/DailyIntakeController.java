@@ -9,9 +9,11 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -23,8 +25,13 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import splitmindq.caloriecounter.dao.DailyIntakeRepository;
 import splitmindq.caloriecounter.dto.DailyNutritionDto;
+import splitmindq.caloriecounter.dto.IntakeFoodEntryDto;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
+import splitmindq.caloriecounter.dto.PeriodNutritionDto;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
+import splitmindq.caloriecounter.excpetions.ValidationException;
 import splitmindq.caloriecounter.model.DailyIntake;
+import splitmindq.caloriecounter.model.NutritionGranularity;
 import splitmindq.caloriecounter.requests.*;
 import splitmindq.caloriecounter.service.DailyIntakeService;
 
@@ -62,16 +69,16 @@ public class DailyIntakeController {
             description = "Возвращает список дневных рационов пользователя по email и дате")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Успешное получение данных",
-                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = DailyIntake.class)))),
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = IntakeSnapshot.class)))),
             @ApiResponse(responseCode = "404", description = "Рационы не найдены"),
             @ApiResponse(responseCode = "400", description = "Некорректный запрос"),
             @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера")
     })
-    public ResponseEntity<List<DailyIntake>> getIntakesByUserAndDate(
+    public ResponseEntity<List<IntakeSnapshot>> getIntakesByUserAndDate(
             @RequestParam @NotBlank @Email String email,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
         try {
-            List<DailyIntake> intakes = dailyIntakeService.getUserIntakes(email, date);
+            List<IntakeSnapshot> intakes = dailyIntakeService.getUserIntakes(email, date);
             if (intakes.isEmpty()) {
                 log.warn("No intakes found for email={} and date={}", email, date);
                 return ResponseEntity.notFound().build();
@@ -112,6 +119,57 @@ public class DailyIntakeController {
         }
     }
 
+    @GetMapping("/nutrition/range")
+    @Operation(summary = "Получить nutritional информацию за период",
+            description = "Возвращает временной ряд КБЖУ по дням, неделям или месяцам за диапазон дат")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Успешное получение данных",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = PeriodNutritionDto.class)))),
+            @ApiResponse(responseCode = "400", description = "Некорректный запрос"),
+            @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера")
+    })
+    public ResponseEntity<List<PeriodNutritionDto>> getNutritionRange(
+            @RequestParam @NotBlank @Email String email,
+            @RequestParam @NotNull @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @NotNull @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String granularity) {
+        NutritionGranularity step = NutritionGranularity.parse(granularity);
+        try {
+            List<PeriodNutritionDto> series = dailyIntakeService.getNutritionRange(email, from, to, step);
+            log.info("Retrieved {} {} nutrition periods for email={} from {} to {}",
+                    series.size(), step, email, from, to);
+            return ResponseEntity.ok(series);
+        } catch (ValidationException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error calculating nutrition range for email={} from {} to {}: {}",
+                    email, from, to, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/nutrition/intakes")
+    @Operation(summary = "Получить nutritional информацию для нескольких рационов",
+            description = "Возвращает КБЖУ рационов по списку ID одним запросом; рационы без данных в ответ не попадают")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Успешное получение данных"),
+            @ApiResponse(responseCode = "400", description = "Некорректный запрос"),
+            @ApiResponse(responseCode = "500", description = "Внутренняя ошибка сервера")
+    })
+    public ResponseEntity<Map<Long, DailyNutritionDto>> getNutritionForIntakes(
+            @RequestParam @NotEmpty List<Long> ids) {
+        try {
+            Map<Long, DailyNutritionDto> nutrition = dailyIntakeService.getNutritionForIntakes(ids);
+            log.info("Retrieved nutrition data for {} of {} requested intakes", nutrition.size(), ids.size());
+            return ResponseEntity.ok(nutrition);
+        } catch (ValidationException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Error calculating nutrition for intakes {}: {}", ids, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/{intakeId}/nutrition")
     @Operation(summary = "Получить nutritional информацию для конкретного рациона",
             description = "Возвращает nutritional информацию для указанного рациона по его ID")
@@ -188,21 +246,21 @@ public class DailyIntakeController {
             description = "Добавляет продукт в указанный дневной рацион")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Продукт успешно добавлен",
-                    content = @Content(schema = @Schema(implementation = DailyIntake.class))),
+                    content = @Content(schema = @Schema(implementation = IntakeFoodEntryDto.class))),
             @ApiResponse(responseCode = "400", description = "Некорректный запрос"),
             @ApiResponse(responseCode = "404", description = "Рацион или продукт не найдены")
     })
-    public ResponseEntity<DailyIntake> addFoodToDailyIntake(
+    public ResponseEntity<IntakeFoodEntryDto> addFoodToDailyIntake(
             @PathVariable Long dailyIntakeId,
             @RequestBody @Valid AddFoodToDailyIntakeRequest request) {
         try {
-            DailyIntake dailyIntake = dailyIntakeService.addFoodToDailyIntake(
+            IntakeFoodEntryDto entry = dailyIntakeService.addFoodToDailyIntake(
                     dailyIntakeId,
                     request.getFoodId(),
                     request.getWeight()
             );
             log.info("Added foodId={} to dailyIntakeId={}", request.getFoodId(), dailyIntakeId);
-            return ResponseEntity.ok(dailyIntake);
+            return ResponseEntity.ok(entry);
         } catch (ResourceNotFoundException e) {
             log.error("Error adding food to daily intake: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -264,34 +322,20 @@ public class DailyIntakeController {
             @RequestBody @Valid List<AddFoodToDi> requests) {
         log.info("Received batch request to add {} foods", requests.size());
 
-        List<FoodAddResult> results = requests.stream()
-                .map(request -> {
-                    try {
-                        DailyIntake intake = dailyIntakeService.addFoodToDailyIntake(
-                                request.getDailyIntakeId(),
-                                request.getFoodId(),
-                                request.getWeight()
-                        );
-                        return new FoodAddResult(
-                                request.getFoodId(),
-                                true,
-                                "Продукт успешно добавлен в рацион ID: " + intake.getId()
-                        );
-                    } catch (ResourceNotFoundException e) {
-                        return new FoodAddResult(
-                                request.getFoodId(),
-                                false,
-                                "Ошибка: " + e.getMessage()
-                        );
-                    } catch (Exception e) {
-                        return new FoodAddResult(
-                                request.getFoodId(),
-                                false,
-                                "Неожиданная ошибка: " + e.getMessage()
-                        );
-                    }
-                })
-                .collect(Collectors.toList());
+        List<FoodAddResult> results;
+        try {
+            results = dailyIntakeService.addFoodsToDailyIntakes(requests);
+        } catch (Exception e) {
+            // Пакет добавляется одной транзакцией: при сбое не добавлен ни один продукт
+            log.error("Batch add failed: {}", e.getMessage());
+            results = requests.stream()
+                    .map(request -> new FoodAddResult(
+                            request.getFoodId(),
+                            false,
+                            "Неожиданная ошибка: " + e.getMessage()
+                    ))
+                    .collect(Collectors.toList());
+        }
 
         long successCount = results.stream()
                 .filter(FoodAddResult::isSuccess)
@@ -0,0 +1,59 @@
+package splitmindq.caloriecounter.controller;
+
+import java.time.LocalDate;
+import java.util.Map;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import splitmindq.caloriecounter.dto.NutritionReportDto;
+import splitmindq.caloriecounter.dto.NutritionTotalsTaskDto;
+import splitmindq.caloriecounter.service.DailyNutritionTotalsService;
+import splitmindq.caloriecounter.service.NutritionAggregationEngine;
+
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+@RequestMapping("/api/nutrition-totals")
+public class NutritionTotalsController {
+    private final DailyNutritionTotalsService totalsService;
+    private final NutritionAggregationEngine aggregationEngine;
+
+    public NutritionTotalsController(DailyNutritionTotalsService totalsService,
+                                     NutritionAggregationEngine aggregationEngine) {
+        this.totalsService = totalsService;
+        this.aggregationEngine = aggregationEngine;
+    }
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<Map<String, String>> rebuild() {
+        return accepted(totalsService.startRebuild());
+    }
+
+    @PostMapping("/verify")
+    public ResponseEntity<Map<String, String>> verify() {
+        return accepted(totalsService.startVerification());
+    }
+
+    @GetMapping("/{taskId}/status")
+    public ResponseEntity<NutritionTotalsTaskDto> getStatus(@PathVariable String taskId) {
+        return ResponseEntity.ok(totalsService.getTaskStatus(taskId));
+    }
+
+    /**
+     * Отчет по КБЖУ всех пользователей за диапазон дат, посчитанный по строкам рационов.
+     */
+    @GetMapping("/report")
+    public ResponseEntity<NutritionReportDto> report(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "false") boolean includeUsers) {
+        return ResponseEntity.ok(aggregationEngine.aggregate(from, to, includeUsers));
+    }
+
+    private static ResponseEntity<Map<String, String>> accepted(String taskId) {
+        return ResponseEntity.accepted()
+                .body(Map.of(
+                        "taskId", taskId,
+                        "statusUrl", "/api/nutrition-totals/" + taskId + "/status"
+                ));
+    }
+}
@@ -8,6 +8,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.util.List;
+import java.util.Map;
 
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
@@ -16,8 +17,10 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import splitmindq.caloriecounter.dto.UserPurgeTaskDto;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
 import splitmindq.caloriecounter.model.User;
+import splitmindq.caloriecounter.service.UserPurgeService;
 import splitmindq.caloriecounter.service.UserService;
 
 @CrossOrigin(origins = "http://localhost:3000")
@@ -28,6 +31,7 @@ import splitmindq.caloriecounter.service.UserService;
 @Tag(name = "Пользователи", description = "API для управления пользователями")
 public class UserController {
     private final UserService userService;
+    private final UserPurgeService userPurgeService;
 
     @GetMapping
     @Operation(summary = "Получить всех пользователей",
@@ -118,20 +122,36 @@ public class UserController {
 
     @DeleteMapping("delete_user/{id}")
     @Operation(summary = "Удалить пользователя",
-            description = "Удаляет пользователя по указанному ID")
+            description = "Помечает пользователя удаленным и запускает фоновое удаление его данных")
     @ApiResponses({
-            @ApiResponse(responseCode = "204", description = "Пользователь успешно удален"),
+            @ApiResponse(responseCode = "202", description = "Пользователь помечен удаленным, данные удаляются"),
             @ApiResponse(responseCode = "404", description = "Пользователь не найден"),
             @ApiResponse(responseCode = "500", description = "Ошибка сервера при удалении")
     })
-    public ResponseEntity<String> deleteUser(
+    public ResponseEntity<Map<String, String>> deleteUser(
             @Parameter(description = "ID пользователя для удаления", required = true)
             @PathVariable Long id) {
-        boolean isDeleted = userService.deleteUser(id);
-        if (isDeleted) {
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
-        } else {
+        String taskId = userService.deleteUser(id);
+        if (taskId == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
+        return ResponseEntity.accepted()
+                .body(Map.of(
+                        "taskId", taskId,
+                        "statusUrl", "/api/v1/users/purge/" + taskId + "/status"
+                ));
+    }
+
+    @GetMapping("purge/{taskId}/status")
+    @Operation(summary = "Статус удаления данных пользователя",
+            description = "Возвращает прогресс фонового удаления рационов пользователя")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Статус задачи"),
+            @ApiResponse(responseCode = "404", description = "Задача не найдена")
+    })
+    public ResponseEntity<UserPurgeTaskDto> getPurgeStatus(
+            @Parameter(description = "ID задачи удаления", required = true)
+            @PathVariable String taskId) {
+        return ResponseEntity.ok(userPurgeService.getTaskStatus(taskId));
     }
 }
\ No newline at end of file
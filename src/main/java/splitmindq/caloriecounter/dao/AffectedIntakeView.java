@@ -0,0 +1,20 @@
+package splitmindq.caloriecounter.dao;
+
+import java.time.LocalDate;
+
+/**
+ * Рацион, затронутый пакетным изменением строк {@code daily_intake_food}: ключи для итогов и кэша.
+ */
+public interface AffectedIntakeView {
+    long getIntakeId();
+
+    long getUserId();
+
+    String getEmail();
+
+    int getEpochDay();
+
+    default LocalDate getDate() {
+        return LocalDate.ofEpochDay(getEpochDay());
+    }
+}
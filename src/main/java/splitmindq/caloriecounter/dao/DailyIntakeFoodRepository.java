@@ -1,6 +1,7 @@
 package splitmindq.caloriecounter.dao;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import splitmindq.caloriecounter.model.DailyIntakeFood;
 import java.util.List;
 
@@ -8,4 +9,56 @@ public interface DailyIntakeFoodRepository extends JpaRepository<DailyIntakeFood
     List<DailyIntakeFood> findByFoodId(Long foodId);
 
     List<DailyIntakeFood> findByDailyIntakeId(Long id);
-}
\ No newline at end of file
+
+    /**
+     * Убирает продукт из всех рационов одним запросом: удаляет его строки и опустевшие рационы
+     * и пересчитывает {@code daily_nutrition_totals} затронутых дней без удаляемого продукта.
+     * Все части запроса видят один снимок, поэтому итоги совпадают с удаленными строками.
+     *
+     * @return затронутые рационы, включая удаленные
+     */
+    @Query(value = """
+            WITH removed AS (
+                DELETE FROM daily_intake_food
+                WHERE food_id = ?1
+                RETURNING daily_intake_id
+            ), affected AS (
+                SELECT di.id AS intake_id, di.user_id, di.created_at
+                FROM daily_intakes di
+                WHERE di.id IN (SELECT daily_intake_id FROM removed)
+            ), emptied AS (
+                DELETE FROM daily_intakes di
+                WHERE di.id IN (SELECT intake_id FROM affected)
+                AND NOT EXISTS (
+                    SELECT 1 FROM daily_intake_food dif
+                    WHERE dif.daily_intake_id = di.id
+                    AND dif.food_id <> ?1)
+                RETURNING di.id
+            ), totals AS (
+                INSERT INTO daily_nutrition_totals (user_id, date, calories, protein, fats, carbs)
+                SELECT di.user_id, di.created_at,
+                    COALESCE(SUM(f.calories * dif.weight / 100.0), 0.0),
+                    COALESCE(SUM(f.protein * dif.weight / 100.0), 0.0),
+                    COALESCE(SUM(f.fats * dif.weight / 100.0), 0.0),
+                    COALESCE(SUM(f.carbs * dif.weight / 100.0), 0.0)
+                FROM daily_intakes di
+                LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id AND dif.food_id <> ?1
+                LEFT JOIN foods f ON dif.food_id = f.id
+                WHERE (di.user_id, di.created_at) IN (SELECT user_id, created_at FROM affected)
+                GROUP BY di.user_id, di.created_at
+                ON CONFLICT (user_id, date) DO UPDATE SET
+                    calories = EXCLUDED.calories,
+                    protein = EXCLUDED.protein,
+                    fats = EXCLUDED.fats,
+                    carbs = EXCLUDED.carbs
+            )
+            SELECT
+                a.intake_id AS intakeId,
+                a.user_id AS userId,
+                u.email AS email,
+                a.created_at - DATE '1970-01-01' AS epochDay
+            FROM affected a
+            JOIN users u ON u.id = a.user_id
+            """, nativeQuery = true)
+    List<AffectedIntakeView> removeFoodFromIntakes(Long foodId);
+}
@@ -1,68 +1,134 @@
 package splitmindq.caloriecounter.dao;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
-import jakarta.transaction.Transactional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import splitmindq.caloriecounter.model.DailyIntake;
 import splitmindq.caloriecounter.model.User;
 
-public interface DailyIntakeRepository extends JpaRepository<DailyIntake, Long> {
+public interface DailyIntakeRepository extends JpaRepository<DailyIntake, Long>, IntakeFoodBulkRepository {
     @Query("""
-            SELECT DISTINCT di FROM DailyIntake di
-            JOIN FETCH di.user u
-            LEFT JOIN FETCH di.dailyIntakeFoods dif
-            LEFT JOIN FETCH dif.food f
+            SELECT new splitmindq.caloriecounter.dao.IntakeFoodRow(
+                u.email, di.id, di.creationDate, dif.id, dif.weight,
+                f.id, f.name, f.calories, f.protein, f.fats, f.carbs)
+            FROM DailyIntake di
+            JOIN di.user u
+            LEFT JOIN di.dailyIntakeFoods dif
+            LEFT JOIN dif.food f
             WHERE u.email = :email
+            AND u.deletedAt IS NULL
             AND di.creationDate = :date
-            ORDER BY di.creationDate DESC
+            ORDER BY di.id, dif.id
             """)
-    List<DailyIntake> findUserIntakesWithDate(
+    List<IntakeFoodRow> findIntakeRowsWithDate(
             @Param("email") String email,
             @Param("date") LocalDate date
     );
 
     @Query("""
-            SELECT DISTINCT di FROM DailyIntake di
-            JOIN FETCH di.user u
-            LEFT JOIN FETCH di.dailyIntakeFoods dif
-            LEFT JOIN FETCH dif.food f
+            SELECT new splitmindq.caloriecounter.dao.IntakeFoodRow(
+                u.email, di.id, di.creationDate, dif.id, dif.weight,
+                f.id, f.name, f.calories, f.protein, f.fats, f.carbs)
+            FROM DailyIntake di
+            JOIN di.user u
+            LEFT JOIN di.dailyIntakeFoods dif
+            LEFT JOIN dif.food f
             WHERE u.email = :email
-            ORDER BY di.creationDate DESC
+            AND u.deletedAt IS NULL
+            ORDER BY di.creationDate DESC, di.id, dif.id
             """)
-    List<DailyIntake> findUserIntakesWithoutDate(@Param("email") String email);
+    List<IntakeFoodRow> findIntakeRowsWithoutDate(@Param("email") String email);
 
+    @Query("""
+            SELECT new splitmindq.caloriecounter.dao.IntakeFoodRow(
+                u.email, di.id, di.creationDate, dif.id, dif.weight,
+                f.id, f.name, f.calories, f.protein, f.fats, f.carbs)
+            FROM DailyIntake di
+            JOIN di.user u
+            LEFT JOIN di.dailyIntakeFoods dif
+            LEFT JOIN dif.food f
+            WHERE u.email IN :emails
+            AND u.deletedAt IS NULL
+            AND di.creationDate = :date
+            ORDER BY di.id, dif.id
+            """)
+    List<IntakeFoodRow> findIntakeRowsForEmailsWithDate(
+            @Param("emails") Collection<String> emails,
+            @Param("date") LocalDate date
+    );
+
+    @Query("""
+            SELECT DISTINCT new splitmindq.caloriecounter.dao.UserDay(u.email, di.creationDate)
+            FROM DailyIntake di
+            JOIN di.user u
+            WHERE di.creationDate >= :since
+            AND u.deletedAt IS NULL
+            """)
+    List<UserDay> findUserDaysSince(@Param("since") LocalDate since);
+
+    @Query("""
+            SELECT u.email FROM DailyIntake di
+            JOIN di.user u
+            WHERE di.creationDate >= :since
+            AND u.deletedAt IS NULL
+            GROUP BY u.email
+            ORDER BY MAX(di.creationDate) DESC
+            """)
+    List<String> findRecentlyActiveEmails(@Param("since") LocalDate since, Pageable pageable);
+
+    /**
+     * Итоги за день для пачки пользователей из {@code daily_nutrition_totals}.
+     */
     @Query(value = """
             SELECT
-                COALESCE(ROUND(CAST(SUM(f.calories * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS calories,
-                COALESCE(ROUND(CAST(SUM(f.protein * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS protein,
-                COALESCE(ROUND(CAST(SUM(f.fats * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS fats,
-                COALESCE(ROUND(CAST(SUM(f.carbs * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS carbs
-            FROM daily_intakes di
-            JOIN users u ON di.user_id = u.id
-            LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
-            LEFT JOIN foods f ON dif.food_id = f.id
+                u.email AS email,
+                t.calories AS calories,
+                t.protein AS protein,
+                t.fats AS fats,
+                t.carbs AS carbs
+            FROM daily_nutrition_totals t
+            JOIN users u ON t.user_id = u.id
+            WHERE u.email IN (?1)
+            AND u.deleted_at IS NULL
+            AND t.date = ?2
+            """, nativeQuery = true)
+    List<UserNutritionTotalsView> calculateDailyNutritionForEmails(
+            Collection<String> emails,
+            LocalDate date
+    );
+
+    /**
+     * Итоги за день из {@code daily_nutrition_totals}: поиск по первичному ключу (user_id, date).
+     */
+    @Query(value = """
+            SELECT
+                t.calories AS calories,
+                t.protein AS protein,
+                t.fats AS fats,
+                t.carbs AS carbs
+            FROM daily_nutrition_totals t
+            JOIN users u ON t.user_id = u.id
             WHERE u.email = ?1
-            AND di.created_at = ?2
-            GROUP BY di.created_at, u.email, u.id
+            AND u.deleted_at IS NULL
+            AND t.date = ?2
             """, nativeQuery = true)
-    Optional<Map<String, Double>> calculateDailyNutrition(
+    Optional<NutritionTotalsView> calculateDailyNutrition(
             String email,
             LocalDate date
     );
 
     @Query(value = """
             SELECT
-                COALESCE(ROUND(CAST(SUM(f.calories * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS calories,
-                COALESCE(ROUND(CAST(SUM(f.protein * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS protein,
-                COALESCE(ROUND(CAST(SUM(f.fats * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS fats,
-                COALESCE(ROUND(CAST(SUM(f.carbs * dif.weight / 100.0) AS NUMERIC), 1), 0.0) AS carbs
+                COALESCE(SUM(f.calories * dif.weight / 100.0), 0.0) AS calories,
+                COALESCE(SUM(f.protein * dif.weight / 100.0), 0.0) AS protein,
+                COALESCE(SUM(f.fats * dif.weight / 100.0), 0.0) AS fats,
+                COALESCE(SUM(f.carbs * dif.weight / 100.0), 0.0) AS carbs
             FROM daily_intakes di
             JOIN users u ON di.user_id = u.id
             LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
@@ -70,15 +136,111 @@ public interface DailyIntakeRepository extends JpaRepository<DailyIntake, Long>
             WHERE di.id = ?1
             GROUP BY di.id, u.email, u.id
             """, nativeQuery = true)
-    Optional<Map<String, Double>> calculateNutritionForIntake(Long intakeId);
+    Optional<NutritionTotalsView> calculateNutritionForIntake(Long intakeId);
+
+    /**
+     * Строки рационов без соединения с {@code foods}: КБЖУ по ним считает {@code FoodNutrientIndex}.
+     * Строки одного рациона идут подряд.
+     */
+    @Query(value = """
+            SELECT
+                dif.daily_intake_id AS intakeId,
+                dif.food_id AS foodId,
+                dif.weight AS weight
+            FROM daily_intake_food dif
+            WHERE dif.daily_intake_id IN (?1)
+            ORDER BY dif.daily_intake_id
+            """, nativeQuery = true)
+    List<IntakeFoodWeightView> findFoodWeightsByIntakeIds(Collection<Long> intakeIds);
+
+    /**
+     * Добавляет продукт в рацион или прибавляет вес к уже добавленному одним запросом:
+     * конфликт по (daily_intake_id, food_id) разрешает сама база, параллельные добавления
+     * не теряют вес. Строка рациона блокируется, как в {@link #lockIntakes}, поэтому добавление
+     * не вклинивается между чтением весов и записью замены состава. Пустой результат означает,
+     * что рациона или продукта нет либо пользователь помечен на удаление.
+     */
+    @Query(value = """
+            WITH target AS (
+                SELECT di.id AS intake_id, di.user_id, u.email, di.created_at,
+                       f.id AS food_id, f.calories, f.protein, f.fats, f.carbs
+                FROM daily_intakes di
+                JOIN users u ON u.id = di.user_id
+                JOIN foods f ON f.id = ?2
+                WHERE di.id = ?1
+                AND u.deleted_at IS NULL
+                FOR UPDATE OF di
+            ), upserted AS (
+                INSERT INTO daily_intake_food (id, daily_intake_id, food_id, weight)
+                SELECT nextval('daily_intake_food_seq'), t.intake_id, t.food_id, ?3
+                FROM target t
+                ON CONFLICT (daily_intake_id, food_id)
+                DO UPDATE SET weight = daily_intake_food.weight + EXCLUDED.weight
+                RETURNING id, weight
+            )
+            SELECT
+                up.id AS entryId,
+                t.intake_id AS intakeId,
+                t.food_id AS foodId,
+                up.weight AS weight,
+                t.user_id AS userId,
+                t.email AS email,
+                t.created_at - DATE '1970-01-01' AS epochDay,
+                t.calories AS calories,
+                t.protein AS protein,
+                t.fats AS fats,
+                t.carbs AS carbs
+            FROM upserted up
+            CROSS JOIN target t
+            """, nativeQuery = true)
+    Optional<IntakeFoodUpsertView> upsertFood(Long intakeId, Long foodId, double weight);
+
+    boolean existsByUserId(Long userId);
 
-    @Transactional
-    @Modifying
-    @Query("DELETE FROM DailyIntakeFood dif WHERE dif.dailyIntake.user.id = :userId")
-    void deleteAllDailyIntakeFoodByUserId(@Param("userId") Long userId);
+    /**
+     * Есть ли рацион пользователя, не помеченного на удаление.
+     */
+    boolean existsByIdAndUserDeletedAtIsNull(Long id);
 
-    @Transactional
-    @Modifying
-    @Query("DELETE FROM DailyIntake di WHERE di.user.id = :userId")
-    void deleteAllByUserId(@Param("userId") Long userId);
+    /**
+     * Блокирует строки рационов до конца транзакции в порядке id. Изменения состава одного
+     * рациона выполняются по очереди: веса, прочитанные после блокировки, не устаревают до записи.
+     *
+     * @return количество найденных рационов
+     */
+    @Query(value = """
+            SELECT COUNT(*) FROM (
+                SELECT 1 FROM daily_intakes
+                WHERE id IN (?1)
+                ORDER BY id
+                FOR UPDATE) locked
+            """, nativeQuery = true)
+    long lockIntakes(Collection<Long> intakeIds);
+
+    /**
+     * Удаляет до {@code limit} рационов пользователя с id больше {@code afterIntakeId} вместе с их
+     * строками. Рационы выбираются по возрастанию id, следующая порция продолжает с последнего
+     * удаленного id и не просматривает уже удаленные строки.
+     */
+    @Query(value = """
+            WITH chunk AS (
+                SELECT id FROM daily_intakes
+                WHERE user_id = ?1 AND id > ?2
+                ORDER BY id
+                LIMIT ?3
+            ), removed_foods AS (
+                DELETE FROM daily_intake_food dif
+                WHERE dif.daily_intake_id IN (SELECT id FROM chunk)
+                RETURNING dif.id
+            ), removed_intakes AS (
+                DELETE FROM daily_intakes di
+                WHERE di.id IN (SELECT id FROM chunk)
+                RETURNING di.id
+            )
+            SELECT
+                (SELECT MAX(id) FROM removed_intakes) AS lastIntakeId,
+                (SELECT COUNT(*) FROM removed_intakes) AS intakesDeleted,
+                (SELECT COUNT(*) FROM removed_foods) AS foodsDeleted
+            """, nativeQuery = true)
+    IntakePurgeChunkView purgeIntakeChunk(Long userId, long afterIntakeId, int limit);
 }
\ No newline at end of file
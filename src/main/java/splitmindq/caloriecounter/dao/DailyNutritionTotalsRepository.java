@@ -0,0 +1,238 @@
+package splitmindq.caloriecounter.dao;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import splitmindq.caloriecounter.model.DailyNutritionTotal;
+
+/**
+ * Материализованные КБЖУ за день ({@code daily_nutrition_totals}). Изменения вызываются
+ * внутри транзакции, меняющей рационы, поэтому итоги фиксируются вместе с ними.
+ */
+public interface DailyNutritionTotalsRepository
+        extends JpaRepository<DailyNutritionTotal, DailyNutritionTotal.Key> {
+    /**
+     * Прибавляет приращение к итогам дня, создавая строку при ее отсутствии.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO daily_nutrition_totals (user_id, date, calories, protein, fats, carbs)
+            VALUES (?1, ?2, ?3, ?4, ?5, ?6)
+            ON CONFLICT (user_id, date) DO UPDATE SET
+                calories = daily_nutrition_totals.calories + EXCLUDED.calories,
+                protein = daily_nutrition_totals.protein + EXCLUDED.protein,
+                fats = daily_nutrition_totals.fats + EXCLUDED.fats,
+                carbs = daily_nutrition_totals.carbs + EXCLUDED.carbs
+            """, nativeQuery = true)
+    void addDelta(Long userId, LocalDate date, double calories, double protein, double fats, double carbs);
+
+    /**
+     * Пересчитывает итоги одного дня по рационам под той же блокировкой, что и
+     * {@link #rebuildUserRange}: иначе приращение, зафиксированное между снимком агрегата
+     * и записью, было бы затерто.
+     */
+    default void recomputeDay(Long userId, LocalDate date) {
+        lockUserRange(userId, userId);
+        recomputeLockedDay(userId, date);
+    }
+
+    /**
+     * Пересчитывает итоги дней с продуктом после изменения его КБЖУ, предварительно
+     * заблокировав их строки, как {@link #recomputeDay}.
+     *
+     * @return рационы с продуктом — ключи для очистки кэша
+     */
+    default List<AffectedIntakeView> recomputeDaysWithFood(Long foodId) {
+        lockDaysWithFood(foodId);
+        return recomputeLockedDaysWithFood(foodId);
+    }
+
+    /**
+     * Агрегат без GROUP BY всегда возвращает строку, поэтому день без рационов получает
+     * нулевые итоги. Вызывается только после {@link #lockUserRange}.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            INSERT INTO daily_nutrition_totals (user_id, date, calories, protein, fats, carbs)
+            SELECT ?1, ?2,
+                COALESCE(SUM(f.calories * dif.weight / 100.0), 0.0),
+                COALESCE(SUM(f.protein * dif.weight / 100.0), 0.0),
+                COALESCE(SUM(f.fats * dif.weight / 100.0), 0.0),
+                COALESCE(SUM(f.carbs * dif.weight / 100.0), 0.0)
+            FROM daily_intakes di
+            LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
+            LEFT JOIN foods f ON dif.food_id = f.id
+            WHERE di.user_id = ?1
+            AND di.created_at = ?2
+            ON CONFLICT (user_id, date) DO UPDATE SET
+                calories = EXCLUDED.calories,
+                protein = EXCLUDED.protein,
+                fats = EXCLUDED.fats,
+                carbs = EXCLUDED.carbs
+            """, nativeQuery = true)
+    void recomputeLockedDay(Long userId, LocalDate date);
+
+    /**
+     * Блокирует итоги дней, в рационах которых есть продукт; строки берутся по порядку
+     * ключа, чтобы два пересчета не ждали друг друга крест-накрест.
+     */
+    @Query(value = """
+            SELECT COUNT(*) FROM (
+                SELECT 1 FROM daily_nutrition_totals t
+                WHERE (t.user_id, t.date) IN (
+                    SELECT d.user_id, d.created_at
+                    FROM daily_intakes d
+                    JOIN daily_intake_food df ON d.id = df.daily_intake_id
+                    WHERE df.food_id = ?1)
+                ORDER BY t.user_id, t.date
+                FOR UPDATE) locked
+            """, nativeQuery = true)
+    long lockDaysWithFood(Long foodId);
+
+    /**
+     * Вызывается только после {@link #lockDaysWithFood}. Изменяющая часть запроса выполняется
+     * целиком, даже если ее результат не читается.
+     */
+    @Query(value = """
+            WITH affected AS (
+                SELECT d.id AS intake_id, d.user_id, d.created_at
+                FROM daily_intakes d
+                WHERE EXISTS (
+                    SELECT 1 FROM daily_intake_food df
+                    WHERE df.daily_intake_id = d.id
+                    AND df.food_id = ?1)
+            ), totals AS (
+                INSERT INTO daily_nutrition_totals (user_id, date, calories, protein, fats, carbs)
+                SELECT di.user_id, di.created_at,
+                    COALESCE(SUM(f.calories * dif.weight / 100.0), 0.0),
+                    COALESCE(SUM(f.protein * dif.weight / 100.0), 0.0),
+                    COALESCE(SUM(f.fats * dif.weight / 100.0), 0.0),
+                    COALESCE(SUM(f.carbs * dif.weight / 100.0), 0.0)
+                FROM daily_intakes di
+                LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
+                LEFT JOIN foods f ON dif.food_id = f.id
+                WHERE (di.user_id, di.created_at) IN (SELECT user_id, created_at FROM affected)
+                GROUP BY di.user_id, di.created_at
+                ON CONFLICT (user_id, date) DO UPDATE SET
+                    calories = EXCLUDED.calories,
+                    protein = EXCLUDED.protein,
+                    fats = EXCLUDED.fats,
+                    carbs = EXCLUDED.carbs
+            )
+            SELECT
+                a.intake_id AS intakeId,
+                a.user_id AS userId,
+                u.email AS email,
+                a.created_at - DATE '1970-01-01' AS epochDay
+            FROM affected a
+            JOIN users u ON u.id = a.user_id
+            """, nativeQuery = true)
+    List<AffectedIntakeView> recomputeLockedDaysWithFood(Long foodId);
+
+    /**
+     * Блокирует итоги пользователей диапазона до конца транзакции пересчета: запись,
+     * которая уже прибавила приращение, успевает зафиксироваться до агрегата, а
+     * следующая прибавит свое приращение к пересчитанному значению.
+     */
+    @Query(value = """
+            SELECT COUNT(*) FROM (
+                SELECT 1 FROM daily_nutrition_totals
+                WHERE user_id BETWEEN ?1 AND ?2
+                FOR UPDATE) locked
+            """, nativeQuery = true)
+    long lockUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Пересчитывает итоги всех дней пользователей с id из диапазона.
+     *
+     * @return количество записанных строк
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO daily_nutrition_totals (user_id, date, calories, protein, fats, carbs)
+            SELECT di.user_id, di.created_at,
+                COALESCE(SUM(f.calories * dif.weight / 100.0), 0.0),
+                COALESCE(SUM(f.protein * dif.weight / 100.0), 0.0),
+                COALESCE(SUM(f.fats * dif.weight / 100.0), 0.0),
+                COALESCE(SUM(f.carbs * dif.weight / 100.0), 0.0)
+            FROM daily_intakes di
+            LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
+            LEFT JOIN foods f ON dif.food_id = f.id
+            WHERE di.user_id BETWEEN ?1 AND ?2
+            GROUP BY di.user_id, di.created_at
+            ON CONFLICT (user_id, date) DO UPDATE SET
+                calories = EXCLUDED.calories,
+                protein = EXCLUDED.protein,
+                fats = EXCLUDED.fats,
+                carbs = EXCLUDED.carbs
+            """, nativeQuery = true)
+    int rebuildUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Удаляет итоги дней, за которые у пользователей диапазона не осталось рационов.
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM daily_nutrition_totals t
+            WHERE t.user_id BETWEEN ?1 AND ?2
+            AND NOT EXISTS (
+                SELECT 1 FROM daily_intakes di
+                WHERE di.user_id = t.user_id
+                AND di.created_at = t.date)
+            """, nativeQuery = true)
+    int deleteOrphansInUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Дни пользователей диапазона, итоги которых после округления до одного знака
+     * расходятся с агрегатом по рационам, в виде {@code userId/date}.
+     */
+    @Query(value = """
+            SELECT CONCAT(COALESCE(a.user_id, t.user_id), '/', COALESCE(a.date, t.date))
+            FROM (
+                SELECT di.user_id, di.created_at AS date,
+                    COALESCE(SUM(f.calories * dif.weight / 100.0), 0.0) AS calories,
+                    COALESCE(SUM(f.protein * dif.weight / 100.0), 0.0) AS protein,
+                    COALESCE(SUM(f.fats * dif.weight / 100.0), 0.0) AS fats,
+                    COALESCE(SUM(f.carbs * dif.weight / 100.0), 0.0) AS carbs
+                FROM daily_intakes di
+                LEFT JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
+                LEFT JOIN foods f ON dif.food_id = f.id
+                WHERE di.user_id BETWEEN ?1 AND ?2
+                GROUP BY di.user_id, di.created_at) a
+            FULL JOIN (
+                SELECT * FROM daily_nutrition_totals
+                WHERE user_id BETWEEN ?1 AND ?2) t
+            ON t.user_id = a.user_id AND t.date = a.date
+            WHERE ROUND(CAST(COALESCE(t.calories, 0.0) AS NUMERIC), 1)
+                    <> ROUND(CAST(COALESCE(a.calories, 0.0) AS NUMERIC), 1)
+            OR ROUND(CAST(COALESCE(t.protein, 0.0) AS NUMERIC), 1)
+                    <> ROUND(CAST(COALESCE(a.protein, 0.0) AS NUMERIC), 1)
+            OR ROUND(CAST(COALESCE(t.fats, 0.0) AS NUMERIC), 1)
+                    <> ROUND(CAST(COALESCE(a.fats, 0.0) AS NUMERIC), 1)
+            OR ROUND(CAST(COALESCE(t.carbs, 0.0) AS NUMERIC), 1)
+                    <> ROUND(CAST(COALESCE(a.carbs, 0.0) AS NUMERIC), 1)
+            """, nativeQuery = true)
+    List<String> findDriftInUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Итоги дней пользователя в диапазоне {@code [from, to]}; дни без рационов не возвращаются.
+     */
+    @Query("""
+            SELECT t FROM DailyNutritionTotal t
+            WHERE t.userId = (SELECT u.id FROM User u WHERE u.email = :email AND u.deletedAt IS NULL)
+            AND t.date BETWEEN :from AND :to
+            """)
+    List<DailyNutritionTotal> findRange(@Param("email") String email,
+                                        @Param("from") LocalDate from,
+                                        @Param("to") LocalDate to);
+
+    @Query(value = "SELECT COALESCE(MAX(id), 0) FROM users", nativeQuery = true)
+    long findMaxUserId();
+
+    @Modifying
+    @Query("DELETE FROM DailyNutritionTotal t WHERE t.userId = :userId")
+    void deleteAllByUserId(@Param("userId") Long userId);
+}
@@ -0,0 +1,28 @@
+package splitmindq.caloriecounter.dao;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Пакетные изменения строк {@code daily_intake_food} одного рациона: каждый метод выполняет
+ * один запрос независимо от количества продуктов.
+ */
+public interface IntakeFoodBulkRepository {
+    int deleteFoods(long intakeId, Collection<Long> foodIds);
+
+    /**
+     * Задает новые веса уже добавленным продуктам: id продукта -> вес.
+     */
+    int updateFoodWeights(long intakeId, Map<Long, Double> weightsByFood);
+
+    /**
+     * Добавляет продукты в рацион; если продукт успел появиться в рационе, его вес заменяется.
+     */
+    int insertFoods(long intakeId, Map<Long, Double> weightsByFood);
+
+    /**
+     * Добавляет продукты в несколько рационов: id рациона -> id продукта -> вес. Вес уже
+     * добавленного продукта увеличивается, как в {@link DailyIntakeRepository#upsertFood}.
+     */
+    int addFoods(Map<Long, Map<Long, Double>> weightsByIntake);
+}
@@ -0,0 +1,122 @@
+package splitmindq.caloriecounter.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Строки передаются массивами id продуктов и весов и разворачиваются в запросе через {@code unnest}.
+ * {@link JdbcTemplate} работает на соединении текущей JPA-транзакции.
+ */
+public class IntakeFoodBulkRepositoryImpl implements IntakeFoodBulkRepository {
+    private static final String DELETE_SQL = """
+            DELETE FROM daily_intake_food
+            WHERE daily_intake_id = ? AND food_id = ANY(CAST(? AS bigint[]))
+            """;
+
+    private static final String UPDATE_SQL = """
+            UPDATE daily_intake_food dif
+            SET weight = v.weight
+            FROM unnest(CAST(? AS bigint[]), CAST(? AS float8[])) AS v(food_id, weight)
+            WHERE dif.daily_intake_id = ? AND dif.food_id = v.food_id
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO daily_intake_food (id, daily_intake_id, food_id, weight)
+            SELECT nextval('daily_intake_food_seq'), ?, v.food_id, v.weight
+            FROM unnest(CAST(? AS bigint[]), CAST(? AS float8[])) AS v(food_id, weight)
+            ON CONFLICT (daily_intake_id, food_id) DO UPDATE SET weight = EXCLUDED.weight
+            """;
+
+    // Строки вставляются в порядке ключа: параллельные пакеты блокируют их в одном порядке
+    private static final String ADD_SQL = """
+            INSERT INTO daily_intake_food (id, daily_intake_id, food_id, weight)
+            SELECT nextval('daily_intake_food_seq'), v.daily_intake_id, v.food_id, v.weight
+            FROM unnest(CAST(? AS bigint[]), CAST(? AS bigint[]), CAST(? AS float8[]))
+                AS v(daily_intake_id, food_id, weight)
+            ORDER BY v.daily_intake_id, v.food_id
+            ON CONFLICT (daily_intake_id, food_id)
+            DO UPDATE SET weight = daily_intake_food.weight + EXCLUDED.weight
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IntakeFoodBulkRepositoryImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public int deleteFoods(long intakeId, Collection<Long> foodIds) {
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(DELETE_SQL);
+            statement.setLong(1, intakeId);
+            statement.setArray(2, connection.createArrayOf("bigint", foodIds.toArray(new Long[0])));
+            return statement;
+        });
+    }
+
+    @Override
+    public int updateFoodWeights(long intakeId, Map<Long, Double> weightsByFood) {
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(UPDATE_SQL);
+            bindRows(connection, statement, 1, weightsByFood);
+            statement.setLong(3, intakeId);
+            return statement;
+        });
+    }
+
+    @Override
+    public int insertFoods(long intakeId, Map<Long, Double> weightsByFood) {
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_SQL);
+            statement.setLong(1, intakeId);
+            bindRows(connection, statement, 2, weightsByFood);
+            return statement;
+        });
+    }
+
+    @Override
+    public int addFoods(Map<Long, Map<Long, Double>> weightsByIntake) {
+        int rows = weightsByIntake.values().stream().mapToInt(Map::size).sum();
+        Long[] intakeIds = new Long[rows];
+        Long[] foodIds = new Long[rows];
+        Double[] weights = new Double[rows];
+        int i = 0;
+        for (Map.Entry<Long, Map<Long, Double>> intake : weightsByIntake.entrySet()) {
+            for (Map.Entry<Long, Double> entry : intake.getValue().entrySet()) {
+                intakeIds[i] = intake.getKey();
+                foodIds[i] = entry.getKey();
+                weights[i] = entry.getValue();
+                i++;
+            }
+        }
+        return jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(ADD_SQL);
+            statement.setArray(1, connection.createArrayOf("bigint", intakeIds));
+            statement.setArray(2, connection.createArrayOf("bigint", foodIds));
+            statement.setArray(3, connection.createArrayOf("float8", weights));
+            return statement;
+        });
+    }
+
+    /**
+     * Привязывает массив id продуктов и массив весов к параметрам {@code firstIndex} и {@code firstIndex + 1}.
+     */
+    private static void bindRows(Connection connection, PreparedStatement statement, int firstIndex,
+                                 Map<Long, Double> weightsByFood) throws SQLException {
+        Long[] foodIds = new Long[weightsByFood.size()];
+        Double[] weights = new Double[weightsByFood.size()];
+        int i = 0;
+        for (Map.Entry<Long, Double> entry : weightsByFood.entrySet()) {
+            foodIds[i] = entry.getKey();
+            weights[i] = entry.getValue();
+            i++;
+        }
+        statement.setArray(firstIndex, connection.createArrayOf("bigint", foodIds));
+        statement.setArray(firstIndex + 1, connection.createArrayOf("float8", weights));
+    }
+}
@@ -0,0 +1,50 @@
+package splitmindq.caloriecounter.dao;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import splitmindq.caloriecounter.dto.FoodSnapshot;
+import splitmindq.caloriecounter.dto.IntakeFoodSnapshot;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
+
+/**
+ * Плоская строка проекции «рацион — продукт». Для рациона без продуктов
+ * поля продукта равны null.
+ */
+public record IntakeFoodRow(
+        String email,
+        Long intakeId,
+        LocalDate creationDate,
+        Long intakeFoodId,
+        Double weight,
+        Long foodId,
+        String foodName,
+        Double calories,
+        Double protein,
+        Double fats,
+        Double carbs) {
+
+    /**
+     * Собирает снимки рационов, сохраняя порядок строк запроса.
+     */
+    public static List<IntakeSnapshot> toSnapshots(List<IntakeFoodRow> rows) {
+        Map<Long, List<IntakeFoodSnapshot>> foodsByIntake = new LinkedHashMap<>();
+        Map<Long, LocalDate> datesByIntake = new LinkedHashMap<>();
+        for (IntakeFoodRow row : rows) {
+            List<IntakeFoodSnapshot> foods = foodsByIntake.computeIfAbsent(row.intakeId(), id -> new ArrayList<>());
+            datesByIntake.putIfAbsent(row.intakeId(), row.creationDate());
+            if (row.intakeFoodId() != null) {
+                foods.add(new IntakeFoodSnapshot(row.intakeFoodId(),
+                        new FoodSnapshot(row.foodId(), row.foodName(), row.calories(), row.protein(),
+                                row.fats(), row.carbs()),
+                        row.weight()));
+            }
+        }
+        List<IntakeSnapshot> snapshots = new ArrayList<>(foodsByIntake.size());
+        foodsByIntake.forEach((intakeId, foods) ->
+                snapshots.add(new IntakeSnapshot(intakeId, datesByIntake.get(intakeId), foods)));
+        return snapshots;
+    }
+}
@@ -0,0 +1,50 @@
+package splitmindq.caloriecounter.dao;
+
+import java.time.LocalDate;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Строка {@code daily_intake_food} после добавления продукта вместе с пользователем и датой
+ * рациона и КБЖУ продукта на 100 г: этого хватает, чтобы обновить итоги и кэш без загрузки рациона.
+ */
+public interface IntakeFoodUpsertView {
+    long getEntryId();
+
+    long getIntakeId();
+
+    long getFoodId();
+
+    /**
+     * Вес продукта в рационе после добавления.
+     */
+    double getWeight();
+
+    long getUserId();
+
+    String getEmail();
+
+    int getEpochDay();
+
+    double getCalories();
+
+    double getProtein();
+
+    double getFats();
+
+    double getCarbs();
+
+    default LocalDate getDate() {
+        return LocalDate.ofEpochDay(getEpochDay());
+    }
+
+    /**
+     * КБЖУ добавленной порции, тот же порядок операций, что и в {@link NutritionTotals#ofPortion}.
+     */
+    default NutritionTotals portionOf(double weight) {
+        return new NutritionTotals(
+                getCalories() * weight / 100.0,
+                getProtein() * weight / 100.0,
+                getFats() * weight / 100.0,
+                getCarbs() * weight / 100.0);
+    }
+}
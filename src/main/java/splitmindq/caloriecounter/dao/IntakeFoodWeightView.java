@@ -0,0 +1,12 @@
+package splitmindq.caloriecounter.dao;
+
+/**
+ * Строка {@code daily_intake_food} без продукта: КБЖУ по ней считает {@code FoodNutrientIndex}.
+ */
+public interface IntakeFoodWeightView {
+    long getIntakeId();
+
+    long getFoodId();
+
+    double getWeight();
+}
@@ -0,0 +1,15 @@
+package splitmindq.caloriecounter.dao;
+
+/**
+ * Итог удаления одной порции рационов пользователя.
+ */
+public interface IntakePurgeChunkView {
+    /**
+     * Наибольший id удаленного рациона или {@code null}, если рационов не осталось.
+     */
+    Long getLastIntakeId();
+
+    long getIntakesDeleted();
+
+    long getFoodsDeleted();
+}
@@ -0,0 +1,16 @@
+package splitmindq.caloriecounter.dao;
+
+import java.util.Collection;
+import splitmindq.caloriecounter.model.DailyNutritionTotal;
+
+/**
+ * Пересчет {@code nutrition_rollups} для произвольного набора дней одним запросом.
+ */
+public interface NutritionRollupBulkRepository {
+    /**
+     * Пересчитывает недели и месяцы, в которые попадают дни {@code (userId, date)}.
+     *
+     * @return количество записанных строк
+     */
+    int refreshForDays(Collection<DailyNutritionTotal.Key> days);
+}
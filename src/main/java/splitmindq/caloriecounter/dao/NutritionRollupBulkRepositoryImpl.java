@@ -0,0 +1,56 @@
+package splitmindq.caloriecounter.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import splitmindq.caloriecounter.model.DailyNutritionTotal;
+
+/**
+ * Дни передаются массивами id пользователей и номеров дней от эпохи и разворачиваются через {@code unnest}.
+ */
+public class NutritionRollupBulkRepositoryImpl implements NutritionRollupBulkRepository {
+    private static final String DAYS = """
+                    SELECT v.user_id, DATE '1970-01-01' + v.epoch_day AS date
+                    FROM unnest(CAST(? AS bigint[]), CAST(? AS integer[])) AS v(user_id, epoch_day)
+            """;
+    private static final String LOCK_FOR_DAYS_SQL = NutritionRollupRepository.REFRESH_PERIODS_OF + DAYS
+            + NutritionRollupRepository.LOCK_PERIODS_END;
+    private static final String REFRESH_FOR_DAYS_SQL = NutritionRollupRepository.REFRESH_PERIODS_OF + DAYS
+            + NutritionRollupRepository.REFRESH_PERIODS_END;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public NutritionRollupBulkRepositoryImpl(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public int refreshForDays(Collection<DailyNutritionTotal.Key> days) {
+        if (days.isEmpty()) {
+            return 0;
+        }
+        Long[] userIds = new Long[days.size()];
+        Integer[] epochDays = new Integer[days.size()];
+        int i = 0;
+        for (DailyNutritionTotal.Key day : days) {
+            userIds[i] = day.getUserId();
+            epochDays[i] = (int) day.getDate().toEpochDay();
+            i++;
+        }
+        // Блокировка отдельным запросом: агрегат следующего видит зафиксированные записи тех, кого ждали
+        jdbcTemplate.query(connection -> daysStatement(connection, LOCK_FOR_DAYS_SQL, userIds, epochDays),
+                resultSet -> null);
+        return jdbcTemplate.update(connection -> daysStatement(connection, REFRESH_FOR_DAYS_SQL, userIds, epochDays));
+    }
+
+    private static PreparedStatement daysStatement(Connection connection, String sql, Long[] userIds,
+                                                   Integer[] epochDays) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setArray(1, connection.createArrayOf("bigint", userIds));
+        statement.setArray(2, connection.createArrayOf("integer", epochDays));
+        return statement;
+    }
+}
@@ -0,0 +1,168 @@
+package splitmindq.caloriecounter.dao;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import splitmindq.caloriecounter.model.NutritionGranularity;
+import splitmindq.caloriecounter.model.NutritionRollup;
+
+/**
+ * Недельные и месячные КБЖУ ({@code nutrition_rollups}). Приращение итогов дня прибавляется
+ * к периодам так же, как к {@code daily_nutrition_totals}, в той же транзакции: приращения
+ * коммутируют, и одновременные записи в разные дни периода не затирают друг друга.
+ * Пересчеты дней целиком пересчитывают и периоды суммой по {@code daily_nutrition_totals}
+ * (не больше 31 строки на период), предварительно заблокировав итоги дней этих периодов.
+ */
+public interface NutritionRollupRepository extends JpaRepository<NutritionRollup, NutritionRollup.Key>,
+        NutritionRollupBulkRepository {
+    /**
+     * Начало запроса пересчета: недели и месяцы, в которые попадают дни подзапроса {@code (user_id, date)}.
+     */
+    String REFRESH_PERIODS_OF = """
+            WITH periods AS (
+                SELECT DISTINCT d.user_id, g.granularity,
+                    CAST(date_trunc(g.unit, CAST(d.date AS timestamp)) AS date) AS period_start,
+                    CAST(date_trunc(g.unit, CAST(d.date AS timestamp)) + g.span AS date) AS period_end
+                FROM (
+            """;
+
+    String PERIODS_END = """
+                ) d
+                CROSS JOIN (VALUES
+                    ('WEEK', 'week', INTERVAL '1 week'),
+                    ('MONTH', 'month', INTERVAL '1 month')) AS g(granularity, unit, span))
+            """;
+
+    /**
+     * Конец запроса блокировки итогов дней всех периодов. Без нее агрегат периода,
+     * снятый до фиксации параллельной записи в другой день периода, перезаписал бы ее вклад.
+     */
+    String LOCK_PERIODS_END = PERIODS_END + """
+            SELECT COUNT(*) FROM (
+                SELECT 1 FROM daily_nutrition_totals t
+                JOIN periods p
+                    ON t.user_id = p.user_id
+                    AND t.date >= p.period_start
+                    AND t.date < p.period_end
+                ORDER BY t.user_id, t.date
+                FOR UPDATE OF t) locked
+            """;
+
+    /**
+     * Конец запроса пересчета; выполняется после {@link #LOCK_PERIODS_END} для тех же дней.
+     */
+    String REFRESH_PERIODS_END = PERIODS_END + """
+            INSERT INTO nutrition_rollups (user_id, granularity, period_start, calories, protein, fats, carbs)
+            SELECT p.user_id, p.granularity, p.period_start,
+                COALESCE(SUM(t.calories), 0.0),
+                COALESCE(SUM(t.protein), 0.0),
+                COALESCE(SUM(t.fats), 0.0),
+                COALESCE(SUM(t.carbs), 0.0)
+            FROM periods p
+            LEFT JOIN daily_nutrition_totals t
+                ON t.user_id = p.user_id
+                AND t.date >= p.period_start
+                AND t.date < p.period_end
+            GROUP BY p.user_id, p.granularity, p.period_start
+            ON CONFLICT (user_id, granularity, period_start) DO UPDATE SET
+                calories = EXCLUDED.calories,
+                protein = EXCLUDED.protein,
+                fats = EXCLUDED.fats,
+                carbs = EXCLUDED.carbs
+            """;
+
+    /**
+     * Прибавляет приращение дня к содержащим его неделе и месяцу, создавая строки при их
+     * отсутствии. Строки берутся всегда в порядке «неделя, месяц», поэтому две записи
+     * не ждут друг друга крест-накрест.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO nutrition_rollups (user_id, granularity, period_start, calories, protein, fats, carbs)
+            SELECT ?1, g.granularity, CAST(date_trunc(g.unit, CAST(?2 AS timestamp)) AS date), ?3, ?4, ?5, ?6
+            FROM (VALUES (1, 'WEEK', 'week'), (2, 'MONTH', 'month')) AS g(ord, granularity, unit)
+            ORDER BY g.ord
+            ON CONFLICT (user_id, granularity, period_start) DO UPDATE SET
+                calories = nutrition_rollups.calories + EXCLUDED.calories,
+                protein = nutrition_rollups.protein + EXCLUDED.protein,
+                fats = nutrition_rollups.fats + EXCLUDED.fats,
+                carbs = nutrition_rollups.carbs + EXCLUDED.carbs
+            """, nativeQuery = true)
+    void addDelta(Long userId, LocalDate date, double calories, double protein, double fats, double carbs);
+
+    /**
+     * Пересчитывает периоды всех дней, в рационах которых есть продукт. Вызывается после
+     * {@link DailyNutritionTotalsRepository#recomputeDaysWithFood}.
+     */
+    default int refreshForFood(Long foodId) {
+        lockPeriodsOfFood(foodId);
+        return refreshLockedForFood(foodId);
+    }
+
+    @Query(value = REFRESH_PERIODS_OF + """
+                    SELECT di.user_id, di.created_at AS date
+                    FROM daily_intakes di
+                    JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
+                    WHERE dif.food_id = ?1
+            """ + LOCK_PERIODS_END, nativeQuery = true)
+    long lockPeriodsOfFood(Long foodId);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = REFRESH_PERIODS_OF + """
+                    SELECT di.user_id, di.created_at AS date
+                    FROM daily_intakes di
+                    JOIN daily_intake_food dif ON di.id = dif.daily_intake_id
+                    WHERE dif.food_id = ?1
+            """ + REFRESH_PERIODS_END, nativeQuery = true)
+    int refreshLockedForFood(Long foodId);
+
+    /**
+     * Пересчитывает периоды всех дней пользователей с id из диапазона.
+     *
+     * @return количество записанных строк
+     */
+    @Modifying
+    @Query(value = REFRESH_PERIODS_OF + """
+                    SELECT user_id, date FROM daily_nutrition_totals
+                    WHERE user_id BETWEEN ?1 AND ?2
+            """ + REFRESH_PERIODS_END, nativeQuery = true)
+    int rebuildUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Удаляет периоды, в которых у пользователей диапазона не осталось итогов дней.
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM nutrition_rollups r
+            WHERE r.user_id BETWEEN ?1 AND ?2
+            AND NOT EXISTS (
+                SELECT 1 FROM daily_nutrition_totals t
+                WHERE t.user_id = r.user_id
+                AND t.date >= r.period_start
+                AND t.date < r.period_start
+                    + CASE r.granularity WHEN 'WEEK' THEN INTERVAL '1 week' ELSE INTERVAL '1 month' END)
+            """, nativeQuery = true)
+    int deleteOrphansInUserRange(long fromUserId, long toUserId);
+
+    /**
+     * Периоды пользователя, начинающиеся в {@code [from, toExclusive)}.
+     */
+    @Query("""
+            SELECT r FROM NutritionRollup r
+            WHERE r.userId = (SELECT u.id FROM User u WHERE u.email = :email AND u.deletedAt IS NULL)
+            AND r.granularity = :granularity
+            AND r.periodStart >= :from
+            AND r.periodStart < :toExclusive
+            """)
+    List<NutritionRollup> findRange(@Param("email") String email,
+                                    @Param("granularity") NutritionGranularity granularity,
+                                    @Param("from") LocalDate from,
+                                    @Param("toExclusive") LocalDate toExclusive);
+
+    @Modifying
+    @Query("DELETE FROM NutritionRollup r WHERE r.userId = :userId")
+    void deleteAllByUserId(@Param("userId") Long userId);
+}
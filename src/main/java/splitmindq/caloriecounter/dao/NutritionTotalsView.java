@@ -0,0 +1,20 @@
+package splitmindq.caloriecounter.dao;
+
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Проекция результата агрегирующих запросов КБЖУ. Суммы не округлены, см. {@link NutritionTotals#rounded()}.
+ */
+public interface NutritionTotalsView {
+    double getCalories();
+
+    double getProtein();
+
+    double getFats();
+
+    double getCarbs();
+
+    default NutritionTotals toTotals() {
+        return new NutritionTotals(getCalories(), getProtein(), getFats(), getCarbs());
+    }
+}
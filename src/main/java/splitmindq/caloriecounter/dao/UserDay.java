@@ -0,0 +1,9 @@
+package splitmindq.caloriecounter.dao;
+
+import java.time.LocalDate;
+
+/**
+ * Пара «пользователь — дата», за которую у него есть рацион.
+ */
+public record UserDay(String email, LocalDate date) {
+}
@@ -0,0 +1,8 @@
+package splitmindq.caloriecounter.dao;
+
+/**
+ * КБЖУ за день с email пользователя — строка группового запроса по нескольким пользователям.
+ */
+public interface UserNutritionTotalsView extends NutritionTotalsView {
+    String getEmail();
+}
@@ -1,8 +1,13 @@
 package splitmindq.caloriecounter.dao;
 
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
 import splitmindq.caloriecounter.model.User;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    List<User> findAllByDeletedAtIsNull();
+
+    List<User> findAllByDeletedAtIsNotNull();
+}
@@ -0,0 +1,26 @@
+package splitmindq.caloriecounter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheRegionStatsDto {
+    private String region;
+    private long hits;
+    private long misses;
+    private long loads;
+    private long coalescedLoads;
+    private long totalLoadTimeNanos;
+    private long expiredEvictions;
+    private long sizeEvictions;
+    private long entryCount;
+    private long estimatedBytes;
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+}
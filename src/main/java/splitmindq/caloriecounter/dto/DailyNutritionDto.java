@@ -3,8 +3,7 @@ package splitmindq.caloriecounter.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-
-import java.util.Map;
+import splitmindq.caloriecounter.model.NutritionTotals;
 
 @Data
 @NoArgsConstructor
@@ -15,10 +14,11 @@ public class DailyNutritionDto {
     private double fats;
     private double carbs;
 
-    public DailyNutritionDto(Map<String, Double> nutrition) {
-        this.calories = nutrition.getOrDefault("calories", 0.0);
-        this.protein = nutrition.getOrDefault("protein", 0.0);
-        this.fats = nutrition.getOrDefault("fats", 0.0);
-        this.carbs = nutrition.getOrDefault("carbs", 0.0);
+    public DailyNutritionDto(NutritionTotals nutrition) {
+        nutrition = nutrition.rounded();
+        this.calories = nutrition.calories();
+        this.protein = nutrition.protein();
+        this.fats = nutrition.fats();
+        this.carbs = nutrition.carbs();
     }
 }
\ No newline at end of file
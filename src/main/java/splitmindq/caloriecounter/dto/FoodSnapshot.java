@@ -0,0 +1,7 @@
+package splitmindq.caloriecounter.dto;
+
+/**
+ * Неизменяемый снимок продукта для кэша и ответа API; JSON совпадает с {@code Food}.
+ */
+public record FoodSnapshot(Long id, String name, double calories, double protein, double fats, double carbs) {
+}
@@ -0,0 +1,21 @@
+package splitmindq.caloriecounter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Строка рациона после добавления продукта.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IntakeFoodEntryDto {
+    private Long dailyIntakeId;
+    private Long entryId;
+    private Long foodId;
+    /**
+     * Суммарный вес продукта в рационе после добавления.
+     */
+    private double weight;
+}
@@ -0,0 +1,7 @@
+package splitmindq.caloriecounter.dto;
+
+/**
+ * Неизменяемый снимок продукта в рационе; JSON совпадает с {@code DailyIntakeFood}.
+ */
+public record IntakeFoodSnapshot(Long id, FoodSnapshot food, double weight) {
+}
@@ -0,0 +1,15 @@
+package splitmindq.caloriecounter.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок дневного рациона. В отличие от сущности {@code DailyIntake}
+ * не держит сессию Hibernate и ленивые коллекции, поэтому безопасно кэшируется
+ * и разделяется между потоками. JSON совпадает с сущностью.
+ */
+public record IntakeSnapshot(Long id, LocalDate creationDate, List<IntakeFoodSnapshot> dailyIntakeFoods) {
+    public IntakeSnapshot {
+        dailyIntakeFoods = List.copyOf(dailyIntakeFoods);
+    }
+}
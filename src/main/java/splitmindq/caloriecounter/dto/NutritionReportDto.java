@@ -0,0 +1,28 @@
+package splitmindq.caloriecounter.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Отчет по КБЖУ всех пользователей за диапазон дат: итог, разбивка по дням или по пользователям.
+ * Значения округлены до одного знака, как в {@link DailyNutritionDto}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NutritionReportDto {
+    private LocalDate from;
+    private LocalDate to;
+    private long rowsScanned;
+    /**
+     * Строки с продуктами, которых нет ни в индексе, ни в базе; в суммы они не вошли.
+     */
+    private long unknownFoodRows;
+    private long elapsedMillis;
+    private DailyNutritionDto total;
+    private List<PeriodNutritionDto> days;
+    private List<UserNutritionTotalsDto> users;
+}
@@ -0,0 +1,26 @@
+package splitmindq.caloriecounter.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Состояние задачи пересчета или сверки {@code daily_nutrition_totals}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NutritionTotalsTaskDto {
+    private String taskId;
+    private String mode;
+    private String status;
+    private int chunksTotal;
+    private int chunksDone;
+    private long rowsWritten;
+    private long driftCount;
+    /**
+     * Первые найденные расхождения в виде {@code userId/date}.
+     */
+    private List<String> driftSample;
+}
@@ -0,0 +1,32 @@
+package splitmindq.caloriecounter.dto;
+
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Точка временного ряда КБЖУ. Границы крайних периодов обрезаются по запрошенному диапазону.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PeriodNutritionDto {
+    private LocalDate periodStart;
+    private LocalDate periodEnd;
+    private double calories;
+    private double protein;
+    private double fats;
+    private double carbs;
+
+    public PeriodNutritionDto(LocalDate periodStart, LocalDate periodEnd, NutritionTotals nutrition) {
+        nutrition = nutrition.rounded();
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+        this.calories = nutrition.calories();
+        this.protein = nutrition.protein();
+        this.fats = nutrition.fats();
+        this.carbs = nutrition.carbs();
+    }
+}
@@ -0,0 +1,29 @@
+package splitmindq.caloriecounter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Суммарные КБЖУ пользователя за период отчета.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserNutritionTotalsDto {
+    private Long userId;
+    private double calories;
+    private double protein;
+    private double fats;
+    private double carbs;
+
+    public UserNutritionTotalsDto(Long userId, NutritionTotals nutrition) {
+        nutrition = nutrition.rounded();
+        this.userId = userId;
+        this.calories = nutrition.calories();
+        this.protein = nutrition.protein();
+        this.fats = nutrition.fats();
+        this.carbs = nutrition.carbs();
+    }
+}
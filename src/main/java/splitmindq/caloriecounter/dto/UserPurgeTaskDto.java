@@ -0,0 +1,20 @@
+package splitmindq.caloriecounter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Состояние фонового удаления данных пользователя.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPurgeTaskDto {
+    private String taskId;
+    private Long userId;
+    private String status;
+    private int chunksDone;
+    private long intakesDeleted;
+    private long foodsDeleted;
+}
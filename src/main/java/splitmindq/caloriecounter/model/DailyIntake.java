@@ -8,10 +8,12 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -25,10 +27,12 @@ import lombok.ToString;
 @Data
 @Entity
 @ToString
-@Table(name = "daily_intakes")
+@Table(name = "daily_intakes",
+        indexes = @Index(name = "idx_daily_intakes_user_id_id", columnList = "user_id, id"))
 public class DailyIntake {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "daily_intakes_seq")
+    @SequenceGenerator(name = "daily_intakes_seq", sequenceName = "daily_intakes_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "created_at", updatable = false)
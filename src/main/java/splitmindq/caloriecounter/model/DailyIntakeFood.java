@@ -7,16 +7,20 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.Data;
 import lombok.ToString;
 @Data
 @Entity
 @ToString
-@Table(name = "daily_intake_food")
+@Table(name = "daily_intake_food", uniqueConstraints = @UniqueConstraint(
+        name = "uk_daily_intake_food_intake_food", columnNames = {"daily_intake_id", "food_id"}))
 public class DailyIntakeFood {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "daily_intake_food_seq")
+    @SequenceGenerator(name = "daily_intake_food_seq", sequenceName = "daily_intake_food_seq", allocationSize = 50)
     private Long id;
 
     @JsonBackReference
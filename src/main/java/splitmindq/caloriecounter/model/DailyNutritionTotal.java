@@ -0,0 +1,47 @@
+package splitmindq.caloriecounter.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Суммарные КБЖУ пользователя за день, поддерживаемые при каждом изменении рационов
+ * в той же транзакции. Суммы хранятся без округления, как и в {@link NutritionTotals}.
+ */
+@Data
+@Entity
+@Table(name = "daily_nutrition_totals")
+@IdClass(DailyNutritionTotal.Key.class)
+public class DailyNutritionTotal {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Column(name = "date")
+    private LocalDate date;
+
+    private double calories;
+    private double protein;
+    private double fats;
+    private double carbs;
+
+    public NutritionTotals toTotals() {
+        return new NutritionTotals(calories, protein, fats, carbs);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private LocalDate date;
+    }
+}
@@ -0,0 +1,79 @@
+package splitmindq.caloriecounter.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+import splitmindq.caloriecounter.excpetions.ValidationException;
+
+/**
+ * Шаг временного ряда КБЖУ. Неделя начинается с понедельника, как {@code date_trunc('week', ...)}
+ * в PostgreSQL, поэтому границы периодов в Java и в SQL совпадают.
+ */
+public enum NutritionGranularity {
+    DAY {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date;
+        }
+
+        @Override
+        public LocalDate nextPeriodStart(LocalDate periodStart) {
+            return periodStart.plusDays(1);
+        }
+    },
+    WEEK {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate nextPeriodStart(LocalDate periodStart) {
+            return periodStart.plusWeeks(1);
+        }
+    },
+    MONTH {
+        @Override
+        public LocalDate periodStart(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate nextPeriodStart(LocalDate periodStart) {
+            return periodStart.plusMonths(1);
+        }
+    };
+
+    /**
+     * Начало периода, в который попадает дата.
+     */
+    public abstract LocalDate periodStart(LocalDate date);
+
+    public abstract LocalDate nextPeriodStart(LocalDate periodStart);
+
+    /**
+     * Количество периодов, которые задевает диапазон {@code [from, to]}.
+     */
+    public long periodsBetween(LocalDate from, LocalDate to) {
+        LocalDate first = periodStart(from);
+        LocalDate last = periodStart(to);
+        return switch (this) {
+            case DAY -> ChronoUnit.DAYS.between(first, last) + 1;
+            case WEEK -> ChronoUnit.WEEKS.between(first, last) + 1;
+            case MONTH -> ChronoUnit.MONTHS.between(first, last) + 1;
+        };
+    }
+
+    /**
+     * Разбирает значение параметра запроса без учета регистра ({@code day}, {@code week}, {@code month}).
+     */
+    public static NutritionGranularity parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Unsupported granularity: " + value);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package splitmindq.caloriecounter.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Суммарные КБЖУ пользователя за неделю или месяц. Пересчитываются из
+ * {@link DailyNutritionTotal} в той же транзакции, что и итоги дня.
+ */
+@Data
+@Entity
+@Table(name = "nutrition_rollups")
+@IdClass(NutritionRollup.Key.class)
+public class NutritionRollup {
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", length = 5)
+    private NutritionGranularity granularity;
+
+    @Id
+    @Column(name = "period_start")
+    private LocalDate periodStart;
+
+    private double calories;
+    private double protein;
+    private double fats;
+    private double carbs;
+
+    public NutritionTotals toTotals() {
+        return new NutritionTotals(calories, protein, fats, carbs);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long userId;
+        private NutritionGranularity granularity;
+        private LocalDate periodStart;
+    }
+}
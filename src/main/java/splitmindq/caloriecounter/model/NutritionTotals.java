@@ -0,0 +1,50 @@
+package splitmindq.caloriecounter.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Неизменяемые суммарные КБЖУ на примитивных double.
+ * Проходит от проекции репозитория через кэш до DTO без упаковки значений.
+ * Суммы хранятся без округления, чтобы к ним можно было прибавлять приращения;
+ * до одного знака они округляются в {@link #rounded()} при выдаче клиенту.
+ */
+public record NutritionTotals(double calories, double protein, double fats, double carbs) {
+    public static final NutritionTotals ZERO = new NutritionTotals(0.0, 0.0, 0.0, 0.0);
+
+    /**
+     * КБЖУ порции продукта весом {@code weight} граммов.
+     */
+    public static NutritionTotals ofPortion(Food food, double weight) {
+        return new NutritionTotals(
+                food.getCalories() * weight / 100.0,
+                food.getProtein() * weight / 100.0,
+                food.getFats() * weight / 100.0,
+                food.getCarbs() * weight / 100.0);
+    }
+
+    public NutritionTotals plus(NutritionTotals other) {
+        return new NutritionTotals(calories + other.calories, protein + other.protein,
+                fats + other.fats, carbs + other.carbs);
+    }
+
+    public NutritionTotals minus(NutritionTotals other) {
+        return new NutritionTotals(calories - other.calories, protein - other.protein,
+                fats - other.fats, carbs - other.carbs);
+    }
+
+    /**
+     * Округление до одного знака половиной вверх, как {@code ROUND(CAST(... AS NUMERIC), 1)} в PostgreSQL.
+     */
+    public NutritionTotals rounded() {
+        return new NutritionTotals(round(calories), round(protein), round(fats), round(carbs));
+    }
+
+    public boolean isZero() {
+        return calories == 0.0 && protein == 0.0 && fats == 0.0 && carbs == 0.0;
+    }
+
+    private static double round(double value) {
+        return BigDecimal.valueOf(value).setScale(1, RoundingMode.HALF_UP).doubleValue();
+    }
+}
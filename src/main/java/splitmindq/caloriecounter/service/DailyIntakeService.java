@@ -1,13 +1,21 @@
 package splitmindq.caloriecounter.service;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import jakarta.annotation.Nullable;
 import org.springframework.stereotype.Service;
 import splitmindq.caloriecounter.dto.DailyNutritionDto;
+import splitmindq.caloriecounter.dto.IntakeFoodEntryDto;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
+import splitmindq.caloriecounter.dto.PeriodNutritionDto;
 import splitmindq.caloriecounter.model.DailyIntake;
+import splitmindq.caloriecounter.model.NutritionGranularity;
+import splitmindq.caloriecounter.requests.AddFoodToDi;
 import splitmindq.caloriecounter.requests.DailyIntakeRequest;
+import splitmindq.caloriecounter.requests.FoodAddResult;
 import splitmindq.caloriecounter.requests.UpdateDailyIntakeRequest;
 
 @Service
@@ -16,17 +24,24 @@ public interface DailyIntakeService {
 
     DailyNutritionDto getNutritionForIntake(Long intakeId);
 
+    Map<Long, DailyNutritionDto> getNutritionForIntakes(Collection<Long> intakeIds);
+
     DailyIntake createDailyIntake(DailyIntakeRequest dailyIntakeRequest);
 
     DailyIntake getDailyIntakeById(Long id);
 
     void updateDailyIntake(Long id, UpdateDailyIntakeRequest updateDailyIntake);
 
-    DailyIntake addFoodToDailyIntake(Long dailyIntakeId, Long foodId, double weight);
+    IntakeFoodEntryDto addFoodToDailyIntake(Long dailyIntakeId, Long foodId, double weight);
+
+    List<FoodAddResult> addFoodsToDailyIntakes(List<AddFoodToDi> requests);
 
     boolean deleteDailyIntake(Long id);
 
-    public List<DailyIntake> getUserIntakes(String email, @Nullable LocalDate date);
+    public List<IntakeSnapshot> getUserIntakes(String email, @Nullable LocalDate date);
 
     public DailyNutritionDto getDailyNutrition(String email, LocalDate date);
+
+    List<PeriodNutritionDto> getNutritionRange(String email, LocalDate from, LocalDate to,
+                                               NutritionGranularity granularity);
 }
\ No newline at end of file
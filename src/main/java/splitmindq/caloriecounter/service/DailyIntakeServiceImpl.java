@@ -1,10 +1,13 @@
 package splitmindq.caloriecounter.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 import jakarta.annotation.Nullable;
@@ -14,14 +17,27 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.cache.FoodNutrientIndex;
 import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
 import splitmindq.caloriecounter.dao.FoodRepository;
+import splitmindq.caloriecounter.dao.IntakeFoodRow;
+import splitmindq.caloriecounter.dao.IntakeFoodUpsertView;
+import splitmindq.caloriecounter.dao.IntakeFoodWeightView;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
+import splitmindq.caloriecounter.dao.NutritionTotalsView;
 import splitmindq.caloriecounter.dao.UserRepository;
 import splitmindq.caloriecounter.dto.DailyNutritionDto;
+import splitmindq.caloriecounter.dto.IntakeFoodEntryDto;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
+import splitmindq.caloriecounter.dto.PeriodNutritionDto;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
+import splitmindq.caloriecounter.excpetions.ValidationException;
 import splitmindq.caloriecounter.listener.DailyIntakeDeletedEvent;
 import splitmindq.caloriecounter.model.*;
+import splitmindq.caloriecounter.requests.AddFoodToDi;
 import splitmindq.caloriecounter.requests.DailyIntakeRequest;
+import splitmindq.caloriecounter.requests.FoodAddResult;
 import splitmindq.caloriecounter.requests.UpdateDailyIntakeRequest;
 
 @Slf4j
@@ -31,11 +47,16 @@ public class DailyIntakeServiceImpl implements DailyIntakeService {
     private static final String FOOD_NOT_FOUND_MSG = "Food not found";
     private static final String DAILY_INTAKE_NOT_FOUND_MSG = "DailyIntake not found";
     private static final String USER_NOT_FOUND_MSG = "User not found";
+    private static final long MAX_RANGE_PERIODS = 1_000;
+    private static final int MAX_BULK_INTAKE_IDS = 500;
 
     private final UserRepository userRepository;
     private final FoodRepository foodRepository;
     private final DailyIntakeRepository dailyIntakeRepository;
+    private final DailyNutritionTotalsRepository dailyNutritionTotalsRepository;
+    private final NutritionRollupRepository nutritionRollupRepository;
     private final DailyIntakeCache dailyIntakeCache;
+    private final FoodNutrientIndex foodNutrientIndex;
     private final ApplicationEventPublisher eventPublisher;
 
     @Override
@@ -46,58 +67,157 @@ public class DailyIntakeServiceImpl implements DailyIntakeService {
         return intakes;
     }
 
+    /**
+     * Добавляет продукт в рацион одним запросом {@code INSERT ... ON CONFLICT DO UPDATE}: вес
+     * прибавляется к существующей строке атомарно, граф рациона не загружается.
+     */
     @Override
     @Transactional
-    public DailyIntake addFoodToDailyIntake(Long dailyIntakeId, Long foodId, double weight) {
-        DailyIntake dailyIntake = dailyIntakeRepository.findById(dailyIntakeId)
-                .orElseThrow(() -> new ResourceNotFoundException(DAILY_INTAKE_NOT_FOUND_MSG));
-        Food food = foodRepository.findById(foodId)
-                .orElseThrow(() -> new ResourceNotFoundException(FOOD_NOT_FOUND_MSG));
-
-        dailyIntake.getDailyIntakeFoods().stream()
-                .filter(entry -> entry.getFood().getId().equals(foodId))
-                .findFirst()
-                .ifPresentOrElse(
-                        entry -> entry.setWeight(entry.getWeight() + weight),
-                        () -> {
-                            DailyIntakeFood newEntry = new DailyIntakeFood();
-                            newEntry.setDailyIntake(dailyIntake);
-                            newEntry.setFood(food);
-                            newEntry.setWeight(weight);
-                            dailyIntake.getDailyIntakeFoods().add(newEntry);
-                        }
-                );
-
-        evictDailyIntakeCache(dailyIntake);
-        DailyIntake savedIntake = dailyIntakeRepository.save(dailyIntake);
+    public IntakeFoodEntryDto addFoodToDailyIntake(Long dailyIntakeId, Long foodId, double weight) {
+        // Пустой результат: нет рациона или продукта, причину уточняем только в этом случае
+        IntakeFoodUpsertView entry = dailyIntakeRepository.upsertFood(dailyIntakeId, foodId, weight)
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        dailyIntakeRepository.existsByIdAndUserDeletedAtIsNull(dailyIntakeId)
+                                ? FOOD_NOT_FOUND_MSG : DAILY_INTAKE_NOT_FOUND_MSG));
+
+        LocalDate date = entry.getDate();
+        evictDailyIntakeCache(entry.getEmail(), date);
+        applyNutritionDelta(entry.getUserId(), entry.getEmail(), date, dailyIntakeId, entry.portionOf(weight));
         log.info("Added foodId={} with weight={} to dailyIntakeId={}", foodId, weight, dailyIntakeId);
-        return savedIntake;
+        return new IntakeFoodEntryDto(dailyIntakeId, entry.getEntryId(), foodId, entry.getWeight());
     }
 
+    /**
+     * Добавляет продукты в несколько рационов одной транзакцией. Рационы и продукты читаются
+     * двумя запросами {@code findAllById}, добавления сливаются в памяти и записываются одним
+     * {@code INSERT ... ON CONFLICT}, который прибавляет вес к существующим строкам, как
+     * {@link #addFoodToDailyIntake}. Итоги и кэш обновляются по одному разу на рацион.
+     * Результаты возвращаются в порядке запросов.
+     */
+    @Override
+    @Transactional
+    public List<FoodAddResult> addFoodsToDailyIntakes(List<AddFoodToDi> requests) {
+        Map<Long, DailyIntake> intakesById = dailyIntakeRepository.findAllById(requests.stream()
+                        .map(AddFoodToDi::getDailyIntakeId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet())).stream()
+                .filter(DailyIntakeServiceImpl::isWritable)
+                .collect(Collectors.toMap(DailyIntake::getId, intake -> intake));
+        Map<Long, Food> foodsById = foodRepository.findAllById(requests.stream()
+                        .map(AddFoodToDi::getFoodId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Food::getId, food -> food));
+
+        Map<Long, Map<Long, Double>> weightsByIntake = new LinkedHashMap<>();
+        Map<Long, NutritionTotals> deltaByIntake = new LinkedHashMap<>();
+        List<FoodAddResult> results = new ArrayList<>(requests.size());
+        for (AddFoodToDi request : requests) {
+            DailyIntake dailyIntake = intakesById.get(request.getDailyIntakeId());
+            Food food = foodsById.get(request.getFoodId());
+            if (dailyIntake == null || food == null) {
+                String message = dailyIntake == null ? DAILY_INTAKE_NOT_FOUND_MSG : FOOD_NOT_FOUND_MSG;
+                results.add(new FoodAddResult(request.getFoodId(), false, "Ошибка: " + message));
+                continue;
+            }
+
+            weightsByIntake.computeIfAbsent(dailyIntake.getId(), id -> new HashMap<>())
+                    .merge(food.getId(), request.getWeight(), Double::sum);
+            deltaByIntake.merge(dailyIntake.getId(), NutritionTotals.ofPortion(food, request.getWeight()),
+                    NutritionTotals::plus);
+            results.add(new FoodAddResult(request.getFoodId(), true,
+                    "Продукт успешно добавлен в рацион ID: " + dailyIntake.getId()));
+        }
+
+        if (!weightsByIntake.isEmpty()) {
+            dailyIntakeRepository.lockIntakes(weightsByIntake.keySet());
+            dailyIntakeRepository.addFoods(weightsByIntake);
+        }
+        deltaByIntake.forEach((intakeId, delta) -> {
+            DailyIntake dailyIntake = intakesById.get(intakeId);
+            evictDailyIntakeCache(dailyIntake);
+            applyNutritionDelta(dailyIntake, delta);
+        });
+        log.info("Added {} of {} foods to {} daily intakes", results.stream().filter(FoodAddResult::isSuccess).count(),
+                requests.size(), deltaByIntake.size());
+        return results;
+    }
+
+    /**
+     * Рационы пользователя, помеченного на удаление, не меняются: их удаляет {@link UserPurgeService}.
+     */
+    private static boolean isWritable(DailyIntake dailyIntake) {
+        return dailyIntake.getUser() == null || dailyIntake.getUser().getDeletedAt() == null;
+    }
+
+    /**
+     * Удаляет из кэша списки рационов; КБЖУ обновляются через {@link #applyNutritionDelta}
+     * или удаляются вызывающим отдельно.
+     */
     private void evictDailyIntakeCache(DailyIntake dailyIntake) {
         if (dailyIntake.getUser() != null) {
-            String email = dailyIntake.getUser().getEmail();
-            LocalDate date = dailyIntake.getCreationDate();
-            if (date != null) {
-                dailyIntakeCache.evictIntakesWithDate(email, date);
-                dailyIntakeCache.evictNutritionData(email, date);
-                log.info("Evicted cache for email={} and date={}", email, date);
-            }
-            dailyIntakeCache.evictIntakesWithoutDate(email);
-            dailyIntakeCache.evictNutritionDataForIntake(dailyIntake.getId());
-            log.info("Evicted intakesWithoutDate and intakeNutrition cache for email={} and intakeId={}",
-                    email, dailyIntake.getId());
+            evictDailyIntakeCache(dailyIntake.getUser().getEmail(), dailyIntake.getCreationDate());
+        }
+    }
+
+    private void evictDailyIntakeCache(String email, @Nullable LocalDate date) {
+        if (date != null) {
+            dailyIntakeCache.evictIntakesWithDate(email, date);
+            log.info("Evicted cache for email={} and date={}", email, date);
         }
+        dailyIntakeCache.evictIntakesWithoutDate(email);
+        log.info("Evicted intakesWithoutDate cache for email={}", email);
+    }
+
+    /**
+     * Прибавляет изменение КБЖУ рациона к итогам дня в базе и к закэшированным итогам за день и за рацион.
+     */
+    private void applyNutritionDelta(DailyIntake dailyIntake, NutritionTotals delta) {
+        User user = dailyIntake.getUser();
+        applyNutritionDelta(user != null ? user.getId() : null, user != null ? user.getEmail() : null,
+                dailyIntake.getCreationDate(), dailyIntake.getId(), delta);
+    }
+
+    private void applyNutritionDelta(@Nullable Long userId, @Nullable String email, @Nullable LocalDate date,
+                                     Long intakeId, NutritionTotals delta) {
+        addToDailyTotals(userId, date, delta);
+        dailyIntakeCache.applyNutritionDelta(email, date, intakeId, delta);
+    }
+
+    private void addToDailyTotals(DailyIntake dailyIntake, NutritionTotals delta) {
+        addToDailyTotals(dailyIntake.getUser() != null ? dailyIntake.getUser().getId() : null,
+                dailyIntake.getCreationDate(), delta);
+    }
+
+    /**
+     * Обновляет строку {@code daily_nutrition_totals} и содержащие день неделю и месяц
+     * в {@code nutrition_rollups} в текущей транзакции.
+     */
+    private void addToDailyTotals(@Nullable Long userId, @Nullable LocalDate date, NutritionTotals delta) {
+        if (userId != null && date != null && !delta.isZero()) {
+            dailyNutritionTotalsRepository.addDelta(userId, date,
+                    delta.calories(), delta.protein(), delta.fats(), delta.carbs());
+            nutritionRollupRepository.addDelta(userId, date,
+                    delta.calories(), delta.protein(), delta.fats(), delta.carbs());
+        }
+    }
+
+    private static NutritionTotals totalsOf(Collection<DailyIntakeFood> foods) {
+        NutritionTotals totals = NutritionTotals.ZERO;
+        for (DailyIntakeFood food : foods) {
+            totals = totals.plus(NutritionTotals.ofPortion(food.getFood(), food.getWeight()));
+        }
+        return totals;
     }
 
     @Override
     @Transactional
     public DailyIntake createDailyIntake(DailyIntakeRequest dailyIntakeRequest) {
         User user = userRepository.findById(dailyIntakeRequest.getUserId())
+                .filter(existing -> existing.getDeletedAt() == null)
                 .orElseThrow(() -> new ResourceNotFoundException(USER_NOT_FOUND_MSG));
 
         dailyIntakeCache.evictIntakesWithoutDate(user.getEmail());
-        dailyIntakeCache.evictNutritionData(user.getEmail(), LocalDate.now());
 
         DailyIntake dailyIntake = new DailyIntake();
         dailyIntake.setUser(user);
@@ -109,18 +229,26 @@ public class DailyIntakeServiceImpl implements DailyIntakeService {
             foodWeightMap.merge(foodEntry.getFoodId(), foodEntry.getWeight(), Double::sum);
         });
 
+        // Все продукты рациона одним запросом вместо findById на каждый
+        Map<Long, Food> foodsById = foodRepository.findAllById(foodWeightMap.keySet()).stream()
+                .collect(Collectors.toMap(Food::getId, food -> food));
+        if (foodsById.size() < foodWeightMap.size()) {
+            throw new ResourceNotFoundException(FOOD_NOT_FOUND_MSG);
+        }
+
+        // Id строк выдает последовательность, поэтому вставки daily_intake_food уходят JDBC-пакетом
         foodWeightMap.forEach((foodId, weight) -> {
-            Food food = foodRepository.findById(foodId)
-                    .orElseThrow(() -> new ResourceNotFoundException(FOOD_NOT_FOUND_MSG));
             DailyIntakeFood dailyIntakeFood = new DailyIntakeFood();
             dailyIntakeFood.setDailyIntake(dailyIntake);
-            dailyIntakeFood.setFood(food);
+            dailyIntakeFood.setFood(foodsById.get(foodId));
             dailyIntakeFood.setWeight(weight);
             dailyIntake.getDailyIntakeFoods().add(dailyIntakeFood);
         });
 
+        NutritionTotals delta = totalsOf(dailyIntake.getDailyIntakeFoods());
         DailyIntake savedIntake = dailyIntakeRepository.save(dailyIntake);
         evictDailyIntakeCache(savedIntake);
+        applyNutritionDelta(savedIntake, delta);
         log.info("Created daily intake with id={} for userId={}, food count={}",
                 savedIntake.getId(), user.getId(), savedIntake.getDailyIntakeFoods().size());
         return savedIntake;
@@ -134,95 +262,84 @@ public class DailyIntakeServiceImpl implements DailyIntakeService {
         log.info("Retrieved daily intake with id={}", id);
         return intake;
     }
+    /**
+     * Заменяет состав рациона. Разница между текущим и новым набором продуктов применяется
+     * тремя пакетными запросами: удаление, обновление весов и вставка новых строк. Рацион
+     * блокируется до чтения весов, а изменение КБЖУ считается в базе по соединению с
+     * {@code foods} до и после записи.
+     */
     @Transactional
     public void updateDailyIntake(Long id, UpdateDailyIntakeRequest request) {
         DailyIntake dailyIntake = dailyIntakeRepository.findById(id)
+                .filter(DailyIntakeServiceImpl::isWritable)
                 .orElseThrow(() -> new ResourceNotFoundException(DAILY_INTAKE_NOT_FOUND_MSG));
+        // Параллельное добавление продукта либо уже зафиксировано и видно в весах ниже,
+        // либо ждет конца этой транзакции
+        if (dailyIntakeRepository.lockIntakes(List.of(id)) == 0) {
+            throw new ResourceNotFoundException(DAILY_INTAKE_NOT_FOUND_MSG);
+        }
 
-        log.info("Updating daily intake id={} with foodIds={} and weights={}",
-                id, request.getFoodIds(), request.getWeights());
-
-        // Логируем текущие продукты
-        log.info("Current foods in daily intake id={}: {}", id,
-                dailyIntake.getDailyIntakeFoods().stream()
-                        .map(dif -> "foodId=" + dif.getFood().getId() + ", weight=" + dif.getWeight())
-                        .collect(Collectors.joining("; ")));
-
-        // Создаем карту новых продуктов из запроса: foodId -> weight
-        Map<Long, Double> newFoodWeightMap = new HashMap<>();
+        // Новый набор продуктов из запроса: foodId -> weight
+        Map<Long, Double> newWeights = new HashMap<>();
         for (int i = 0; i < request.getFoodIds().size(); i++) {
-            newFoodWeightMap.merge(request.getFoodIds().get(i), request.getWeights().get(i), Double::sum);
+            newWeights.merge(request.getFoodIds().get(i), request.getWeights().get(i), Double::sum);
+        }
+        Map<Long, Double> currentWeights = new HashMap<>();
+        for (IntakeFoodWeightView row : dailyIntakeRepository.findFoodWeightsByIntakeIds(List.of(id))) {
+            currentWeights.merge(row.getFoodId(), row.getWeight(), Double::sum);
         }
-        log.info("New food weight map: {}", newFoodWeightMap);
-
-        // Подсчитываем количество продуктов до удаления
-        int initialSize = dailyIntake.getDailyIntakeFoods().size();
 
-        // Удаляем продукты, которых нет в новом запросе
-        dailyIntake.getDailyIntakeFoods().removeIf(dif -> {
-            boolean shouldRemove = !newFoodWeightMap.containsKey(dif.getFood().getId());
-            if (shouldRemove) {
-                log.info("Removing foodId={} from daily intake id={}", dif.getFood().getId(), id);
+        List<Long> removed = new ArrayList<>();
+        for (Long foodId : currentWeights.keySet()) {
+            if (!newWeights.containsKey(foodId)) {
+                removed.add(foodId);
             }
-            return shouldRemove;
-        });
-
-        // Подсчитываем количество удаленных продуктов
-        int removedCount = initialSize - dailyIntake.getDailyIntakeFoods().size();
-        log.info("Removed {} foods from daily intake id={}", removedCount, id);
-
-        // Создаем карту текущих продуктов для быстрого доступа
-        Map<Long, DailyIntakeFood> currentFoods = dailyIntake.getDailyIntakeFoods().stream()
-                .collect(Collectors.toMap(
-                        dif -> dif.getFood().getId(),
-                        dif -> dif,
-                        (existing, replacement) -> existing // Если есть дубликаты, оставляем первый
-                ));
-
-        // Обновляем существующие продукты и добавляем новые
-        newFoodWeightMap.forEach((foodId, weight) -> {
-            DailyIntakeFood existingFood = currentFoods.get(foodId);
-            if (existingFood != null) {
-                // Обновляем вес существующего продукта
-                log.info("Updating weight for foodId={} to {}", foodId, weight);
-                existingFood.setWeight(weight);
-            } else {
-                // Добавляем новый продукт
-                log.info("Adding new foodId={} with weight={} to daily intake id={}", foodId, weight, id);
-                Food food = foodRepository.findById(foodId)
-                        .orElseThrow(() -> new ResourceNotFoundException(FOOD_NOT_FOUND_MSG));
-                DailyIntakeFood newDailyIntakeFood = new DailyIntakeFood();
-                newDailyIntakeFood.setDailyIntake(dailyIntake);
-                newDailyIntakeFood.setFood(food);
-                newDailyIntakeFood.setWeight(weight);
-                dailyIntake.getDailyIntakeFoods().add(newDailyIntakeFood);
+        }
+        Map<Long, Double> changed = new HashMap<>();
+        Map<Long, Double> added = new HashMap<>();
+        newWeights.forEach((foodId, weight) -> {
+            Double currentWeight = currentWeights.get(foodId);
+            if (currentWeight == null) {
+                added.put(foodId, weight);
+            } else if (currentWeight.doubleValue() != weight) {
+                changed.put(foodId, weight);
             }
         });
 
-        // Сохраняем обновленный рацион
-        log.info("Saving daily intake id={} with {} foods", id, dailyIntake.getDailyIntakeFoods().size());
-        dailyIntakeRepository.save(dailyIntake);
-
-        // Инвалидируем и обновляем кэш
-        String email = dailyIntake.getUser() != null ? dailyIntake.getUser().getEmail() : null;
-        LocalDate date = dailyIntake.getCreationDate();
-        if (email != null && date != null) {
-            // Инвалидируем старые данные
-            evictDailyIntakeCache(dailyIntake);
-
-            // Обновляем intakesWithDateCache
-            dailyIntakeCache.putIntakesWithDate(email, date, List.of(dailyIntake));
-
-            // Инвалидируем nutritionCache и intakeNutritionCache
-            dailyIntakeCache.evictNutritionData(email, date);
-            dailyIntakeCache.evictNutritionDataForIntake(id);
+        if (!added.isEmpty() && foodRepository.findAllById(added.keySet()).size() < added.size()) {
+            throw new ResourceNotFoundException(FOOD_NOT_FOUND_MSG);
+        }
+        if (removed.isEmpty() && changed.isEmpty() && added.isEmpty()) {
+            log.debug("Daily intake id={} is unchanged", id);
+            return;
+        }
 
-            log.info("Updated cache for daily intake id={}, email={}, date={}", id, email, date);
-        } else {
-            log.warn("Cannot update cache: email={} or date={} is null for daily intake id={}", email, date, id);
+        NutritionTotals before = nutritionOfIntake(id);
+        if (!removed.isEmpty()) {
+            dailyIntakeRepository.deleteFoods(id, removed);
+        }
+        if (!changed.isEmpty()) {
+            dailyIntakeRepository.updateFoodWeights(id, changed);
+        }
+        if (!added.isEmpty()) {
+            dailyIntakeRepository.insertFoods(id, added);
         }
 
-        log.info("Updated daily intake id={}. Food count: {}", id, dailyIntake.getDailyIntakeFoods().size());
+        // КБЖУ за день и за рацион обновляем на разницу вместо пересчета
+        NutritionTotals delta = nutritionOfIntake(id).minus(before);
+        evictDailyIntakeCache(dailyIntake);
+        applyNutritionDelta(dailyIntake, delta);
+        log.info("Updated daily intake id={}: {} foods removed, {} changed, {} added",
+                id, removed.size(), changed.size(), added.size());
+    }
+
+    /**
+     * КБЖУ рациона по его строкам в базе, в текущей транзакции.
+     */
+    private NutritionTotals nutritionOfIntake(Long intakeId) {
+        return dailyIntakeRepository.calculateNutritionForIntake(intakeId)
+                .map(NutritionTotalsView::toTotals)
+                .orElse(NutritionTotals.ZERO);
     }
 
 
@@ -239,6 +356,9 @@ public class DailyIntakeServiceImpl implements DailyIntakeService {
                     Long intakeId = dailyIntake.getId();
 
                     evictDailyIntakeCache(dailyIntake);
+                    dailyIntakeCache.evictNutritionDataForIntake(intakeId);
+                    addToDailyTotals(dailyIntake,
+                            NutritionTotals.ZERO.minus(totalsOf(dailyIntake.getDailyIntakeFoods())));
 
                     if (email != null && date != null) {
                         dailyIntakeCache.evictNutritionData(email, date);
@@ -257,64 +377,150 @@ public class DailyIntakeServiceImpl implements DailyIntakeService {
 
     @Override
     @Transactional(readOnly = true)
-    public List<DailyIntake> getUserIntakes(String email, @Nullable LocalDate date) {
+    public List<IntakeSnapshot> getUserIntakes(String email, @Nullable LocalDate date) {
         if (date != null) {
-            return dailyIntakeCache.getIntakesWithDate(email, date)
-                    .orElseGet(() -> {
-                        List<DailyIntake> intakes = dailyIntakeRepository.findUserIntakesWithDate(email, date);
-                        dailyIntakeCache.putIntakesWithDate(email, date, intakes);
-                        log.info("Retrieved {} intakes for email={} and date={}", intakes.size(), email, date);
-                        return intakes;
-                    });
+            return dailyIntakeCache.getOrLoadIntakesWithDate(email, date, () -> {
+                List<IntakeSnapshot> intakes = IntakeFoodRow.toSnapshots(
+                        dailyIntakeRepository.findIntakeRowsWithDate(email, date));
+                log.info("Retrieved {} intakes for email={} and date={}", intakes.size(), email, date);
+                return intakes;
+            });
         }
         // Убрана принудительная очистка кэша, полагаемся на TTL
-        return dailyIntakeCache.getIntakesWithoutDate(email)
-                .orElseGet(() -> {
-                    List<DailyIntake> intakes = dailyIntakeRepository.findUserIntakesWithoutDate(email);
-                    dailyIntakeCache.putIntakesWithoutDate(email, intakes);
-                    log.info("Retrieved {} intakes for email={} without date", intakes.size(), email);
-                    return intakes;
-                });
+        return dailyIntakeCache.getOrLoadIntakesWithoutDate(email, () -> {
+            List<IntakeSnapshot> intakes = IntakeFoodRow.toSnapshots(
+                    dailyIntakeRepository.findIntakeRowsWithoutDate(email));
+            log.info("Retrieved {} intakes for email={} without date", intakes.size(), email);
+            return intakes;
+        });
     }
 
     @Override
     @Transactional(readOnly = true)
     public DailyNutritionDto getDailyNutrition(String email, LocalDate date) {
-        return dailyIntakeCache.getNutritionData(email, date)
-                .map(nutrition -> {
-                    log.info("Retrieved cached nutrition data for email={} and date={}: {}", email, date, nutrition);
-                    return new DailyNutritionDto(nutrition);
-                })
-                .orElseGet(() -> {
-                    Optional<Map<String, Double>> nutritionOpt = dailyIntakeRepository.calculateDailyNutrition(email, date);
-                    if (nutritionOpt.isEmpty() || nutritionOpt.get().values().stream().allMatch(v -> v == null || v == 0.0)) {
+        return dailyIntakeCache.getOrLoadNutritionData(email, date, () -> {
+                    NutritionTotals nutrition = dailyIntakeRepository.calculateDailyNutrition(email, date)
+                            .map(NutritionTotalsView::toTotals)
+                            .orElse(NutritionTotals.ZERO);
+                    if (nutrition.rounded().isZero()) {
                         log.warn("Nutrition data not found or all values are zero for email={} and date={}", email, date);
                         return null;
                     }
-                    Map<String, Double> nutrition = nutritionOpt.get();
-                    dailyIntakeCache.putNutritionData(email, date, nutrition);
                     log.info("Calculated nutrition data for email={} and date={}: {}", email, date, nutrition);
-                    return new DailyNutritionDto(nutrition);
-                });
+                    return nutrition;
+                })
+                .map(DailyNutritionDto::new)
+                .orElse(null);
+    }
+
+    /**
+     * Временной ряд КБЖУ за {@code [from, to]}, включая периоды без рационов с нулями.
+     * Полные недели и месяцы читаются из {@code nutrition_rollups}, неполные крайние
+     * периоды досчитываются по итогам дней.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<PeriodNutritionDto> getNutritionRange(String email, LocalDate from, LocalDate to,
+                                                      NutritionGranularity granularity) {
+        if (from.isAfter(to)) {
+            throw new ValidationException("Parameter 'from' must not be after 'to'");
+        }
+        long periods = granularity.periodsBetween(from, to);
+        if (periods > MAX_RANGE_PERIODS) {
+            throw new ValidationException("Range covers " + periods + " periods, at most "
+                    + MAX_RANGE_PERIODS + " are allowed");
+        }
+
+        LocalDate firstPeriod = granularity.periodStart(from);
+        LocalDate fullFrom = firstPeriod.equals(from) ? from : granularity.nextPeriodStart(firstPeriod);
+        LocalDate fullToExclusive = granularity.periodStart(to.plusDays(1));
+
+        Map<LocalDate, NutritionTotals> totalsByPeriod = new HashMap<>();
+        if (fullFrom.isBefore(fullToExclusive)) {
+            if (granularity == NutritionGranularity.DAY) {
+                addDailyTotals(totalsByPeriod, granularity, email, from, to);
+            } else {
+                nutritionRollupRepository.findRange(email, granularity, fullFrom, fullToExclusive)
+                        .forEach(rollup -> totalsByPeriod.put(rollup.getPeriodStart(), rollup.toTotals()));
+                addDailyTotals(totalsByPeriod, granularity, email, from, fullFrom.minusDays(1));
+                addDailyTotals(totalsByPeriod, granularity, email, fullToExclusive, to);
+            }
+        } else {
+            // Диапазон целиком внутри одного неполного периода
+            addDailyTotals(totalsByPeriod, granularity, email, from, to);
+        }
+
+        List<PeriodNutritionDto> series = new ArrayList<>((int) periods);
+        for (LocalDate start = firstPeriod; !start.isAfter(to); start = granularity.nextPeriodStart(start)) {
+            LocalDate next = granularity.nextPeriodStart(start);
+            series.add(new PeriodNutritionDto(
+                    start.isBefore(from) ? from : start,
+                    next.isAfter(to) ? to : next.minusDays(1),
+                    totalsByPeriod.getOrDefault(start, NutritionTotals.ZERO)));
+        }
+        log.info("Built {} nutrition series of {} periods for email={} from {} to {}",
+                granularity, series.size(), email, from, to);
+        return series;
+    }
+
+    /**
+     * Прибавляет итоги дней {@code [from, to]} к периодам, в которые они попадают.
+     */
+    private void addDailyTotals(Map<LocalDate, NutritionTotals> totalsByPeriod, NutritionGranularity granularity,
+                                String email, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return;
+        }
+        for (DailyNutritionTotal day : dailyNutritionTotalsRepository.findRange(email, from, to)) {
+            totalsByPeriod.merge(granularity.periodStart(day.getDate()), day.toTotals(), NutritionTotals::plus);
+        }
     }
 
     @Override
     @Transactional(readOnly = true)
     public DailyNutritionDto getNutritionForIntake(Long intakeId) {
-        Optional<Map<String, Double>> cachedNutrition = dailyIntakeCache.getNutritionDataForIntake(intakeId);
-        if (cachedNutrition.isPresent()) {
-            log.info("Retrieved cached nutrition data for intakeId={}: {}", intakeId, cachedNutrition.get());
-            return new DailyNutritionDto(cachedNutrition.get());
+        return dailyIntakeCache.getOrLoadNutritionDataForIntake(intakeId, () -> {
+                    NutritionTotals nutrition = foodNutrientIndex.totalsByIntake(
+                                    dailyIntakeRepository.findFoodWeightsByIntakeIds(List.of(intakeId)))
+                            .getOrDefault(intakeId, NutritionTotals.ZERO);
+                    if (nutrition.rounded().isZero()) {
+                        log.warn("Nutrition data not found or all values are zero for intakeId={}", intakeId);
+                        return null;
+                    }
+                    log.info("Calculated nutrition data for intakeId={}: {}", intakeId, nutrition);
+                    return nutrition;
+                })
+                .map(DailyNutritionDto::new)
+                .orElseGet(() -> new DailyNutritionDto(NutritionTotals.ZERO));
+    }
+
+    /**
+     * КБЖУ нескольких рационов в порядке запроса. Строки промахов кэша читаются одним запросом
+     * и суммируются по {@link FoodNutrientIndex}; рационы без данных, как и в
+     * {@link #getNutritionForIntake}, в ответ не попадают.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<Long, DailyNutritionDto> getNutritionForIntakes(Collection<Long> intakeIds) {
+        if (intakeIds.size() > MAX_BULK_INTAKE_IDS) {
+            throw new ValidationException("At most " + MAX_BULK_INTAKE_IDS + " intake ids are allowed per request");
         }
+        Map<Long, NutritionTotals> nutritionById = dailyIntakeCache.getOrLoadNutritionDataForIntakes(intakeIds,
+                missingIds -> {
+                    Map<Long, NutritionTotals> loaded = foodNutrientIndex.totalsByIntake(
+                            dailyIntakeRepository.findFoodWeightsByIntakeIds(missingIds));
+                    loaded.values().removeIf(nutrition -> nutrition.rounded().isZero());
+                    log.info("Calculated nutrition data for {} of {} intakes", loaded.size(), missingIds.size());
+                    return loaded;
+                });
 
-        Optional<Map<String, Double>> nutritionOpt = dailyIntakeRepository.calculateNutritionForIntake(intakeId);
-        if (nutritionOpt.isEmpty() || nutritionOpt.get().values().stream().allMatch(v -> v == null || v == 0.0)) {
-            log.warn("Nutrition data not found or all values are zero for intakeId={}", intakeId);
-            return new DailyNutritionDto(0.0, 0.0, 0.0, 0.0);
+        Map<Long, DailyNutritionDto> result = new LinkedHashMap<>();
+        for (Long intakeId : intakeIds) {
+            NutritionTotals nutrition = nutritionById.get(intakeId);
+            if (nutrition != null) {
+                result.putIfAbsent(intakeId, new DailyNutritionDto(nutrition));
+            }
         }
-        Map<String, Double> nutrition = nutritionOpt.get();
-        dailyIntakeCache.putNutritionDataForIntake(intakeId, nutrition);
-        log.info("Calculated nutrition data for intakeId={}: {}", intakeId, nutrition);
-        return new DailyNutritionDto(nutrition);
+        return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,190 @@
+package splitmindq.caloriecounter.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
+import splitmindq.caloriecounter.dto.NutritionTotalsTaskDto;
+import splitmindq.caloriecounter.excpetions.NotFoundException;
+
+/**
+ * Фоновые задачи над {@code daily_nutrition_totals}: пересчет (backfill) итогов по рационам
+ * вместе с недельными и месячными {@code nutrition_rollups} и сверка итогов дней, которая
+ * только сообщает о расхождениях. Пользователи делятся на диапазоны id,
+ * диапазоны обрабатываются параллельно, каждый — в своей транзакции.
+ */
+@Slf4j
+@Service
+public class DailyNutritionTotalsService {
+    private static final long USERS_PER_CHUNK = 1_000;
+    private static final int PARALLELISM = 4;
+    private static final int MAX_DRIFT_SAMPLES = 100;
+
+    private final DailyNutritionTotalsRepository totalsRepository;
+    private final NutritionRollupRepository rollupRepository;
+    private final DailyIntakeRepository dailyIntakeRepository;
+    private final DailyIntakeCache dailyIntakeCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, TotalsTask> tasks = new ConcurrentHashMap<>();
+
+    public DailyNutritionTotalsService(DailyNutritionTotalsRepository totalsRepository,
+                                       NutritionRollupRepository rollupRepository,
+                                       DailyIntakeRepository dailyIntakeRepository,
+                                       DailyIntakeCache dailyIntakeCache,
+                                       PlatformTransactionManager transactionManager) {
+        this.totalsRepository = totalsRepository;
+        this.rollupRepository = rollupRepository;
+        this.dailyIntakeRepository = dailyIntakeRepository;
+        this.dailyIntakeCache = dailyIntakeCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Заполняет пустые таблицы итогов при первом запуске с уже существующими рационами.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if ((totalsRepository.count() == 0 || rollupRepository.count() == 0)
+                && dailyIntakeRepository.count() > 0) {
+            log.info("Daily nutrition totals are empty, starting backfill task {}", startRebuild());
+        }
+    }
+
+    public String startRebuild() {
+        return start(Mode.REBUILD);
+    }
+
+    public String startVerification() {
+        return start(Mode.VERIFY);
+    }
+
+    private String start(Mode mode) {
+        String taskId = UUID.randomUUID().toString();
+        TotalsTask task = new TotalsTask(taskId, mode);
+        tasks.put(taskId, task);
+        executor.submit(task);
+        return taskId;
+    }
+
+    public NutritionTotalsTaskDto getTaskStatus(String taskId) {
+        TotalsTask task = tasks.get(taskId);
+        if (task == null) {
+            throw new NotFoundException("Task not found: " + taskId);
+        }
+        return task.toDto();
+    }
+
+    private enum Mode {
+        REBUILD,
+        VERIFY
+    }
+
+    private class TotalsTask implements Runnable {
+        private final String taskId;
+        private final Mode mode;
+        private volatile String status = "PENDING";
+        private volatile int chunksTotal;
+        private final AtomicInteger chunksDone = new AtomicInteger();
+        private final AtomicLong rowsWritten = new AtomicLong();
+        private final AtomicLong driftCount = new AtomicLong();
+        private final List<String> driftSample = Collections.synchronizedList(new ArrayList<>());
+
+        TotalsTask(String taskId, Mode mode) {
+            this.taskId = taskId;
+            this.mode = mode;
+        }
+
+        @Override
+        public void run() {
+            status = "RUNNING";
+            long start = System.nanoTime();
+            long maxUserId = totalsRepository.findMaxUserId();
+            chunksTotal = (int) ((maxUserId + USERS_PER_CHUNK - 1) / USERS_PER_CHUNK);
+            ExecutorService workers = Executors.newFixedThreadPool(PARALLELISM);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (long from = 1; from <= maxUserId; from += USERS_PER_CHUNK) {
+                    long chunkFrom = from;
+                    long chunkTo = Math.min(from + USERS_PER_CHUNK - 1, maxUserId);
+                    futures.add(workers.submit(() -> processChunk(chunkFrom, chunkTo)));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                if (mode == Mode.REBUILD) {
+                    // Кэш мог загрузить итоги из таблицы до пересчета
+                    dailyIntakeCache.clearRegion("nutrition");
+                }
+                status = "COMPLETED";
+                log.info("{} of daily nutrition totals {} completed in {} ms: {} chunks, {} rows written, {} drifted days",
+                        mode, taskId, (System.nanoTime() - start) / 1_000_000, chunksTotal,
+                        rowsWritten.get(), driftCount.get());
+            } catch (InterruptedException e) {
+                // Восстанавливаем статус прерывания
+                Thread.currentThread().interrupt();
+                status = "INTERRUPTED";
+            } catch (ExecutionException | RuntimeException e) {
+                status = "FAILED";
+                log.error("{} of daily nutrition totals {} failed", mode, taskId, e);
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
+        private void processChunk(long fromUserId, long toUserId) {
+            if (mode == Mode.REBUILD) {
+                transactionTemplate.executeWithoutResult(transaction -> {
+                    totalsRepository.lockUserRange(fromUserId, toUserId);
+                    rowsWritten.addAndGet(totalsRepository.rebuildUserRange(fromUserId, toUserId));
+                    totalsRepository.deleteOrphansInUserRange(fromUserId, toUserId);
+                    rowsWritten.addAndGet(rollupRepository.rebuildUserRange(fromUserId, toUserId));
+                    rollupRepository.deleteOrphansInUserRange(fromUserId, toUserId);
+                });
+            } else {
+                List<String> drifted = totalsRepository.findDriftInUserRange(fromUserId, toUserId);
+                driftCount.addAndGet(drifted.size());
+                for (String day : drifted) {
+                    if (driftSample.size() >= MAX_DRIFT_SAMPLES) {
+                        break;
+                    }
+                    driftSample.add(day);
+                }
+            }
+            chunksDone.incrementAndGet();
+        }
+
+        NutritionTotalsTaskDto toDto() {
+            List<String> sample;
+            synchronized (driftSample) {
+                sample = List.copyOf(driftSample);
+            }
+            return new NutritionTotalsTaskDto(taskId, mode.name(), status, chunksTotal, chunksDone.get(),
+                    rowsWritten.get(), driftCount.get(), sample);
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package splitmindq.caloriecounter.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import jakarta.transaction.Transactional;
 import lombok.AllArgsConstructor;
@@ -11,11 +15,15 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.cache.FoodNutrientIndex;
+import splitmindq.caloriecounter.cache.UserDateKey;
+import splitmindq.caloriecounter.dao.AffectedIntakeView;
 import splitmindq.caloriecounter.dao.DailyIntakeFoodRepository;
-import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
 import splitmindq.caloriecounter.dao.FoodRepository;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
-import splitmindq.caloriecounter.model.DailyIntakeFood;
+import splitmindq.caloriecounter.model.DailyNutritionTotal;
 import splitmindq.caloriecounter.model.Food;
 import splitmindq.caloriecounter.service.FoodService;
 
@@ -26,11 +34,14 @@ public class FoodServiceImpl implements FoodService {
     private final FoodRepository foodRepository;
     private final DailyIntakeFoodRepository dailyIntakeFoodRepository;
     private final DailyIntakeCache dailyIntakeCache;
-    private final DailyIntakeRepository dailyIntakeRepository;
+    private final DailyNutritionTotalsRepository dailyNutritionTotalsRepository;
+    private final NutritionRollupRepository nutritionRollupRepository;
+    private final FoodNutrientIndex foodNutrientIndex;
 
     @Override
     public void createFood(Food food) {
         foodRepository.save(food);
+        foodNutrientIndex.onFoodSaved(food);
     }
 
     @Override
@@ -44,6 +55,7 @@ public class FoodServiceImpl implements FoodService {
     }
 
     @Override
+    @Transactional
     public void updateFood(Long id, Food updatedFood) {
         Food existingFood = foodRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Food not found with id: " + id));
@@ -53,6 +65,11 @@ public class FoodServiceImpl implements FoodService {
             throw new DataIntegrityViolationException("Food with this name already exists.");
         }
 
+        boolean nutritionChanged = existingFood.getCalories() != updatedFood.getCalories()
+                || existingFood.getProtein() != updatedFood.getProtein()
+                || existingFood.getFats() != updatedFood.getFats()
+                || existingFood.getCarbs() != updatedFood.getCarbs();
+
         existingFood.setName(updatedFood.getName());
         existingFood.setCalories(updatedFood.getCalories());
         existingFood.setProtein(updatedFood.getProtein());
@@ -60,46 +77,58 @@ public class FoodServiceImpl implements FoodService {
         existingFood.setCarbs(updatedFood.getCarbs());
 
         foodRepository.save(existingFood);
+
+        if (nutritionChanged) {
+            foodNutrientIndex.onFoodSaved(existingFood);
+            // Пересчет итогов идет нативным запросом и должен увидеть новые КБЖУ продукта
+            foodRepository.flush();
+            // Итоги всех дней с этим продуктом пересчитываются в той же транзакции
+            List<AffectedIntakeView> affected = dailyNutritionTotalsRepository.recomputeDaysWithFood(id);
+            nutritionRollupRepository.refreshForFood(id);
+            evictIntakeCaches(affected);
+        }
+    }
+
+    private void evictIntakeCaches(Collection<AffectedIntakeView> affected) {
+        if (affected.isEmpty()) {
+            return;
+        }
+        Set<UserDateKey> cachedDays = new HashSet<>();
+        List<Long> intakeIds = new ArrayList<>(affected.size());
+        for (AffectedIntakeView intake : affected) {
+            cachedDays.add(new UserDateKey(intake.getEmail(), intake.getDate()));
+            intakeIds.add(intake.getIntakeId());
+        }
+        dailyIntakeCache.evictIntakeData(cachedDays, intakeIds);
     }
 
     @Override
     @Transactional
     public boolean deleteFood(Long id) {
         try {
-            // 1. Находим все записи DailyIntakeFood, связанные с продуктом
-            List<DailyIntakeFood> dailyIntakeFoods = dailyIntakeFoodRepository.findByFoodId(id);
-            if (!dailyIntakeFoods.isEmpty()) {
-                // 2. Очищаем кэш для всех затронутых DailyIntake
-                dailyIntakeFoods.stream()
-                        .map(DailyIntakeFood::getDailyIntake)
-                        .distinct()
-                        .forEach(dailyIntake -> {
-                            String email = dailyIntake.getUser().getEmail();
-                            LocalDate date = dailyIntake.getCreationDate();
-                            dailyIntakeCache.evictIntakesWithDate(email, date);
-                            dailyIntakeCache.evictNutritionData(email, date);
-                            dailyIntakeCache.evictIntakesWithoutDate(email);
-                            dailyIntakeCache.evictNutritionDataForIntake(dailyIntake.getId());
-                        });
-
-                // 3. Удаляем все записи DailyIntakeFood, связанные с продуктом
-                dailyIntakeFoodRepository.deleteAll(dailyIntakeFoods);
-
-                // 4. Проверяем и удаляем пустые DailyIntake
-                dailyIntakeFoods.stream()
-                        .map(DailyIntakeFood::getDailyIntake)
-                        .distinct()
-                        .forEach(intake -> {
-                            // Проверяем, остались ли связанные DailyIntakeFood
-                            List<DailyIntakeFood> remainingFoods = dailyIntakeFoodRepository.findByDailyIntakeId(intake.getId());
-                            if (remainingFoods.isEmpty()) {
-                                dailyIntakeRepository.delete(intake);
-                            }
-                        });
+            // 1. Одним запросом удаляем строки продукта, опустевшие рационы и пересчитываем итоги дней
+            List<AffectedIntakeView> affected = dailyIntakeFoodRepository.removeFoodFromIntakes(id);
+            if (!affected.isEmpty()) {
+                Set<DailyNutritionTotal.Key> days = new HashSet<>();
+                Set<UserDateKey> cachedDays = new HashSet<>();
+                List<Long> intakeIds = new ArrayList<>(affected.size());
+                for (AffectedIntakeView intake : affected) {
+                    LocalDate date = intake.getDate();
+                    days.add(new DailyNutritionTotal.Key(intake.getUserId(), date));
+                    cachedDays.add(new UserDateKey(intake.getEmail(), date));
+                    intakeIds.add(intake.getIntakeId());
+                }
+
+                // 2. Пересчитываем недели и месяцы затронутых дней
+                nutritionRollupRepository.refreshForDays(days);
+
+                // 3. Очищаем кэш одной пачкой
+                dailyIntakeCache.evictIntakeData(cachedDays, intakeIds);
             }
 
-            // 5. Удаляем сам продукт
+            // 4. Удаляем сам продукт
             foodRepository.deleteById(id);
+            foodNutrientIndex.onFoodDeleted(id);
             return true;
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Нельзя удалить продукт, который связан с дневными рационами.", e);
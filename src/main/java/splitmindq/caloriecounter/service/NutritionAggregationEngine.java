@@ -0,0 +1,283 @@
+package splitmindq.caloriecounter.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import splitmindq.caloriecounter.cache.FoodNutrientIndex;
+import splitmindq.caloriecounter.dto.DailyNutritionDto;
+import splitmindq.caloriecounter.dto.NutritionReportDto;
+import splitmindq.caloriecounter.dto.PeriodNutritionDto;
+import splitmindq.caloriecounter.dto.UserNutritionTotalsDto;
+import splitmindq.caloriecounter.excpetions.ValidationException;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+/**
+ * Пакетная агрегация КБЖУ по всем строкам {@code daily_intake_food} за диапазон дат для отчетов.
+ * Строки читаются курсором без соединения с {@code foods} и без приведения к NUMERIC и
+ * складываются в колонки примитивных массивов; КБЖУ продуктов подставляет {@link FoodNutrientIndex}.
+ * Каждая пачка считается простыми циклами по массивам, которые JIT может векторизовать,
+ * после чего порции раскладываются по дням и пользователям. Рационы пользователей,
+ * помеченных на удаление, в отчет не входят.
+ */
+@Slf4j
+@Service
+public class NutritionAggregationEngine {
+    static final int BATCH_SIZE = 4_096;
+    private static final int MAX_RANGE_DAYS = 3_660;
+
+    private static final String ROWS_SQL = """
+            SELECT di.user_id, di.created_at - DATE '1970-01-01' AS epoch_day, dif.food_id, dif.weight
+            FROM daily_intake_food dif
+            JOIN daily_intakes di ON di.id = dif.daily_intake_id
+            JOIN users u ON u.id = di.user_id
+            WHERE di.created_at BETWEEN ? AND ?
+            AND u.deleted_at IS NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final FoodNutrientIndex foodNutrientIndex;
+
+    public NutritionAggregationEngine(DataSource dataSource,
+                                      PlatformTransactionManager transactionManager,
+                                      FoodNutrientIndex foodNutrientIndex) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // PostgreSQL отдает строки порциями только внутри транзакции
+        this.jdbcTemplate.setFetchSize(BATCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.foodNutrientIndex = foodNutrientIndex;
+    }
+
+    /**
+     * Считает итоги за {@code [from, to]} по дням и по пользователям.
+     *
+     * @param includeUsers заполнять ли разбивку по пользователям (она может быть большой)
+     */
+    public NutritionReportDto aggregate(LocalDate from, LocalDate to, boolean includeUsers) {
+        if (from.isAfter(to)) {
+            throw new ValidationException("Parameter 'from' must not be after 'to'");
+        }
+        long days = to.toEpochDay() - from.toEpochDay() + 1;
+        if (days > MAX_RANGE_DAYS) {
+            throw new ValidationException("Report range is limited to " + MAX_RANGE_DAYS + " days");
+        }
+
+        long start = System.nanoTime();
+        Aggregation aggregation = new Aggregation(from.toEpochDay(), (int) days);
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(ROWS_SQL,
+                (RowCallbackHandler) rs -> aggregation.add(rs.getLong(1), rs.getInt(2), rs.getLong(3), rs.getDouble(4)),
+                from, to));
+        aggregation.flush();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<PeriodNutritionDto> dayTotals = aggregation.dayTotals();
+        List<UserNutritionTotalsDto> userTotals = includeUsers ? aggregation.userTotals() : List.of();
+        log.info("Aggregated {} intake food rows from {} to {} in {} ms: {} days, {} users, {} unknown foods",
+                aggregation.rows, from, to, elapsedMillis, dayTotals.size(), aggregation.users.size,
+                aggregation.unknownFoodRows);
+        return new NutritionReportDto(from, to, aggregation.rows, aggregation.unknownFoodRows, elapsedMillis,
+                new DailyNutritionDto(aggregation.total()), dayTotals, userTotals);
+    }
+
+    /**
+     * Колонки текущей пачки и накопленные суммы. Используется одним потоком.
+     */
+    private final class Aggregation {
+        private final long firstDay;
+        private final long[] userIds = new long[BATCH_SIZE];
+        private final int[] epochDays = new int[BATCH_SIZE];
+        private final long[] foodIds = new long[BATCH_SIZE];
+        private final double[] weights = new double[BATCH_SIZE];
+        private final double[] calories = new double[BATCH_SIZE];
+        private final double[] protein = new double[BATCH_SIZE];
+        private final double[] fats = new double[BATCH_SIZE];
+        private final double[] carbs = new double[BATCH_SIZE];
+        private int count;
+
+        private final double[] dayCalories;
+        private final double[] dayProtein;
+        private final double[] dayFats;
+        private final double[] dayCarbs;
+        private final boolean[] dayPresent;
+        private final UserTotals users = new UserTotals();
+        private final double[] total = new double[4];
+        private long rows;
+        private long unknownFoodRows;
+
+        Aggregation(long firstDay, int days) {
+            this.firstDay = firstDay;
+            this.dayCalories = new double[days];
+            this.dayProtein = new double[days];
+            this.dayFats = new double[days];
+            this.dayCarbs = new double[days];
+            this.dayPresent = new boolean[days];
+        }
+
+        void add(long userId, int epochDay, long foodId, double weight) {
+            userIds[count] = userId;
+            epochDays[count] = epochDay;
+            foodIds[count] = foodId;
+            weights[count] = weight;
+            if (++count == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (count == 0) {
+                return;
+            }
+            unknownFoodRows += foodNutrientIndex.gather(foodIds, count, calories, protein, fats, carbs);
+
+            // КБЖУ порций: поэлементно, тот же порядок операций, что и в NutritionTotals.ofPortion
+            for (int i = 0; i < count; i++) {
+                double weight = weights[i];
+                calories[i] = calories[i] * weight / 100.0;
+                protein[i] = protein[i] * weight / 100.0;
+                fats[i] = fats[i] * weight / 100.0;
+                carbs[i] = carbs[i] * weight / 100.0;
+            }
+
+            total[0] += sum(calories, count);
+            total[1] += sum(protein, count);
+            total[2] += sum(fats, count);
+            total[3] += sum(carbs, count);
+
+            for (int i = 0; i < count; i++) {
+                int day = (int) (epochDays[i] - firstDay);
+                dayCalories[day] += calories[i];
+                dayProtein[day] += protein[i];
+                dayFats[day] += fats[i];
+                dayCarbs[day] += carbs[i];
+                dayPresent[day] = true;
+
+                int slot = users.slotFor(userIds[i]);
+                users.calories[slot] += calories[i];
+                users.protein[slot] += protein[i];
+                users.fats[slot] += fats[i];
+                users.carbs[slot] += carbs[i];
+            }
+            rows += count;
+            count = 0;
+        }
+
+        NutritionTotals total() {
+            return new NutritionTotals(total[0], total[1], total[2], total[3]);
+        }
+
+        List<PeriodNutritionDto> dayTotals() {
+            List<PeriodNutritionDto> result = new ArrayList<>();
+            for (int day = 0; day < dayPresent.length; day++) {
+                if (dayPresent[day]) {
+                    LocalDate date = LocalDate.ofEpochDay(firstDay + day);
+                    result.add(new PeriodNutritionDto(date, date,
+                            new NutritionTotals(dayCalories[day], dayProtein[day], dayFats[day], dayCarbs[day])));
+                }
+            }
+            return result;
+        }
+
+        List<UserNutritionTotalsDto> userTotals() {
+            List<UserNutritionTotalsDto> result = new ArrayList<>(users.size);
+            for (int slot = 0; slot < users.ids.length; slot++) {
+                if (users.ids[slot] != UserTotals.NO_ID) {
+                    result.add(new UserNutritionTotalsDto(users.ids[slot], new NutritionTotals(
+                            users.calories[slot], users.protein[slot], users.fats[slot], users.carbs[slot])));
+                }
+            }
+            result.sort((a, b) -> Long.compare(a.getUserId(), b.getUserId()));
+            return result;
+        }
+    }
+
+    /**
+     * Сумма первых {@code count} элементов в четыре независимых аккумулятора: сложения
+     * не ждут друг друга, и цикл не упирается в задержку одной цепочки.
+     */
+    static double sum(double[] values, int count) {
+        double s0 = 0.0;
+        double s1 = 0.0;
+        double s2 = 0.0;
+        double s3 = 0.0;
+        int i = 0;
+        for (; i + 3 < count; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < count; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Суммы по пользователям: открытая адресация по id пользователя, заполнение не больше половины.
+     */
+    private static final class UserTotals {
+        static final long NO_ID = 0L;
+
+        long[] ids = new long[1024];
+        double[] calories = new double[1024];
+        double[] protein = new double[1024];
+        double[] fats = new double[1024];
+        double[] carbs = new double[1024];
+        int size;
+
+        int slotFor(long userId) {
+            int mask = ids.length - 1;
+            int slot = slotOf(userId, mask);
+            while (ids[slot] != userId) {
+                if (ids[slot] == NO_ID) {
+                    if (size * 2 >= ids.length) {
+                        grow();
+                        return slotFor(userId);
+                    }
+                    ids[slot] = userId;
+                    size++;
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldIds = ids;
+            double[] oldCalories = calories;
+            double[] oldProtein = protein;
+            double[] oldFats = fats;
+            double[] oldCarbs = carbs;
+            int capacity = oldIds.length * 2;
+            ids = new long[capacity];
+            calories = new double[capacity];
+            protein = new double[capacity];
+            fats = new double[capacity];
+            carbs = new double[capacity];
+            size = 0;
+            for (int old = 0; old < oldIds.length; old++) {
+                if (oldIds[old] != NO_ID) {
+                    int slot = slotFor(oldIds[old]);
+                    calories[slot] = oldCalories[old];
+                    protein[slot] = oldProtein[old];
+                    fats[slot] = oldFats[old];
+                    carbs[slot] = oldCarbs[old];
+                }
+            }
+        }
+
+        private static int slotOf(long id, int mask) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package splitmindq.caloriecounter.service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
+import splitmindq.caloriecounter.dao.IntakePurgeChunkView;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
+import splitmindq.caloriecounter.dao.UserRepository;
+import splitmindq.caloriecounter.dto.UserPurgeTaskDto;
+import splitmindq.caloriecounter.excpetions.NotFoundException;
+import splitmindq.caloriecounter.model.User;
+
+/**
+ * Фоновое удаление данных пользователей, помеченных как удаленные. Рационы удаляются порциями
+ * по возрастанию id, каждая порция — в своей короткой транзакции с паузой между порциями,
+ * поэтому удаление не держит блокировки и не нагружает базу одним большим DELETE.
+ * Итоги, сводки и сама запись пользователя удаляются последней транзакцией, если к ней
+ * не осталось рационов; иначе рационы проходятся заново.
+ */
+@Slf4j
+@Service
+public class UserPurgeService {
+    static final int INTAKES_PER_CHUNK = 500;
+    static final long PAUSE_MILLIS = 50;
+
+    private final UserRepository userRepository;
+    private final DailyIntakeRepository dailyIntakeRepository;
+    private final DailyNutritionTotalsRepository totalsRepository;
+    private final NutritionRollupRepository rollupRepository;
+    private final DailyIntakeCache dailyIntakeCache;
+    private final TransactionTemplate transactionTemplate;
+    // Один поток: удаления идут друг за другом и не конкурируют с запросами пользователей
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Map<String, PurgeTask> tasks = new ConcurrentHashMap<>();
+    private final Map<Long, PurgeTask> activeTasksByUser = new ConcurrentHashMap<>();
+
+    public UserPurgeService(UserRepository userRepository,
+                            DailyIntakeRepository dailyIntakeRepository,
+                            DailyNutritionTotalsRepository totalsRepository,
+                            NutritionRollupRepository rollupRepository,
+                            DailyIntakeCache dailyIntakeCache,
+                            PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.dailyIntakeRepository = dailyIntakeRepository;
+        this.totalsRepository = totalsRepository;
+        this.rollupRepository = rollupRepository;
+        this.dailyIntakeCache = dailyIntakeCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Продолжает удаление пользователей, помеченных до перезапуска приложения.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePendingPurges() {
+        for (User user : userRepository.findAllByDeletedAtIsNotNull()) {
+            log.info("Resuming purge of user id={} as task {}", user.getId(),
+                    schedulePurge(user.getId(), user.getEmail()));
+        }
+    }
+
+    /**
+     * Ставит удаление данных пользователя в очередь. Внутри транзакции задача запускается после
+     * ее фиксации, при откате — отменяется. Для пользователя, который уже удаляется,
+     * возвращается id текущей задачи.
+     *
+     * @return id задачи для {@link #getTaskStatus(String)}
+     */
+    public String schedulePurge(Long userId, String email) {
+        PurgeTask task = new PurgeTask(UUID.randomUUID().toString(), userId, email);
+        PurgeTask active = activeTasksByUser.putIfAbsent(userId, task);
+        if (active != null) {
+            return active.taskId;
+        }
+        tasks.put(task.taskId, task);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        executor.submit(task);
+                    } else {
+                        tasks.remove(task.taskId);
+                        activeTasksByUser.remove(userId, task);
+                    }
+                }
+            });
+        } else {
+            executor.submit(task);
+        }
+        return task.taskId;
+    }
+
+    public UserPurgeTaskDto getTaskStatus(String taskId) {
+        PurgeTask task = tasks.get(taskId);
+        if (task == null) {
+            throw new NotFoundException("Task not found: " + taskId);
+        }
+        return task.toDto();
+    }
+
+    private class PurgeTask implements Runnable {
+        private final String taskId;
+        private final Long userId;
+        private final String email;
+        private volatile String status = "PENDING";
+        private final AtomicInteger chunksDone = new AtomicInteger();
+        private final AtomicLong intakesDeleted = new AtomicLong();
+        private final AtomicLong foodsDeleted = new AtomicLong();
+
+        PurgeTask(String taskId, Long userId, String email) {
+            this.taskId = taskId;
+            this.userId = userId;
+            this.email = email;
+        }
+
+        @Override
+        public void run() {
+            status = "RUNNING";
+            long start = System.nanoTime();
+            String outcome = "FAILED";
+            try {
+                long afterIntakeId = 0;
+                while (true) {
+                    long lastIntakeId = afterIntakeId;
+                    IntakePurgeChunkView chunk = transactionTemplate.execute(transaction ->
+                            dailyIntakeRepository.purgeIntakeChunk(userId, lastIntakeId, INTAKES_PER_CHUNK));
+                    boolean lastChunk = chunk == null || chunk.getLastIntakeId() == null;
+                    if (!lastChunk) {
+                        afterIntakeId = chunk.getLastIntakeId();
+                        intakesDeleted.addAndGet(chunk.getIntakesDeleted());
+                        foodsDeleted.addAndGet(chunk.getFoodsDeleted());
+                        chunksDone.incrementAndGet();
+                        lastChunk = chunk.getIntakesDeleted() < INTAKES_PER_CHUNK;
+                    }
+                    if (lastChunk) {
+                        if (Boolean.TRUE.equals(transactionTemplate.execute(transaction -> deleteUserData()))) {
+                            break;
+                        }
+                        // pooled-lo выдает id блоками на узел: рацион, вставленный до пометки,
+                        // может получить id меньше пройденного — проходим рационы заново
+                        log.info("Purge {} of user id={} found intakes left behind, restarting the pass",
+                                taskId, userId);
+                        afterIntakeId = 0;
+                    }
+                    TimeUnit.MILLISECONDS.sleep(PAUSE_MILLIS);
+                }
+                outcome = "COMPLETED";
+                log.info("Purge {} of user id={} completed in {} ms: {} chunks, {} intakes, {} intake foods",
+                        taskId, userId, (System.nanoTime() - start) / 1_000_000, chunksDone.get(),
+                        intakesDeleted.get(), foodsDeleted.get());
+            } catch (InterruptedException e) {
+                // Восстанавливаем статус прерывания
+                Thread.currentThread().interrupt();
+                outcome = "INTERRUPTED";
+            } catch (RuntimeException e) {
+                // Пользователь остается помеченным, удаление продолжится после перезапуска
+                log.error("Purge {} of user id={} failed", taskId, userId, e);
+            } finally {
+                // Итоговый статус публикуется после снятия задачи: увидев его, можно сразу поставить новую
+                activeTasksByUser.remove(userId, this);
+                status = outcome;
+            }
+        }
+
+        /**
+         * Удаляет итоги, сводки и запись пользователя, если рационов не осталось.
+         *
+         * @return {@code false}, если остались рационы и их нужно удалить еще одним проходом
+         */
+        private boolean deleteUserData() {
+            if (dailyIntakeRepository.existsByUserId(userId)) {
+                return false;
+            }
+            totalsRepository.deleteAllByUserId(userId);
+            rollupRepository.deleteAllByUserId(userId);
+            userRepository.deleteById(userId);
+            dailyIntakeCache.evictAllUserData(email);
+            return true;
+        }
+
+        UserPurgeTaskDto toDto() {
+            return new UserPurgeTaskDto(taskId, userId, status, chunksDone.get(),
+                    intakesDeleted.get(), foodsDeleted.get());
+        }
+    }
+}
@@ -19,5 +19,8 @@ public interface UserService {
 
     void updateUser(Long id, User updatedUser);
 
-    boolean deleteUser(Long id);
+    /**
+     * @return id фоновой задачи удаления данных или {@code null}, если пользователь не найден
+     */
+    String deleteUser(Long id);
 }
@@ -1,13 +1,13 @@
 package splitmindq.caloriecounter.service;
 
 import jakarta.transaction.Transactional;
+import java.time.LocalDateTime;
 import java.util.List;
 import lombok.AllArgsConstructor;
 import org.springframework.context.annotation.Primary;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import splitmindq.caloriecounter.cache.DailyIntakeCache;
-import splitmindq.caloriecounter.dao.DailyIntakeRepository;
 import splitmindq.caloriecounter.dao.UserRepository;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
 import splitmindq.caloriecounter.model.User;
@@ -18,13 +18,13 @@ import splitmindq.caloriecounter.service.UserService;
 @Primary
 public class UserServiceImpl implements UserService {
     private final UserRepository userRepository;
-    private final DailyIntakeRepository dailyIntakeRepository;
+    private final UserPurgeService userPurgeService;
     private final DailyIntakeCache dailyIntakeCache;
 
     @Override
     @Transactional
     public List<User> findAllUsers() {
-        return userRepository.findAll();
+        return userRepository.findAllByDeletedAtIsNull();
     }
 
     @Override
@@ -34,29 +34,36 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public User findUserById(Long id) {
-        return userRepository.findById(id).orElse(null);
+        return userRepository.findById(id)
+                .filter(user -> user.getDeletedAt() == null)
+                .orElse(null);
     }
 
+    /**
+     * Помечает пользователя удаленным и ставит удаление его рационов в фоновую очередь:
+     * запрос не ждет удаления всех строк пользователя. Для уже помеченного пользователя
+     * возвращается текущая задача, а если ее нет (удаление упало), ставится новая.
+     */
     @Override
     @Transactional
-    public boolean deleteUser(Long id) {
+    public String deleteUser(Long id) {
         return userRepository.findById(id)
                 .map(user -> {
-                    dailyIntakeRepository.deleteAllDailyIntakeFoodByUserId(user.getId());
-
-                    dailyIntakeRepository.deleteAllByUserId(user.getId());
-
-                    dailyIntakeCache.evictAllUserData(user.getEmail());
+                    if (user.getDeletedAt() == null) {
+                        user.setDeletedAt(LocalDateTime.now());
+                        userRepository.save(user);
 
-                    userRepository.delete(user);
-                    return true;
+                        dailyIntakeCache.evictAllUserData(user.getEmail());
+                    }
+                    return userPurgeService.schedulePurge(user.getId(), user.getEmail());
                 })
-                .orElse(false);
+                .orElse(null);
     }
 
     @Override
     public void updateUser(Long id, User updatedUser) {
         User existingUser = userRepository.findById(id)
+                .filter(user -> user.getDeletedAt() == null)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + id));
 
         if (!existingUser.getEmail().equals(updatedUser.getEmail())) {
@@ -64,6 +71,8 @@ public class UserServiceImpl implements UserService {
             if (userRepository.existsByEmail(updatedUser.getEmail())) {
                 throw new DataIntegrityViolationException("Email is already in use.");
             }
+            // Сбрасываем отметки «рационов нет», закэшированные для нового email
+            dailyIntakeCache.evictAllUserData(updatedUser.getEmail());
         }
 
         existingUser.setFirstName(updatedUser.getFirstName());
@@ -0,0 +1,65 @@
+package splitmindq.caloriecounter.сonfig;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * JDBC-пакеты для вставок и обновлений Hibernate. Рационы и их строки получают id из
+ * последовательностей с оптимизатором pooled-lo: один {@code nextval} на 50 id, а вставки
+ * не ждут id от базы и группируются в пакеты.
+ */
+@Slf4j
+@Configuration
+public class HibernateBatchConfig {
+    static final int JDBC_BATCH_SIZE = 50;
+
+    /**
+     * Последовательность и таблица, id которой она выдает.
+     */
+    private static final Map<String, String> SEQUENCE_TABLES = Map.of(
+            "daily_intakes_seq", "daily_intakes",
+            "daily_intake_food_seq", "daily_intake_food");
+
+    private static final String ALIGN_SQL = """
+            SELECT setval(format('%%I.%%I', s.schemaname, s.sequencename), m.max_id + 1, false)
+            FROM pg_sequences s, (SELECT COALESCE(MAX(id), 0) AS max_id FROM %s) m
+            WHERE s.schemaname = current_schema() AND s.sequencename = ?
+              AND COALESCE(s.last_value + s.increment_by, s.start_value) <= m.max_id
+            """;
+
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        // putIfAbsent: явные spring.jpa.properties имеют приоритет
+        return properties -> {
+            properties.putIfAbsent(AvailableSettings.STATEMENT_BATCH_SIZE, JDBC_BATCH_SIZE);
+            properties.putIfAbsent(AvailableSettings.ORDER_INSERTS, true);
+            properties.putIfAbsent(AvailableSettings.ORDER_UPDATES, true);
+            properties.putIfAbsent(AvailableSettings.PREFERRED_POOLED_OPTIMIZER, "pooled-lo");
+        };
+    }
+
+    /**
+     * Сдвигает последовательности за максимальный id таблиц, заполненных еще через IDENTITY.
+     * Выполняется после создания схемы Hibernate и до первой вставки; последовательность, которая
+     * уже выдает id выше существующих, не трогается.
+     */
+    @Bean
+    public InitializingBean idSequenceAlignment(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        return () -> SEQUENCE_TABLES.forEach((sequence, table) -> {
+            List<Long> moved = jdbcTemplate.queryForList(ALIGN_SQL.formatted(table), Long.class, sequence);
+            if (!moved.isEmpty()) {
+                log.info("Moved sequence {} past existing ids of {} to {}", sequence, table, moved.get(0));
+            }
+        });
+    }
+}
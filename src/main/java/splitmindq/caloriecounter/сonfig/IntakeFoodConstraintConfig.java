@@ -0,0 +1,86 @@
+package splitmindq.caloriecounter.сonfig;
+
+import jakarta.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Уникальность (daily_intake_id, food_id) в {@code daily_intake_food}: на ней держатся
+ * добавления через {@code ON CONFLICT}. Hibernate не создает ограничение в таблице, где уже
+ * есть дубликаты, поэтому при старте они сливаются в одну строку с суммарным весом и
+ * ограничение добавляется явно. Итоги КБЖУ от слияния не меняются.
+ */
+@Slf4j
+@Configuration
+public class IntakeFoodConstraintConfig {
+    static final String CONSTRAINT_NAME = "uk_daily_intake_food_intake_food";
+
+    private static final String EXISTS_SQL = """
+            SELECT COUNT(*) FROM information_schema.table_constraints
+            WHERE constraint_schema = current_schema()
+              AND table_name = 'daily_intake_food'
+              AND constraint_name = ?
+              AND constraint_type = 'UNIQUE'
+            """;
+
+    // Параллельно стартующие узлы ждут друг друга, вставки на время слияния блокируются
+    private static final String LOCK_SQL = "LOCK TABLE daily_intake_food IN SHARE ROW EXCLUSIVE MODE";
+
+    private static final String MERGE_SQL = """
+            WITH ranked AS (
+                SELECT id,
+                       MIN(id) OVER (PARTITION BY daily_intake_id, food_id) AS keep_id,
+                       SUM(weight) OVER (PARTITION BY daily_intake_id, food_id) AS total_weight,
+                       COUNT(*) OVER (PARTITION BY daily_intake_id, food_id) AS copies
+                FROM daily_intake_food
+            ), kept AS (
+                UPDATE daily_intake_food dif
+                SET weight = r.total_weight
+                FROM ranked r
+                WHERE dif.id = r.id AND r.id = r.keep_id AND r.copies > 1
+                RETURNING dif.id
+            )
+            DELETE FROM daily_intake_food dif
+            USING ranked r
+            WHERE dif.id = r.id AND r.id <> r.keep_id
+            """;
+
+    private static final String ADD_SQL = """
+            ALTER TABLE daily_intake_food
+            ADD CONSTRAINT %s UNIQUE (daily_intake_id, food_id)
+            """.formatted(CONSTRAINT_NAME);
+
+    /**
+     * Выполняется после создания схемы Hibernate. Если ограничение уже есть, ничего не меняет.
+     */
+    @Bean
+    public InitializingBean intakeFoodUniqueConstraint(EntityManagerFactory entityManagerFactory,
+                                                       DataSource dataSource,
+                                                       PlatformTransactionManager transactionManager) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        return () -> transactionTemplate.executeWithoutResult(status -> {
+            if (constraintExists(jdbcTemplate)) {
+                return;
+            }
+            jdbcTemplate.execute(LOCK_SQL);
+            if (constraintExists(jdbcTemplate)) {
+                return;
+            }
+            int merged = jdbcTemplate.update(MERGE_SQL);
+            jdbcTemplate.execute(ADD_SQL);
+            log.info("Added constraint {} after merging {} duplicate daily_intake_food rows", CONSTRAINT_NAME, merged);
+        });
+    }
+
+    private static boolean constraintExists(JdbcTemplate jdbcTemplate) {
+        Integer count = jdbcTemplate.queryForObject(EXISTS_SQL, Integer.class, CONSTRAINT_NAME);
+        return count != null && count > 0;
+    }
+}
@@ -0,0 +1,93 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterTest {
+
+    @Test
+    void mightContain_ShouldReturnFalse_WhenFilterIsEmpty() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(1_000, 0.01);
+
+        // Act & Assert
+        assertFalse(filter.mightContain("user@example.com"));
+    }
+
+    @Test
+    void mightContain_ShouldReturnTrueForEveryInsertedValue_WhenFilterIsFilledToCapacity() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        // Act & Assert
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"), "user" + i);
+        }
+    }
+
+    @Test
+    void mightContain_ShouldStayNearConfiguredFalsePositiveRate_WhenFilterIsFilledToCapacity() {
+        // Arrange
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        // Act
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("absent" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+
+        // Assert
+        assertTrue(falsePositives < 3_000, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void put_ShouldNotLoseBits_WhenThreadsInsertConcurrently() throws InterruptedException {
+        // Arrange
+        // Маленький фильтр: потоки постоянно конкурируют за одни и те же слова
+        BloomFilter filter = new BloomFilter(64, 0.01);
+        int threads = 4;
+        int perThread = 2_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = offset; i < offset + perThread; i++) {
+                    filter.put("user" + i);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        // Act
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // Assert
+        for (int i = 0; i < threads * perThread; i++) {
+            assertTrue(filter.mightContain("user" + i), "user" + i);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheRegionTest {
+
+    private static DailyIntakeCacheProperties.Region settings(int maxEntries, EvictionPolicy policy) {
+        DailyIntakeCacheProperties.Region settings =
+                new DailyIntakeCacheProperties.Region(maxEntries, Duration.ofMinutes(10), 0.0);
+        settings.setPolicy(policy);
+        return settings;
+    }
+
+    private static CacheRegion<String, String> region(int maxEntries, EvictionPolicy policy) {
+        return new CacheRegion<>("test", settings(maxEntries, policy), (key, value) -> 1L);
+    }
+
+    @Test
+    void put_ShouldEvictLeastRecentlyUsedEntry_WhenRegionIsFull() {
+        // Arrange
+        CacheRegion<String, String> region = region(2, EvictionPolicy.LRU);
+        region.put("a", "A", region.generation("a"));
+        region.put("b", "B", region.generation("b"));
+        region.get("a");
+
+        // Act
+        boolean stored = region.put("c", "C", region.generation("c"));
+
+        // Assert
+        assertTrue(stored);
+        assertEquals(2, region.size());
+        assertEquals("A", region.peek("a"));
+        assertNull(region.peek("b"));
+        assertEquals("C", region.peek("c"));
+        assertEquals(1, region.stats().sizeEvictionCount());
+    }
+
+    @Test
+    void put_ShouldReplaceValueWithoutEviction_WhenKeyIsPresent() {
+        // Arrange
+        CacheRegion<String, String> region = region(2, EvictionPolicy.LRU);
+        region.put("a", "A", region.generation("a"));
+        region.put("b", "B", region.generation("b"));
+
+        // Act
+        region.put("a", "A2", region.generation("a"));
+
+        // Assert
+        assertEquals(2, region.size());
+        assertEquals("A2", region.peek("a"));
+        assertEquals("B", region.peek("b"));
+        assertEquals(0, region.stats().sizeEvictionCount());
+    }
+
+    @Test
+    void put_ShouldEvictUntilWeightFitsBudget() {
+        // Arrange
+        DailyIntakeCacheProperties.Region settings =
+                new DailyIntakeCacheProperties.Region(1_000, Duration.ofMinutes(10), 1.0);
+        long entryWeight = settings.maxWeightBytes() / 20;
+        CacheRegion<Integer, String> region = new CacheRegion<>("test", settings, (key, value) -> entryWeight);
+
+        // Act
+        for (int i = 0; i < 25; i++) {
+            region.put(i, "v" + i, region.generation(i));
+        }
+
+        // Assert
+        assertEquals(20, region.size());
+        assertEquals(20 * entryWeight, region.weightedSize());
+        assertEquals(5, region.stats().sizeEvictionCount());
+        assertNull(region.peek(0));
+        assertEquals("v24", region.peek(24));
+    }
+
+    @Test
+    void put_ShouldRejectEntryHeavierThanShareOfBudget() {
+        // Arrange
+        DailyIntakeCacheProperties.Region settings =
+                new DailyIntakeCacheProperties.Region(1_000, Duration.ofMinutes(10), 1.0);
+        long heavyWeight = settings.maxWeightBytes() / CacheRegion.MAX_ENTRY_BUDGET_DIVISOR + 1;
+        CacheRegion<String, String> region = new CacheRegion<>("test", settings, (key, value) -> heavyWeight);
+
+        // Act
+        boolean stored = region.put("a", "A", region.generation("a"));
+
+        // Assert
+        assertFalse(stored);
+        assertEquals(0, region.size());
+        assertEquals(0L, region.weightedSize());
+    }
+
+    @Test
+    void put_ShouldNotAdmitRarelyUsedCandidate_WhenTinyLfuRegionIsFull() {
+        // Arrange
+        CacheRegion<String, String> region = region(2, EvictionPolicy.TINY_LFU);
+        region.put("a", "A", region.generation("a"));
+        region.put("b", "B", region.generation("b"));
+        for (int i = 0; i < 3; i++) {
+            region.get("a");
+            region.get("b");
+        }
+
+        // Act
+        boolean stored = region.put("c", "C", region.generation("c"));
+
+        // Assert
+        assertFalse(stored);
+        assertEquals(2, region.size());
+        assertNull(region.peek("c"));
+        assertEquals("A", region.peek("a"));
+        assertEquals("B", region.peek("b"));
+    }
+
+    @Test
+    void put_ShouldAdmitFrequentlyRequestedCandidate_WhenTinyLfuRegionIsFull() {
+        // Arrange
+        CacheRegion<String, String> region = region(2, EvictionPolicy.TINY_LFU);
+        region.put("a", "A", region.generation("a"));
+        region.put("b", "B", region.generation("b"));
+        for (int i = 0; i < 5; i++) {
+            assertNull(region.get("c"));
+        }
+
+        // Act
+        boolean stored = region.put("c", "C", region.generation("c"));
+
+        // Assert
+        assertTrue(stored);
+        assertEquals(2, region.size());
+        assertNull(region.peek("a"));
+        assertEquals("C", region.peek("c"));
+    }
+
+    @Test
+    void get_ShouldRecordHitsAndMisses() {
+        // Arrange
+        CacheRegion<String, String> region = region(10, EvictionPolicy.LRU);
+        region.put("a", "A", region.generation("a"));
+
+        // Act
+        region.get("a");
+        region.get("missing");
+        region.peek("missing");
+
+        // Assert
+        assertEquals(1, region.stats().hitCount());
+        assertEquals(1, region.stats().missCount());
+    }
+
+    @Test
+    void expire_ShouldRemoveEntriesPastTtl() {
+        // Arrange
+        CacheRegion<String, String> region = new CacheRegion<>("test",
+                new DailyIntakeCacheProperties.Region(10, Duration.ofSeconds(1), 0.0), (key, value) -> 1L);
+        region.put("a", "A", region.generation("a"));
+
+        // Act
+        region.expire(System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+
+        // Assert
+        assertEquals(0, region.size());
+        assertEquals(0L, region.weightedSize());
+        assertEquals(1, region.stats().expiredEvictionCount());
+    }
+
+    @Test
+    void removeIf_ShouldRemoveOnlyMatchingEntries() {
+        // Arrange
+        CacheRegion<String, String> region = region(10, EvictionPolicy.LRU);
+        region.put("a1", "A", region.generation("a1"));
+        region.put("a2", "A", region.generation("a2"));
+        region.put("b1", "B", region.generation("b1"));
+
+        // Act
+        int removed = region.removeIf((key, value) -> value.equals("A"));
+
+        // Assert
+        assertEquals(2, removed);
+        assertEquals(1, region.size());
+        assertEquals("B", region.peek("b1"));
+    }
+}
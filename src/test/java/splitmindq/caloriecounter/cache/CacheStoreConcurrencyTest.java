@@ -0,0 +1,150 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Приращения через {@link CacheStore#stamp}/{@link CacheStore#update} вперемешку с загрузками
+ * и инвалидациями: после гонки в кэше либо нет значения, либо оно совпадает с «базой».
+ */
+class CacheStoreConcurrencyTest {
+
+    private static final Long KEY = 1L;
+    private static final int ITERATIONS = 2_000;
+
+    @TempDir
+    Path directory;
+
+    private static DailyIntakeCacheProperties.Region settings() {
+        return new DailyIntakeCacheProperties.Region(100, Duration.ofMinutes(10), 0.0);
+    }
+
+    @Test
+    void update_ShouldNeverLeaveStaleValue_WhenCacheRegionRacesWithLoadsAndRemovals() throws InterruptedException {
+        // Arrange
+        CacheRegion<Long, Long> store = new CacheRegion<>("test", settings(), (key, value) -> 1L);
+
+        // Act & Assert
+        assertConsistentAfterRace(store);
+    }
+
+    @Test
+    void update_ShouldNeverLeaveStaleValue_WhenHeapStoreRacesWithLoadsAndRemovals() throws InterruptedException {
+        // Arrange
+        HeapCacheStore<Long, Long> store = new HeapCacheStore<>("test", settings(), (key, value) -> 1L);
+
+        // Act & Assert
+        assertConsistentAfterRace(store);
+    }
+
+    @Test
+    void update_ShouldNeverLeaveStaleValue_WhenTieredStoreRacesWithLoadsAndRemovals() throws InterruptedException {
+        // Arrange
+        MappedSegmentStore<Long, Long> disk = new MappedSegmentStore<>(directory, 1 << 20, 4,
+                Duration.ofMinutes(10), Duration.ofMinutes(10), DiskCodec.LONG, DiskCodec.LONG);
+        TieredCacheStore<Long, Long> store = new TieredCacheStore<>(
+                new CacheRegion<>("test", settings(), (key, value) -> 1L), disk);
+
+        // Act & Assert
+        try {
+            assertConsistentAfterRace(store);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void update_ShouldRemoveEntry_WhenEntryWasReplacedAfterStamp() {
+        // Arrange
+        CacheRegion<Long, Long> store = new CacheRegion<>("test", settings(), (key, value) -> 1L);
+        store.put(KEY, 10L, store.generation(KEY));
+        Object stamp = store.stamp(KEY);
+        store.put(KEY, 20L, store.generation(KEY));
+
+        // Act
+        boolean updated = store.update(KEY, stamp, value -> value + 1);
+
+        // Assert
+        assertFalse(updated);
+        assertNull(store.peek(KEY));
+    }
+
+    @Test
+    void update_ShouldRejectLoadStartedBeforeUpdate_WhenLoadIsPutAfterwards() {
+        // Arrange
+        HeapCacheStore<Long, Long> store = new HeapCacheStore<>("test", settings(), (key, value) -> 1L);
+        store.put(KEY, 10L, store.generation(KEY));
+        long loadGeneration = store.generation(KEY);
+        Object stamp = store.stamp(KEY);
+
+        // Act
+        boolean updated = store.update(KEY, stamp, value -> value + 1);
+        boolean stalePut = store.put(KEY, 10L, loadGeneration);
+
+        // Assert
+        assertTrue(updated);
+        assertFalse(stalePut);
+        assertEquals(11L, store.peek(KEY));
+    }
+
+    /**
+     * Писатель повторяет путь applyNutritionDelta: метка до изменения «базы», приращение после.
+     * Загрузчик читает поколение до «базы», третий поток инвалидирует ключ первую половину гонки.
+     */
+    private static void assertConsistentAfterRace(CacheStore<Long, Long> store) throws InterruptedException {
+        AtomicLong database = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger progress = new AtomicInteger();
+        Runnable writer = () -> {
+            try {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Object stamp = store.stamp(KEY);
+                    // Расширяет окно, в которое загрузчик успевает положить свое значение
+                    Thread.yield();
+                    database.incrementAndGet();
+                    Thread.yield();
+                    store.update(KEY, stamp, value -> value + 1);
+                    progress.incrementAndGet();
+                }
+            } finally {
+                progress.set(ITERATIONS);
+            }
+        };
+        Runnable loader = () -> {
+            while (progress.get() < ITERATIONS) {
+                if (store.peek(KEY) == null) {
+                    long generation = store.generation(KEY);
+                    store.put(KEY, database.get(), generation);
+                }
+            }
+        };
+        Runnable invalidator = () -> {
+            // Вторая половина без инвалидаций: ошибочное значение не стерлось бы до проверки
+            while (progress.get() < ITERATIONS / 2) {
+                store.remove(KEY);
+                Thread.yield();
+            }
+        };
+        List<Thread> threads = List.of(new Thread(writer), new Thread(loader), new Thread(invalidator));
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        Long cached = store.peek(KEY);
+        assertTrue(cached == null || cached == database.get(), "cached " + cached + ", database " + database.get());
+    }
+}
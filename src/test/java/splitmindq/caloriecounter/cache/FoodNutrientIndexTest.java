@@ -0,0 +1,103 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidationBus;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidationProperties;
+import splitmindq.caloriecounter.cache.invalidation.LoopbackInvalidationTransport;
+import splitmindq.caloriecounter.dao.FoodRepository;
+import splitmindq.caloriecounter.model.Food;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FoodNutrientIndexTest {
+
+    @Mock
+    private FoodRepository foodRepository;
+
+    private CacheInvalidationBus invalidationBus;
+    private FoodNutrientIndex index;
+
+    @BeforeEach
+    void setUp() {
+        CacheInvalidationProperties properties = new CacheInvalidationProperties();
+        // Пакеты не отправляются без явного flush(): так теряется инвалидация с другого узла
+        properties.setFlushInterval(Duration.ofHours(1));
+        invalidationBus = new CacheInvalidationBus(new LoopbackInvalidationTransport(), properties);
+        index = new FoodNutrientIndex(foodRepository, invalidationBus, new DailyIntakeCacheProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+        invalidationBus.shutdown();
+    }
+
+    private static Food food(long id, double calories) {
+        Food food = new Food();
+        food.setId(id);
+        food.setCalories(calories);
+        food.setProtein(1.0);
+        food.setFats(2.0);
+        food.setCarbs(3.0);
+        return food;
+    }
+
+    private double caloriesOf(long foodId) {
+        double[] calories = new double[1];
+        index.gather(new long[]{foodId}, 1, calories, new double[1], new double[1], new double[1]);
+        return calories[0];
+    }
+
+    @Test
+    void reload_ShouldRefreshStaleFood_WhenRemoteInvalidationIsDropped() {
+        // Arrange
+        when(foodRepository.findAll()).thenReturn(List.of(food(1L, 100.0), food(2L, 50.0)));
+        index.reload();
+        // Другой узел изменил продукт 1 и удалил продукт 2, инвалидации FOOD сюда не дошли
+        when(foodRepository.findAll()).thenReturn(List.of(food(1L, 120.0)));
+
+        // Act
+        index.reload();
+
+        // Assert
+        assertEquals(120.0, caloriesOf(1L));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void reload_ShouldKeepChanges_WhenFoodsChangeDuringLoad() {
+        // Arrange
+        when(foodRepository.findAll()).thenReturn(List.of(food(1L, 100.0), food(2L, 50.0)));
+        index.reload();
+        when(foodRepository.findAll()).thenAnswer(invocation -> {
+            // Фиксации, случившиеся после того, как снимок прочитан
+            index.onFoodSaved(food(1L, 130.0));
+            index.onFoodDeleted(2L);
+            // Новых продуктов больше, чем вмещает таблица, рассчитанная на снимок
+            for (long foodId = 3L; foodId < 40L; foodId++) {
+                index.onFoodSaved(food(foodId, 70.0));
+            }
+            return List.of(food(1L, 100.0), food(2L, 50.0));
+        });
+
+        // Act
+        index.reload();
+
+        // Assert
+        assertEquals(130.0, caloriesOf(1L));
+        assertEquals(70.0, caloriesOf(3L));
+        assertEquals(70.0, caloriesOf(39L));
+        assertEquals(38, index.size());
+        assertEquals(0L, index.getMissCount());
+    }
+}
@@ -0,0 +1,55 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test
+    void frequency_ShouldCountIncrements() {
+        // Arrange
+        FrequencySketch sketch = new FrequencySketch(1_024);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("key");
+        }
+
+        // Assert
+        assertEquals(5, sketch.frequency("key"));
+        assertEquals(0, sketch.frequency("other"));
+    }
+
+    @Test
+    void frequency_ShouldSaturateAtFifteen() {
+        // Arrange
+        FrequencySketch sketch = new FrequencySketch(1_024);
+
+        // Act
+        for (int i = 0; i < 40; i++) {
+            sketch.increment("key");
+        }
+
+        // Assert
+        assertEquals(15, sketch.frequency("key"));
+    }
+
+    @Test
+    void increment_ShouldHalveCounters_WhenSampleIsFull() {
+        // Arrange
+        int maximumSize = 1_024;
+        FrequencySketch sketch = new FrequencySketch(maximumSize);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+
+        // Act: каждое обращение к новому ключу добавляется в выборку из 10 * maximumSize
+        for (int i = 0; i < 10 * maximumSize - 15; i++) {
+            sketch.increment(i);
+        }
+
+        // Assert
+        assertEquals(7, sketch.frequency("hot"));
+    }
+}
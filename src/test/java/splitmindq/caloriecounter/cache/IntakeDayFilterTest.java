@@ -0,0 +1,175 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntakeDayFilterTest {
+
+    private static final Duration NEGATIVE_TTL = Duration.ofSeconds(30);
+
+    private static DailyIntakeCacheProperties.DayFilter settings(boolean enabled) {
+        DailyIntakeCacheProperties.DayFilter settings = new DailyIntakeCacheProperties.DayFilter();
+        settings.setEnabled(enabled);
+        settings.setDays(7);
+        settings.setExpectedUsersPerDay(1_000);
+        settings.setFalsePositiveRate(0.001);
+        settings.setNegativeTtl(NEGATIVE_TTL);
+        return settings;
+    }
+
+    private static IntakeDayFilter filter(boolean enabled) {
+        return new IntakeDayFilter(settings(enabled));
+    }
+
+    @Test
+    void mightHaveIntakes_ShouldReturnTrue_WhenFilterIsNotRebuiltYet() {
+        // Arrange
+        IntakeDayFilter filter = filter(true);
+
+        // Act & Assert
+        assertTrue(filter.mightHaveIntakes("user@example.com", LocalDate.now()));
+        assertEquals(0L, filter.rejectionCount());
+    }
+
+    @Test
+    void mightHaveIntakes_ShouldRejectOnlyUnknownUsers_WhenFilterIsRebuilt() {
+        // Arrange
+        IntakeDayFilter filter = filter(true);
+        LocalDate today = LocalDate.now();
+        filter.rebuild(() -> Map.of(today, List.of("a@example.com", "b@example.com")));
+
+        // Act & Assert
+        assertTrue(filter.mightHaveIntakes("a@example.com", today));
+        assertTrue(filter.mightHaveIntakes("b@example.com", today));
+        assertFalse(filter.mightHaveIntakes("c@example.com", today));
+        assertFalse(filter.mightHaveIntakes("a@example.com", today.minusDays(1)));
+        assertEquals(2L, filter.rejectionCount());
+    }
+
+    @Test
+    void mightHaveIntakes_ShouldNeverReturnFalseNegative_WhenUsersAreAddedAfterRebuild() {
+        // Arrange
+        IntakeDayFilter filter = filter(true);
+        LocalDate today = LocalDate.now();
+        filter.rebuild(Map::of);
+
+        // Act
+        for (int day = 0; day < 7; day++) {
+            for (int i = 0; i < 1_000; i++) {
+                filter.add("user" + i + "@example.com", today.minusDays(day));
+            }
+        }
+
+        // Assert
+        for (int day = 0; day < 7; day++) {
+            for (int i = 0; i < 1_000; i++) {
+                assertTrue(filter.mightHaveIntakes("user" + i + "@example.com", today.minusDays(day)));
+            }
+        }
+        assertEquals(0L, filter.rejectionCount());
+    }
+
+    @Test
+    void addToAllDays_ShouldMarkUserForEveryDayInWindow_WhenDatesAreUnknown() {
+        // Arrange
+        IntakeDayFilter filter = filter(true);
+        LocalDate today = LocalDate.now();
+        filter.rebuild(Map::of);
+
+        // Act
+        filter.addToAllDays("user@example.com");
+
+        // Assert
+        for (LocalDate date = filter.windowStart(today); !date.isAfter(today); date = date.plusDays(1)) {
+            assertTrue(filter.mightHaveIntakes("user@example.com", date));
+        }
+    }
+
+    @Test
+    void mightHaveIntakes_ShouldReturnTrue_WhenDateIsOutsideWindow() {
+        // Arrange
+        IntakeDayFilter filter = filter(true);
+        LocalDate today = LocalDate.now();
+        filter.rebuild(Map::of);
+
+        // Act & Assert
+        assertTrue(filter.mightHaveIntakes("user@example.com", today.minusDays(7)));
+        assertTrue(filter.mightHaveIntakes("user@example.com", today.plusDays(1)));
+        assertTrue(filter.mightHaveIntakes("user@example.com", null));
+    }
+
+    @Test
+    void mightHaveIntakes_ShouldReturnTrue_WhenFilterIsDisabled() {
+        // Arrange
+        IntakeDayFilter filter = filter(false);
+        filter.rebuild(Map::of);
+
+        // Act & Assert
+        assertFalse(filter.isEnabled());
+        assertTrue(filter.mightHaveIntakes("user@example.com", LocalDate.now()));
+    }
+
+    @Test
+    void mightHaveIntakes_ShouldRecover_WhenRemoteInvalidationIsDropped() {
+        // Arrange
+        AtomicLong clock = new AtomicLong();
+        IntakeDayFilter filter = new IntakeDayFilter(settings(true), clock::get);
+        LocalDate today = LocalDate.now();
+        filter.rebuild(Map::of);
+        // Другой узел создал рацион, но его инвалидация INTAKES_WITH_DATE сюда не дошла
+        assertFalse(filter.mightHaveIntakes("user@example.com", today));
+
+        // Act & Assert: без перестроек отрицательный ответ живет не дольше срока доверия
+        clock.addAndGet(NEGATIVE_TTL.toNanos());
+        assertTrue(filter.mightHaveIntakes("user@example.com", today));
+
+        // Act & Assert: следующая перестройка берет пользователя из базы и снова включает отказы
+        filter.rebuild(() -> Map.of(today, List.of("user@example.com")));
+        assertTrue(filter.mightHaveIntakes("user@example.com", today));
+        assertFalse(filter.mightHaveIntakes("other@example.com", today));
+    }
+
+    @Test
+    void rebuild_ShouldNotExtendTrust_WhenLoadFails() {
+        // Arrange
+        AtomicLong clock = new AtomicLong();
+        IntakeDayFilter filter = new IntakeDayFilter(settings(true), clock::get);
+        LocalDate today = LocalDate.now();
+        filter.rebuild(Map::of);
+        clock.addAndGet(NEGATIVE_TTL.toNanos() - 1);
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> filter.rebuild(() -> {
+            throw new IllegalStateException("db is down");
+        }));
+        clock.incrementAndGet();
+
+        // Assert
+        assertTrue(filter.mightHaveIntakes("user@example.com", today));
+        assertEquals(0L, filter.rejectionCount());
+    }
+
+    @Test
+    void rebuild_ShouldCountTrustFromLoadStart_WhenLoadIsSlow() {
+        // Arrange
+        AtomicLong clock = new AtomicLong();
+        IntakeDayFilter filter = new IntakeDayFilter(settings(true), clock::get);
+        LocalDate today = LocalDate.now();
+
+        // Act: инвалидации, потерянные во время долгой загрузки, не продлевают себе срок
+        filter.rebuild(() -> {
+            clock.addAndGet(NEGATIVE_TTL.toNanos());
+            return Map.of();
+        });
+
+        // Assert
+        assertTrue(filter.mightHaveIntakes("user@example.com", today));
+    }
+}
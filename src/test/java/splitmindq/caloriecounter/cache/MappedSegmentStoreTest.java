@@ -0,0 +1,208 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedSegmentStoreTest {
+
+    // Заголовок 17 байт + ключ 8 + значение 8
+    private static final int RECORD_BYTES = 33;
+    // Семь записей и признак конца сегмента
+    private static final int SEGMENT_BYTES = 7 * RECORD_BYTES + Integer.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private MappedSegmentStore<Long, Long> open(int maxSegments, Duration recoveredTtl) {
+        return new MappedSegmentStore<>(directory, SEGMENT_BYTES, maxSegments, Duration.ofMinutes(10),
+                recoveredTtl, DiskCodec.LONG, DiskCodec.LONG);
+    }
+
+    private MappedSegmentStore<Long, Long> open() {
+        return open(4, Duration.ofMinutes(10));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @Test
+    void recover_ShouldRestoreWrittenEntriesAndTombstones_WhenStoreIsReopened() {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        store.write(1L, 10L);
+        store.write(2L, 20L);
+        store.write(1L, 11L);
+        store.remove(2L);
+        store.close();
+
+        // Act
+        MappedSegmentStore<Long, Long> reopened = open();
+
+        // Assert
+        assertEquals(1, reopened.size());
+        assertEquals(11L, reopened.read(1L).value());
+        assertNull(reopened.read(2L));
+        reopened.close();
+    }
+
+    @Test
+    void recover_ShouldCapExpiryByRecoveredTtl_WhenStoreIsReopened() {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        store.write(1L, 10L);
+        store.close();
+        long before = System.currentTimeMillis();
+
+        // Act
+        MappedSegmentStore<Long, Long> reopened = open(4, Duration.ofSeconds(1));
+
+        // Assert
+        MappedSegmentStore.Stored<Long> stored = reopened.read(1L);
+        assertNotNull(stored);
+        assertTrue(stored.expiresAtMillis() <= System.currentTimeMillis() + 1_000L);
+        assertTrue(stored.expiresAtMillis() >= before);
+        reopened.close();
+    }
+
+    @Test
+    void recover_ShouldStopAtRecordWithBadChecksum_WhenSegmentIsCorrupted() throws IOException {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        store.write(1L, 10L);
+        store.write(2L, 20L);
+        store.write(3L, 30L);
+        store.close();
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            // Последний байт значения второй записи
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0x7F}), 2L * RECORD_BYTES - 1);
+        }
+
+        // Act
+        MappedSegmentStore<Long, Long> reopened = open();
+
+        // Assert
+        assertEquals(10L, reopened.read(1L).value());
+        assertNull(reopened.read(2L));
+        assertNull(reopened.read(3L));
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void write_ShouldOverwriteCorruptedTail_WhenStoreIsReopenedAfterCorruption() throws IOException {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        store.write(1L, 10L);
+        store.write(2L, 20L);
+        store.write(3L, 30L);
+        store.close();
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0x7F}), 2L * RECORD_BYTES - 1);
+        }
+        MappedSegmentStore<Long, Long> recovered = open();
+
+        // Act
+        recovered.write(4L, 40L);
+        recovered.close();
+        MappedSegmentStore<Long, Long> reopened = open();
+
+        // Assert
+        assertEquals(10L, reopened.read(1L).value());
+        assertEquals(40L, reopened.read(4L).value());
+        assertNull(reopened.read(3L));
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    void write_ShouldDropOldestSegmentWithItsEntries_WhenSegmentLimitIsExceeded() throws IOException {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open(2, Duration.ofMinutes(10));
+
+        // Act
+        for (long key = 0; key < 15; key++) {
+            store.write(key, key * 10);
+        }
+
+        // Assert
+        for (long key = 0; key < 7; key++) {
+            assertNull(store.read(key), "key " + key);
+        }
+        for (long key = 7; key < 15; key++) {
+            assertEquals(key * 10, store.read(key).value(), "key " + key);
+        }
+        assertEquals(8, store.size());
+        assertEquals(2, segmentFiles().size());
+        store.close();
+    }
+
+    @Test
+    void recover_ShouldReplaySegmentsInOrder_WhenEntriesSpanSeveralSegments() {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        for (long key = 0; key < 10; key++) {
+            store.write(key, key);
+        }
+        store.write(3L, 300L);
+        store.close();
+
+        // Act
+        MappedSegmentStore<Long, Long> reopened = open();
+
+        // Assert
+        assertEquals(10, reopened.size());
+        assertEquals(300L, reopened.read(3L).value());
+        assertEquals(9L, reopened.read(9L).value());
+        reopened.close();
+    }
+
+    @Test
+    void clear_ShouldDeleteAllSegments_WhenStoreHasEntries() throws IOException {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        for (long key = 0; key < 10; key++) {
+            store.write(key, key);
+        }
+
+        // Act
+        int removed = store.clear();
+
+        // Assert
+        assertEquals(10, removed);
+        assertNull(store.read(1L));
+        assertEquals(1, segmentFiles().size());
+        store.close();
+        assertEquals(0, open().size());
+    }
+
+    @Test
+    void close_ShouldIgnoreWritesAndMissReads_WhenStoreIsClosed() {
+        // Arrange
+        MappedSegmentStore<Long, Long> store = open();
+        store.write(1L, 10L);
+
+        // Act
+        store.close();
+        store.write(2L, 20L);
+
+        // Assert
+        assertNull(store.read(1L));
+        assertNull(store.read(2L));
+        assertEquals(1, open().size());
+    }
+}
@@ -0,0 +1,135 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void load_ShouldRunLoaderOnce_ForConcurrentCallers() throws Exception {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> singleFlight.load("key", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                awaitQuietly(release);
+                return "value";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> singleFlight.load("key", () -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            awaitCoalesced(singleFlight, 1);
+
+            // Act
+            release.countDown();
+
+            // Assert
+            assertEquals("value", first.get(5, TimeUnit.SECONDS));
+            assertEquals("value", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+            assertEquals(1, singleFlight.coalescedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void load_ShouldPropagateLoaderException_ToWaitingCallers() throws Exception {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        IllegalStateException failure = new IllegalStateException("database is down");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Throwable> first = executor.submit(() -> catchFailure(singleFlight, () -> {
+                started.countDown();
+                awaitQuietly(release);
+                throw failure;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<Throwable> second = executor.submit(() -> catchFailure(singleFlight, () -> "other"));
+            awaitCoalesced(singleFlight, 1);
+
+            // Act
+            release.countDown();
+
+            // Assert
+            assertSame(failure, first.get(5, TimeUnit.SECONDS));
+            assertSame(failure, second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void load_ShouldRunLoaderAgain_AfterPreviousLoadFailed() {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        assertThrows(IllegalStateException.class, () -> singleFlight.load("key", () -> {
+            throw new IllegalStateException("failed");
+        }));
+
+        // Act
+        String value = singleFlight.load("key", () -> "value");
+
+        // Assert
+        assertEquals("value", value);
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+    @Test
+    void load_ShouldNotCoalesceDifferentKeys() {
+        // Arrange
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        // Act
+        String first = singleFlight.load("a", () -> singleFlight.load("b", () -> "B") + "A");
+
+        // Assert
+        assertEquals("BA", first);
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+    private static Throwable catchFailure(SingleFlight<String, String> singleFlight,
+                                          Supplier<String> loader) {
+        try {
+            singleFlight.load("key", loader);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static void awaitCoalesced(SingleFlight<?, ?> singleFlight, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.coalescedCount() < expected) {
+            assertTrue(System.nanoTime() < deadline, "second caller did not join the load");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredCacheStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private MappedSegmentStore<Long, Long> disk;
+
+    // Вес записи равен значению: так легко получить запись, которую куча не примет
+    private TieredCacheStore<Long, Long> store(int maxEntries) {
+        DailyIntakeCacheProperties.Region settings =
+                new DailyIntakeCacheProperties.Region(maxEntries, Duration.ofMinutes(10), 1.0);
+        settings.setPolicy(EvictionPolicy.LRU);
+        disk = new MappedSegmentStore<>(directory, 4096, 4, Duration.ofMinutes(10), Duration.ofMinutes(10),
+                DiskCodec.LONG, DiskCodec.LONG);
+        return new TieredCacheStore<>(new CacheRegion<>("test", settings, (key, value) -> value), disk);
+    }
+
+    private static long heavyValue() {
+        DailyIntakeCacheProperties.Region settings =
+                new DailyIntakeCacheProperties.Region(1, Duration.ofMinutes(10), 1.0);
+        return settings.maxWeightBytes() / CacheRegion.MAX_ENTRY_BUDGET_DIVISOR + 1;
+    }
+
+    @AfterEach
+    void closeDisk() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    @Test
+    void get_ShouldPromoteValueFromDisk_WhenHeapEvictedIt() {
+        // Arrange
+        TieredCacheStore<Long, Long> store = store(1);
+        store.put(1L, 10L, store.generation(1L));
+        store.put(2L, 20L, store.generation(2L));
+
+        // Act
+        Long value = store.get(1L);
+
+        // Assert
+        assertEquals(10L, value);
+        assertEquals(1, store.size());
+        assertEquals(2, disk.size());
+    }
+
+    @Test
+    void put_ShouldDropDiskValue_WhenHeapRejectsNewValue() {
+        // Arrange
+        TieredCacheStore<Long, Long> store = store(10);
+        store.put(1L, 10L, store.generation(1L));
+
+        // Act
+        boolean stored = store.put(1L, heavyValue(), store.generation(1L));
+
+        // Assert
+        assertFalse(stored);
+        assertFalse(disk.contains(1L));
+        assertNull(store.get(1L));
+    }
+
+    @Test
+    void put_ShouldNotWriteToDisk_WhenGenerationIsStale() {
+        // Arrange
+        TieredCacheStore<Long, Long> store = store(10);
+        long generation = store.generation(1L);
+        store.remove(1L);
+
+        // Act
+        boolean stored = store.put(1L, 10L, generation);
+
+        // Assert
+        assertFalse(stored);
+        assertFalse(disk.contains(1L));
+        assertNull(store.get(1L));
+    }
+
+    @Test
+    void remove_ShouldDropValueFromBothLevels_WhenValueIsOnlyOnDisk() {
+        // Arrange
+        TieredCacheStore<Long, Long> store = store(1);
+        store.put(1L, 10L, store.generation(1L));
+        store.put(2L, 20L, store.generation(2L));
+
+        // Act
+        store.remove(1L);
+
+        // Assert
+        assertNull(store.get(1L));
+        assertFalse(disk.contains(1L));
+    }
+
+    @Test
+    void update_ShouldRewriteDiskValue_WhenHeapEntryIsUpdated() {
+        // Arrange
+        TieredCacheStore<Long, Long> store = store(1);
+        store.put(1L, 10L, store.generation(1L));
+        Object stamp = store.stamp(1L);
+
+        // Act
+        boolean updated = store.update(1L, stamp, value -> value + 5);
+        store.put(2L, 20L, store.generation(2L));
+
+        // Assert
+        assertTrue(updated);
+        assertEquals(15L, store.get(1L));
+    }
+}
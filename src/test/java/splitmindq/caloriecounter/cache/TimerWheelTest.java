@@ -0,0 +1,127 @@
+package splitmindq.caloriecounter.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimerWheelTest {
+    private static final long START = 0L;
+
+    private static final class Timer extends TimerWheel.Node {
+        private final int id;
+
+        Timer(int id, long deadlineNanos) {
+            this.id = id;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    @Test
+    void advance_ShouldExpireNode_OnlyAfterItsDeadline() {
+        // Arrange
+        TimerWheel<Timer> wheel = new TimerWheel<>(START);
+        Timer timer = new Timer(1, START + TimeUnit.MILLISECONDS.toNanos(500));
+        wheel.schedule(timer);
+        List<Timer> expired = new ArrayList<>();
+
+        // Act
+        wheel.advance(START + TimeUnit.MILLISECONDS.toNanos(400), expired::add);
+        List<Timer> beforeDeadline = List.copyOf(expired);
+        wheel.advance(START + TimeUnit.SECONDS.toNanos(2), expired::add);
+
+        // Assert
+        assertTrue(beforeDeadline.isEmpty());
+        assertEquals(List.of(timer), expired);
+    }
+
+    @Test
+    void advance_ShouldCascadeNodeToFinerLevel_WhenCoarseBucketPassesBeforeDeadline() {
+        // Arrange: через 5 минут — ячейка второго уровня (~1 мин)
+        TimerWheel<Timer> wheel = new TimerWheel<>(START);
+        long deadline = START + TimeUnit.MINUTES.toNanos(5);
+        Timer timer = new Timer(1, deadline);
+        wheel.schedule(timer);
+        List<Timer> expired = new ArrayList<>();
+        long coarseBucketStart = (deadline >>> 36) << 36;
+
+        // Act
+        wheel.advance(coarseBucketStart + 1, expired::add);
+        List<Timer> afterCascade = List.copyOf(expired);
+        wheel.advance(deadline - 1, expired::add);
+        List<Timer> justBeforeDeadline = List.copyOf(expired);
+        // Ячейки первого уровня обходятся по границам тиков (~1 с)
+        wheel.advance(deadline + TimeUnit.SECONDS.toNanos(2), expired::add);
+
+        // Assert
+        assertTrue(coarseBucketStart + 1 < deadline);
+        assertTrue(afterCascade.isEmpty());
+        assertTrue(justBeforeDeadline.isEmpty());
+        assertEquals(List.of(timer), expired);
+    }
+
+    @Test
+    void advance_ShouldExpireNodeFromOverflowBucket() {
+        // Arrange
+        TimerWheel<Timer> wheel = new TimerWheel<>(START);
+        Timer timer = new Timer(1, START + TimeUnit.HOURS.toNanos(100));
+        wheel.schedule(timer);
+        List<Timer> expired = new ArrayList<>();
+
+        // Act
+        wheel.advance(START + TimeUnit.HOURS.toNanos(50), expired::add);
+        List<Timer> halfway = List.copyOf(expired);
+        wheel.advance(START + TimeUnit.HOURS.toNanos(101), expired::add);
+
+        // Assert
+        assertTrue(halfway.isEmpty());
+        assertEquals(List.of(timer), expired);
+    }
+
+    @Test
+    void deschedule_ShouldPreventExpiry() {
+        // Arrange
+        TimerWheel<Timer> wheel = new TimerWheel<>(START);
+        Timer timer = new Timer(1, START + TimeUnit.SECONDS.toNanos(1));
+        wheel.schedule(timer);
+        wheel.deschedule(timer);
+        List<Timer> expired = new ArrayList<>();
+
+        // Act
+        wheel.advance(START + TimeUnit.MINUTES.toNanos(1), expired::add);
+
+        // Assert
+        assertTrue(expired.isEmpty());
+    }
+
+    @Test
+    void advance_ShouldExpireEveryNodeOnce_AtFirstAdvancePastItsDeadline() {
+        // Arrange
+        TimerWheel<Timer> wheel = new TimerWheel<>(START);
+        Random random = new Random(42);
+        Map<Integer, Timer> pending = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            Timer timer = new Timer(i, START + (long) (random.nextDouble() * TimeUnit.HOURS.toNanos(3)));
+            pending.put(i, timer);
+            wheel.schedule(timer);
+        }
+        long step = TimeUnit.SECONDS.toNanos(7);
+
+        // Act & Assert
+        for (long now = START + step; !pending.isEmpty(); now += step) {
+            long current = now;
+            wheel.advance(current, timer -> {
+                assertTrue(timer.getDeadlineNanos() <= current, "expired before its deadline");
+                assertTrue(current - timer.getDeadlineNanos() < step, "expired too late");
+                assertSame(timer, pending.remove(timer.id), "expired twice");
+            });
+            pending.values().forEach(timer -> assertTrue(timer.getDeadlineNanos() > current, "missed deadline"));
+        }
+    }
+}
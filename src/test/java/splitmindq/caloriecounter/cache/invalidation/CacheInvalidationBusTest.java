@@ -0,0 +1,97 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheInvalidationBusTest {
+    private LoopbackInvalidationTransport transport;
+    private CacheInvalidationBus sender;
+    private CacheInvalidationBus receiver;
+    private final List<CacheInvalidation> appliedBySender = new CopyOnWriteArrayList<>();
+    private final List<CacheInvalidation> appliedByReceiver = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        CacheInvalidationProperties properties = new CacheInvalidationProperties();
+        // Пакеты отправляются явным flush(), а не фоновым потоком
+        properties.setFlushInterval(Duration.ofHours(1));
+        transport = new LoopbackInvalidationTransport();
+        sender = new CacheInvalidationBus(transport, properties);
+        receiver = new CacheInvalidationBus(transport, properties);
+        sender.subscribe(appliedBySender::add);
+        receiver.subscribe(appliedByReceiver::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.shutdown();
+        receiver.shutdown();
+    }
+
+    @Test
+    void publish_ShouldApplyInvalidationOnOtherNode_AfterFlush() {
+        // Arrange
+        CacheInvalidation nutrition = CacheInvalidation.nutrition("user@example.com", LocalDate.of(2024, 3, 15));
+        CacheInvalidation food = CacheInvalidation.food(7L);
+
+        // Act
+        sender.publish(nutrition);
+        sender.publishAll(List.of(food));
+        List<CacheInvalidation> beforeFlush = List.copyOf(appliedByReceiver);
+        sender.flush();
+
+        // Assert
+        assertTrue(beforeFlush.isEmpty());
+        assertEquals(List.of(nutrition, food), appliedByReceiver);
+        assertTrue(appliedBySender.isEmpty());
+    }
+
+    @Test
+    void shutdown_ShouldFlushPendingInvalidations() {
+        // Arrange
+        CacheInvalidation user = CacheInvalidation.user("user@example.com");
+        sender.publish(user);
+
+        // Act
+        sender.shutdown();
+
+        // Assert
+        assertEquals(List.of(user), appliedByReceiver);
+    }
+
+    @Test
+    void receive_ShouldDropMalformedPayload() {
+        // Act
+        transport.send("node-x\nZ\tbroken\n".getBytes(StandardCharsets.UTF_8));
+
+        // Assert
+        assertTrue(appliedByReceiver.isEmpty());
+        assertTrue(appliedBySender.isEmpty());
+    }
+
+    @Test
+    void receive_ShouldKeepApplying_WhenSubscriberFails() {
+        // Arrange
+        receiver.subscribe(invalidation -> {
+            throw new IllegalStateException("subscriber failed");
+        });
+        CacheInvalidation region = CacheInvalidation.region("nutrition");
+        sender.publish(region);
+        sender.publish(region);
+
+        // Act
+        sender.flush();
+
+        // Assert
+        assertEquals(List.of(region, region), appliedByReceiver);
+    }
+}
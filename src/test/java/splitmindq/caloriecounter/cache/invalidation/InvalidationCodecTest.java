@@ -0,0 +1,92 @@
+package splitmindq.caloriecounter.cache.invalidation;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidationCodecTest {
+    private static final String NODE_ID = "node-1";
+    private static final LocalDate DATE = LocalDate.of(2024, 3, 15);
+
+    @Test
+    void decode_ShouldRestoreEveryKindOfInvalidation() {
+        // Arrange
+        List<CacheInvalidation> invalidations = List.of(
+                CacheInvalidation.intakesWithDate("user@example.com", DATE),
+                CacheInvalidation.intakesWithoutDate("user@example.com"),
+                CacheInvalidation.nutrition("user@example.com", DATE),
+                CacheInvalidation.intakeNutrition(42L),
+                CacheInvalidation.user("user@example.com"),
+                CacheInvalidation.date(DATE),
+                CacheInvalidation.region("nutrition"),
+                CacheInvalidation.food(7L));
+
+        // Act
+        List<byte[]> payloads = InvalidationCodec.encode(NODE_ID, invalidations, 64 * 1024);
+        InvalidationCodec.Batch batch = InvalidationCodec.decode(payloads.get(0));
+
+        // Assert
+        assertEquals(1, payloads.size());
+        assertEquals(NODE_ID, batch.nodeId());
+        assertEquals(invalidations, batch.invalidations());
+    }
+
+    @Test
+    void decode_ShouldRestoreNonAsciiEmail() {
+        // Arrange
+        CacheInvalidation invalidation = CacheInvalidation.nutrition("пользователь@пример.рф", DATE);
+
+        // Act
+        List<byte[]> payloads = InvalidationCodec.encode(NODE_ID, List.of(invalidation), 64 * 1024);
+
+        // Assert
+        assertEquals(List.of(invalidation), InvalidationCodec.decode(payloads.get(0)).invalidations());
+    }
+
+    @Test
+    void encode_ShouldSplitBatchIntoPayloadsWithinLimit() {
+        // Arrange
+        int maxPayloadBytes = 200;
+        List<CacheInvalidation> invalidations = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            invalidations.add(CacheInvalidation.intakesWithDate("user" + i + "@example.com", DATE.plusDays(i)));
+        }
+
+        // Act
+        List<byte[]> payloads = InvalidationCodec.encode(NODE_ID, invalidations, maxPayloadBytes);
+
+        // Assert
+        assertTrue(payloads.size() > 1);
+        List<CacheInvalidation> decoded = new ArrayList<>();
+        for (byte[] payload : payloads) {
+            assertTrue(payload.length <= maxPayloadBytes, "payload of " + payload.length + " bytes");
+            InvalidationCodec.Batch batch = InvalidationCodec.decode(payload);
+            assertEquals(NODE_ID, batch.nodeId());
+            decoded.addAll(batch.invalidations());
+        }
+        assertEquals(invalidations, decoded);
+    }
+
+    @Test
+    void encode_ShouldReturnNoPayloads_ForEmptyBatch() {
+        // Act
+        List<byte[]> payloads = InvalidationCodec.encode(NODE_ID, List.of(), 64 * 1024);
+
+        // Assert
+        assertTrue(payloads.isEmpty());
+    }
+
+    @Test
+    void decode_ShouldReject_UnknownKind() {
+        // Arrange
+        byte[] payload = (NODE_ID + "\nZ\tvalue\n").getBytes(StandardCharsets.UTF_8);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> InvalidationCodec.decode(payload));
+    }
+}
@@ -0,0 +1,254 @@
+package splitmindq.caloriecounter.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import splitmindq.caloriecounter.cache.DailyIntakeCacheProperties;
+import splitmindq.caloriecounter.cache.FoodNutrientIndex;
+import splitmindq.caloriecounter.cache.invalidation.CacheInvalidationBus;
+import splitmindq.caloriecounter.dao.FoodRepository;
+import splitmindq.caloriecounter.dto.DailyNutritionDto;
+import splitmindq.caloriecounter.dto.NutritionReportDto;
+import splitmindq.caloriecounter.dto.PeriodNutritionDto;
+import splitmindq.caloriecounter.dto.UserNutritionTotalsDto;
+import splitmindq.caloriecounter.model.Food;
+import splitmindq.caloriecounter.model.NutritionTotals;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NutritionAggregationEngineTest {
+
+    private static final LocalDate FROM = LocalDate.of(2025, 4, 1);
+    private static final LocalDate TO = LocalDate.of(2025, 4, 30);
+
+    @Mock
+    private DataSource dataSource;
+    @Mock
+    private Connection connection;
+    @Mock
+    private PreparedStatement statement;
+    @Mock
+    private ResultSet resultSet;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private FoodRepository foodRepository;
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+
+    private FoodNutrientIndex foodNutrientIndex;
+    private NutritionAggregationEngine engine;
+
+    /**
+     * Строка курсора: пользователь, день от эпохи, продукт, вес.
+     */
+    private record Row(long userId, int epochDay, long foodId, double weight) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        foodNutrientIndex = new FoodNutrientIndex(foodRepository, invalidationBus, new DailyIntakeCacheProperties());
+        engine = new NutritionAggregationEngine(dataSource, transactionManager, foodNutrientIndex);
+    }
+
+    private static Food food(long id, double calories, double protein, double fats, double carbs) {
+        Food food = new Food();
+        food.setId(id);
+        food.setCalories(calories);
+        food.setProtein(protein);
+        food.setFats(fats);
+        food.setCarbs(carbs);
+        return food;
+    }
+
+    private void loadFoods(Food... foods) {
+        when(foodRepository.findAll()).thenReturn(List.of(foods));
+        foodNutrientIndex.reload();
+    }
+
+    private void stubRows(List<Row> rows) throws SQLException {
+        AtomicInteger cursor = new AtomicInteger(-1);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenAnswer(invocation -> cursor.incrementAndGet() < rows.size());
+        when(resultSet.getLong(1)).thenAnswer(invocation -> rows.get(cursor.get()).userId());
+        when(resultSet.getInt(2)).thenAnswer(invocation -> rows.get(cursor.get()).epochDay());
+        when(resultSet.getLong(3)).thenAnswer(invocation -> rows.get(cursor.get()).foodId());
+        when(resultSet.getDouble(4)).thenAnswer(invocation -> rows.get(cursor.get()).weight());
+    }
+
+    private static int day(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+
+    @Test
+    void sum_ShouldMatchSequentialSum_ForEveryTailLength() {
+        // Arrange
+        double[] values = new double[11];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+
+        for (int count = 0; count <= values.length; count++) {
+            // Act
+            double result = NutritionAggregationEngine.sum(values, count);
+
+            // Assert
+            assertEquals(count * (count + 1) / 2.0, result, "count " + count);
+        }
+    }
+
+    @Test
+    void aggregate_ShouldSplitTotalsByDayAndUser_WhenRowsSpanSeveralDays() throws SQLException {
+        // Arrange
+        loadFoods(food(1L, 100.0, 10.0, 5.0, 20.0), food(2L, 50.0, 1.0, 2.0, 3.0));
+        stubRows(List.of(
+                new Row(7L, day(FROM), 1L, 150.0),
+                new Row(7L, day(FROM), 2L, 100.0),
+                new Row(8L, day(FROM.plusDays(2)), 1L, 50.0)));
+
+        // Act
+        NutritionReportDto report = engine.aggregate(FROM, TO, true);
+
+        // Assert
+        assertEquals(3L, report.getRowsScanned());
+        assertEquals(0L, report.getUnknownFoodRows());
+        assertEquals(new DailyNutritionDto(250.0, 21.0, 11.5, 43.0), report.getTotal());
+        assertEquals(List.of(
+                new PeriodNutritionDto(FROM, FROM, new NutritionTotals(200.0, 16.0, 9.5, 33.0)),
+                new PeriodNutritionDto(FROM.plusDays(2), FROM.plusDays(2), new NutritionTotals(50.0, 5.0, 2.5, 10.0))),
+                report.getDays());
+        assertEquals(List.of(
+                new UserNutritionTotalsDto(7L, new NutritionTotals(200.0, 16.0, 9.5, 33.0)),
+                new UserNutritionTotalsDto(8L, new NutritionTotals(50.0, 5.0, 2.5, 10.0))),
+                report.getUsers());
+        verify(connection).prepareStatement(contains("u.deleted_at IS NULL"));
+    }
+
+    @Test
+    void aggregate_ShouldCountEveryRow_WhenRowsCrossBatchBoundary() throws SQLException {
+        // Arrange
+        loadFoods(food(1L, 1.0, 1.0, 1.0, 1.0));
+        int rowCount = 2 * NutritionAggregationEngine.BATCH_SIZE + 1;
+        List<Row> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(new Row(1L + i % 3, day(FROM) + i % 30, 1L, 100.0));
+        }
+        stubRows(rows);
+
+        // Act
+        NutritionReportDto report = engine.aggregate(FROM, TO, false);
+
+        // Assert
+        assertEquals(rowCount, report.getRowsScanned());
+        assertEquals(rowCount, report.getTotal().getCalories());
+        assertEquals(30, report.getDays().size());
+        assertEquals(rowCount, report.getDays().stream().mapToDouble(PeriodNutritionDto::getCalories).sum());
+        assertEquals(List.of(), report.getUsers());
+    }
+
+    @Test
+    void aggregate_ShouldKeepEveryUser_WhenUserTableGrowsAndProbes() throws SQLException {
+        // Arrange
+        loadFoods(food(1L, 100.0, 0.0, 0.0, 0.0));
+        int users = 3_000;
+        List<Row> rows = new ArrayList<>();
+        for (int user = 1; user <= users; user++) {
+            // Вес кодирует пользователя: сумма выдаст потерянную или перепутанную при росте запись
+            rows.add(new Row(user, day(FROM), 1L, user));
+            rows.add(new Row(user, day(FROM.plusDays(1)), 1L, user));
+        }
+        stubRows(rows);
+
+        // Act
+        NutritionReportDto report = engine.aggregate(FROM, TO, true);
+
+        // Assert
+        assertEquals(users, report.getUsers().size());
+        for (int i = 0; i < users; i++) {
+            UserNutritionTotalsDto user = report.getUsers().get(i);
+            assertEquals(i + 1L, user.getUserId());
+            assertEquals(2.0 * (i + 1), user.getCalories(), "user " + (i + 1));
+        }
+    }
+
+    @Test
+    void aggregate_ShouldLoadMissingFoodsWithOneQueryPerBatch_WhenIndexIsEmpty() throws SQLException {
+        // Arrange
+        loadFoods();
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            rows.add(new Row(1L, day(FROM), 1L + i % 3, 100.0));
+        }
+        rows.add(new Row(1L, day(FROM), 99L, 100.0));
+        stubRows(rows);
+        when(foodRepository.findAllById(Set.of(1L, 2L, 3L, 99L))).thenReturn(List.of(
+                food(1L, 1.0, 0.0, 0.0, 0.0), food(2L, 2.0, 0.0, 0.0, 0.0), food(3L, 3.0, 0.0, 0.0, 0.0)));
+
+        // Act
+        NutritionReportDto report = engine.aggregate(FROM, TO, false);
+
+        // Assert
+        assertEquals(60.0, report.getTotal().getCalories());
+        assertEquals(1L, report.getUnknownFoodRows());
+        assertEquals(3, foodNutrientIndex.size());
+        verify(foodRepository).findAllById(anyCollection());
+        verify(foodRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void aggregate_ShouldRoundLikeDailyTotalsAndSql_WhenPortionsHaveFractions() throws SQLException {
+        // Arrange
+        Random random = new Random(42);
+        Food[] foods = new Food[20];
+        for (int i = 0; i < foods.length; i++) {
+            foods[i] = food(i + 1L, random.nextDouble() * 600, random.nextDouble() * 40,
+                    random.nextDouble() * 60, random.nextDouble() * 90);
+        }
+        loadFoods(foods);
+        List<Row> rows = new ArrayList<>();
+        NutritionTotals portions = NutritionTotals.ZERO;
+        BigDecimal exactCalories = BigDecimal.ZERO;
+        for (int i = 0; i < 500; i++) {
+            Food food = foods[random.nextInt(foods.length)];
+            double weight = 1 + random.nextInt(400) + random.nextInt(10) / 10.0;
+            rows.add(new Row(1L, day(FROM), food.getId(), weight));
+            // Путь приращений daily_nutrition_totals, который читает calculateDailyNutrition
+            portions = portions.plus(NutritionTotals.ofPortion(food, weight));
+            // SQL: SUM(f.calories * dif.weight / 100.0), затем ROUND(CAST(... AS NUMERIC), 1)
+            exactCalories = exactCalories.add(BigDecimal.valueOf(food.getCalories())
+                    .multiply(BigDecimal.valueOf(weight))
+                    .divide(BigDecimal.valueOf(100)));
+        }
+        stubRows(rows);
+
+        // Act
+        NutritionReportDto report = engine.aggregate(FROM, TO, false);
+
+        // Assert
+        assertEquals(new DailyNutritionDto(portions), report.getTotal());
+        assertEquals(new PeriodNutritionDto(FROM, FROM, portions), report.getDays().get(0));
+        assertEquals(exactCalories.setScale(1, RoundingMode.HALF_UP).doubleValue(), report.getTotal().getCalories());
+    }
+}
@@ -0,0 +1,264 @@
+package splitmindq.caloriecounter.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
+import splitmindq.caloriecounter.dao.IntakePurgeChunkView;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
+import splitmindq.caloriecounter.dao.UserRepository;
+import splitmindq.caloriecounter.dto.UserPurgeTaskDto;
+import splitmindq.caloriecounter.excpetions.NotFoundException;
+import splitmindq.caloriecounter.model.User;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserPurgeServiceTest {
+
+    private static final String EMAIL = "user@example.com";
+    private static final int CHUNK = UserPurgeService.INTAKES_PER_CHUNK;
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private DailyIntakeRepository dailyIntakeRepository;
+    @Mock
+    private DailyNutritionTotalsRepository totalsRepository;
+    @Mock
+    private NutritionRollupRepository rollupRepository;
+    @Mock
+    private DailyIntakeCache dailyIntakeCache;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UserPurgeService purgeService;
+
+    @BeforeEach
+    void setUp() {
+        purgeService = new UserPurgeService(userRepository, dailyIntakeRepository, totalsRepository,
+                rollupRepository, dailyIntakeCache, transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        purgeService.shutdown();
+    }
+
+    private static IntakePurgeChunkView chunk(long lastIntakeId, long intakesDeleted, long foodsDeleted) {
+        IntakePurgeChunkView chunk = mock(IntakePurgeChunkView.class);
+        when(chunk.getLastIntakeId()).thenReturn(lastIntakeId);
+        when(chunk.getIntakesDeleted()).thenReturn(intakesDeleted);
+        when(chunk.getFoodsDeleted()).thenReturn(foodsDeleted);
+        return chunk;
+    }
+
+    private static IntakePurgeChunkView emptyChunk() {
+        IntakePurgeChunkView chunk = mock(IntakePurgeChunkView.class);
+        when(chunk.getLastIntakeId()).thenReturn(null);
+        return chunk;
+    }
+
+    private static User markedUser(long id, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        return user;
+    }
+
+    private UserPurgeTaskDto awaitFinished(String taskId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        UserPurgeTaskDto task = purgeService.getTaskStatus(taskId);
+        while (("PENDING".equals(task.getStatus()) || "RUNNING".equals(task.getStatus()))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            task = purgeService.getTaskStatus(taskId);
+        }
+        return task;
+    }
+
+    @Test
+    void schedulePurge_ShouldContinueAfterLastDeletedIdAndStopAtShortChunk() throws InterruptedException {
+        // Arrange
+        IntakePurgeChunkView first = chunk(500L, CHUNK, 1_500L);
+        IntakePurgeChunkView second = chunk(1_000L, CHUNK, 1_400L);
+        IntakePurgeChunkView last = chunk(1_120L, 120L, 300L);
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 0L, CHUNK)).thenReturn(first);
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 500L, CHUNK)).thenReturn(second);
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 1_000L, CHUNK)).thenReturn(last);
+
+        // Act
+        UserPurgeTaskDto task = awaitFinished(purgeService.schedulePurge(1L, EMAIL));
+
+        // Assert
+        assertEquals("COMPLETED", task.getStatus());
+        assertEquals(3, task.getChunksDone());
+        assertEquals(1_120L, task.getIntakesDeleted());
+        assertEquals(3_200L, task.getFoodsDeleted());
+        InOrder order = inOrder(dailyIntakeRepository, totalsRepository, rollupRepository, userRepository,
+                dailyIntakeCache);
+        order.verify(dailyIntakeRepository).purgeIntakeChunk(1L, 0L, CHUNK);
+        order.verify(dailyIntakeRepository).purgeIntakeChunk(1L, 500L, CHUNK);
+        order.verify(dailyIntakeRepository).purgeIntakeChunk(1L, 1_000L, CHUNK);
+        order.verify(dailyIntakeRepository).existsByUserId(1L);
+        order.verify(totalsRepository).deleteAllByUserId(1L);
+        order.verify(rollupRepository).deleteAllByUserId(1L);
+        order.verify(userRepository).deleteById(1L);
+        order.verify(dailyIntakeCache).evictAllUserData(EMAIL);
+        verify(dailyIntakeRepository, times(3)).purgeIntakeChunk(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void schedulePurge_ShouldAskForOneMoreChunk_WhenLastChunkIsFull() throws InterruptedException {
+        // Arrange
+        IntakePurgeChunkView full = chunk(500L, CHUNK, 500L);
+        IntakePurgeChunkView empty = emptyChunk();
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 0L, CHUNK)).thenReturn(full);
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 500L, CHUNK)).thenReturn(empty);
+
+        // Act
+        UserPurgeTaskDto task = awaitFinished(purgeService.schedulePurge(1L, EMAIL));
+
+        // Assert
+        assertEquals("COMPLETED", task.getStatus());
+        assertEquals(1, task.getChunksDone());
+        assertEquals(CHUNK, task.getIntakesDeleted());
+        assertEquals(500L, task.getFoodsDeleted());
+        verify(userRepository).deleteById(1L);
+    }
+
+    @Test
+    void schedulePurge_ShouldRestartPass_WhenIntakesRemainBelowLastDeletedId() throws InterruptedException {
+        // Arrange
+        IntakePurgeChunkView firstPass = chunk(700L, 120L, 360L);
+        // Рацион с id из блока pooled-lo, выданного другому узлу до пометки
+        IntakePurgeChunkView secondPass = chunk(650L, 1L, 2L);
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 0L, CHUNK)).thenReturn(firstPass, secondPass);
+        when(dailyIntakeRepository.existsByUserId(1L)).thenReturn(true, false);
+
+        // Act
+        UserPurgeTaskDto task = awaitFinished(purgeService.schedulePurge(1L, EMAIL));
+
+        // Assert
+        assertEquals("COMPLETED", task.getStatus());
+        assertEquals(2, task.getChunksDone());
+        assertEquals(121L, task.getIntakesDeleted());
+        assertEquals(362L, task.getFoodsDeleted());
+        verify(dailyIntakeRepository, times(2)).purgeIntakeChunk(1L, 0L, CHUNK);
+        verify(totalsRepository).deleteAllByUserId(1L);
+        verify(userRepository).deleteById(1L);
+    }
+
+    @Test
+    void schedulePurge_ShouldKeepUserMarked_WhenChunkFails() throws InterruptedException {
+        // Arrange
+        when(dailyIntakeRepository.purgeIntakeChunk(1L, 0L, CHUNK)).thenThrow(new IllegalStateException("boom"));
+
+        // Act
+        String taskId = purgeService.schedulePurge(1L, EMAIL);
+        UserPurgeTaskDto task = awaitFinished(taskId);
+
+        // Assert
+        assertEquals("FAILED", task.getStatus());
+        verify(userRepository, never()).deleteById(anyLong());
+        // Упавшая задача больше не активна: повторное удаление получает новую
+        assertNotEquals(taskId, purgeService.schedulePurge(1L, EMAIL));
+    }
+
+    @Test
+    void schedulePurge_ShouldReturnActiveTask_WhenUserIsAlreadyBeingPurged() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            String first = purgeService.schedulePurge(1L, EMAIL);
+            String second = purgeService.schedulePurge(1L, EMAIL);
+
+            // Assert
+            assertEquals(first, second);
+            assertEquals("PENDING", purgeService.getTaskStatus(first).getStatus());
+        } finally {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        }
+    }
+
+    @Test
+    void schedulePurge_ShouldCancelTask_WhenTransactionRollsBack() throws InterruptedException {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        String taskId;
+        List<TransactionSynchronization> synchronizations;
+        try {
+            taskId = purgeService.schedulePurge(1L, EMAIL);
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Act
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Assert
+        assertThrows(NotFoundException.class, () -> purgeService.getTaskStatus(taskId));
+        verifyNoInteractions(dailyIntakeRepository, userRepository);
+        // Отмененная задача не мешает поставить новую
+        String retried = purgeService.schedulePurge(1L, EMAIL);
+        assertNotEquals(taskId, retried);
+        assertEquals("COMPLETED", awaitFinished(retried).getStatus());
+    }
+
+    @Test
+    void schedulePurge_ShouldStartTask_WhenTransactionCommits() throws InterruptedException {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+        String taskId;
+        List<TransactionSynchronization> synchronizations;
+        try {
+            taskId = purgeService.schedulePurge(1L, EMAIL);
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verifyNoInteractions(dailyIntakeRepository);
+
+        // Act
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        // Assert
+        assertEquals("COMPLETED", awaitFinished(taskId).getStatus());
+        verify(userRepository).deleteById(1L);
+    }
+
+    @Test
+    void resumePendingPurges_ShouldPurgeEveryMarkedUser_WhenApplicationStarts() {
+        // Arrange
+        when(userRepository.findAllByDeletedAtIsNotNull()).thenReturn(List.of(
+                markedUser(1L, EMAIL), markedUser(2L, "other@example.com")));
+
+        // Act
+        purgeService.resumePendingPurges();
+
+        // Assert
+        verify(userRepository, timeout(10_000)).deleteById(1L);
+        verify(userRepository, timeout(10_000)).deleteById(2L);
+        verify(dailyIntakeCache, timeout(10_000)).evictAllUserData(EMAIL);
+        verify(dailyIntakeCache, timeout(10_000)).evictAllUserData("other@example.com");
+        verify(dailyIntakeRepository).purgeIntakeChunk(1L, 0L, CHUNK);
+        verify(dailyIntakeRepository).purgeIntakeChunk(2L, 0L, CHUNK);
+    }
+}
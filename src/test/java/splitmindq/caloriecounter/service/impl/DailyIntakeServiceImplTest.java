@@ -4,21 +4,41 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.cache.FoodNutrientIndex;
 import splitmindq.caloriecounter.dao.DailyIntakeRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
 import splitmindq.caloriecounter.dao.FoodRepository;
+import splitmindq.caloriecounter.dao.IntakeFoodWeightView;
+import splitmindq.caloriecounter.dao.IntakeFoodRow;
+import splitmindq.caloriecounter.dao.IntakeFoodUpsertView;
+import splitmindq.caloriecounter.dao.NutritionTotalsView;
 import splitmindq.caloriecounter.dao.UserRepository;
 import splitmindq.caloriecounter.dto.DailyNutritionDto;
+import splitmindq.caloriecounter.dto.FoodSnapshot;
+import splitmindq.caloriecounter.dto.IntakeFoodEntryDto;
+import splitmindq.caloriecounter.dto.IntakeFoodSnapshot;
+import splitmindq.caloriecounter.dto.IntakeSnapshot;
+import splitmindq.caloriecounter.dto.PeriodNutritionDto;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
+import splitmindq.caloriecounter.excpetions.ValidationException;
 import splitmindq.caloriecounter.model.*;
+import splitmindq.caloriecounter.requests.AddFoodToDi;
 import splitmindq.caloriecounter.requests.DailyIntakeRequest;
+import splitmindq.caloriecounter.requests.FoodAddResult;
 import splitmindq.caloriecounter.requests.UpdateDailyIntakeRequest;
 import splitmindq.caloriecounter.service.DailyIntakeServiceImpl;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -30,11 +50,17 @@ class DailyIntakeServiceImplAdditionalTest {
     @Mock
     private DailyIntakeRepository dailyIntakeRepository;
     @Mock
+    private DailyNutritionTotalsRepository dailyNutritionTotalsRepository;
+    @Mock
+    private NutritionRollupRepository nutritionRollupRepository;
+    @Mock
     private FoodRepository foodRepository;
     @Mock
     private UserRepository userRepository;
     @Mock
     private DailyIntakeCache dailyIntakeCache;
+    @Mock
+    private FoodNutrientIndex foodNutrientIndex;
 
     @InjectMocks
     private DailyIntakeServiceImpl dailyIntakeService;
@@ -121,71 +147,86 @@ class DailyIntakeServiceImplAdditionalTest {
     @Test
     void addFoodToDailyIntake_WhenEntryExists_ShouldUpdateWeight() {
         // Arrange
-        DailyIntakeFood existingEntry = new DailyIntakeFood();
-        existingEntry.setFood(food);
-        existingEntry.setWeight(100.0);
-        intake.getDailyIntakeFoods().add(existingEntry);
-
-        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
-        when(foodRepository.findById(10L)).thenReturn(Optional.of(food));
-        when(dailyIntakeRepository.save(any(DailyIntake.class))).thenReturn(intake);
+        IntakeFoodUpsertView entry = upsertedEntry(150.0);
+        when(dailyIntakeRepository.upsertFood(1L, 10L, 50.0)).thenReturn(Optional.of(entry));
         doNothing().when(dailyIntakeCache).evictIntakesWithDate(anyString(), any(LocalDate.class));
-        doNothing().when(dailyIntakeCache).evictNutritionData(anyString(), any(LocalDate.class));
 
         // Act
-        DailyIntake result = dailyIntakeService.addFoodToDailyIntake(1L, 10L, 50.0);
+        IntakeFoodEntryDto result = dailyIntakeService.addFoodToDailyIntake(1L, 10L, 50.0);
 
         // Assert
-        assertThat(result).isNotNull();
-        assertThat(result.getDailyIntakeFoods().get(0).getWeight()).isEqualTo(150.0);
+        assertThat(result).isEqualTo(new IntakeFoodEntryDto(1L, 5L, 10L, 150.0));
         verify(dailyIntakeCache).evictIntakesWithDate("test@email.com", date);
-        verify(dailyIntakeCache).evictNutritionData("test@email.com", date);
-        verify(dailyIntakeRepository).save(intake);
+        verify(dailyIntakeCache).evictIntakesWithoutDate("test@email.com");
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, 50.0, 5.0, 2.5, 10.0);
+        verify(nutritionRollupRepository).addDelta(1L, date, 50.0, 5.0, 2.5, 10.0);
+        verify(dailyIntakeCache).applyNutritionDelta("test@email.com", date, 1L,
+                new NutritionTotals(50.0, 5.0, 2.5, 10.0));
+        verify(dailyIntakeCache, never()).evictNutritionData(anyString(), any(LocalDate.class));
+        verify(dailyIntakeRepository, never()).findById(anyLong());
+        verify(dailyIntakeRepository, never()).save(any());
     }
 
     @Test
     void addFoodToDailyIntake_WhenEntryNotExists_ShouldAddNewEntry() {
         // Arrange
-        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
-        when(foodRepository.findById(10L)).thenReturn(Optional.of(food));
-        when(dailyIntakeRepository.save(any(DailyIntake.class))).thenReturn(intake);
+        IntakeFoodUpsertView entry = upsertedEntry(50.0);
+        when(dailyIntakeRepository.upsertFood(1L, 10L, 50.0)).thenReturn(Optional.of(entry));
         doNothing().when(dailyIntakeCache).evictIntakesWithDate(anyString(), any(LocalDate.class));
-        doNothing().when(dailyIntakeCache).evictNutritionData(anyString(), any(LocalDate.class));
 
         // Act
-        DailyIntake result = dailyIntakeService.addFoodToDailyIntake(1L, 10L, 50.0);
+        IntakeFoodEntryDto result = dailyIntakeService.addFoodToDailyIntake(1L, 10L, 50.0);
 
         // Assert
-        assertThat(result).isNotNull();
-        assertThat(result.getDailyIntakeFoods()).hasSize(1);
-        assertThat(result.getDailyIntakeFoods().get(0).getWeight()).isEqualTo(50.0);
-        assertThat(result.getDailyIntakeFoods().get(0).getFood()).isEqualTo(food);
+        assertThat(result.getWeight()).isEqualTo(50.0);
+        assertThat(result.getFoodId()).isEqualTo(10L);
         verify(dailyIntakeCache).evictIntakesWithDate("test@email.com", date);
-        verify(dailyIntakeCache).evictNutritionData("test@email.com", date);
-        verify(dailyIntakeRepository).save(intake);
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, 50.0, 5.0, 2.5, 10.0);
+        verify(nutritionRollupRepository).addDelta(1L, date, 50.0, 5.0, 2.5, 10.0);
+        verify(dailyIntakeCache).applyNutritionDelta("test@email.com", date, 1L,
+                new NutritionTotals(50.0, 5.0, 2.5, 10.0));
+        verify(dailyIntakeCache, never()).evictNutritionData(anyString(), any(LocalDate.class));
+        verify(dailyIntakeRepository, never()).save(any());
     }
 
     @Test
     void addFoodToDailyIntake_WhenIntakeNotFound_ShouldThrowException() {
         // Arrange
-        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.empty());
+        when(dailyIntakeRepository.upsertFood(1L, 10L, 50.0)).thenReturn(Optional.empty());
+        when(dailyIntakeRepository.existsByIdAndUserDeletedAtIsNull(1L)).thenReturn(false);
 
         // Act & Assert
         assertThatThrownBy(() -> dailyIntakeService.addFoodToDailyIntake(1L, 10L, 50.0))
                 .isInstanceOf(ResourceNotFoundException.class)
                 .hasMessage("DailyIntake not found");
+        verifyNoInteractions(dailyIntakeCache, dailyNutritionTotalsRepository);
     }
 
     @Test
     void addFoodToDailyIntake_WhenFoodNotFound_ShouldThrowException() {
         // Arrange
-        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
-        when(foodRepository.findById(10L)).thenReturn(Optional.empty());
+        when(dailyIntakeRepository.upsertFood(1L, 10L, 50.0)).thenReturn(Optional.empty());
+        when(dailyIntakeRepository.existsByIdAndUserDeletedAtIsNull(1L)).thenReturn(true);
 
         // Act & Assert
         assertThatThrownBy(() -> dailyIntakeService.addFoodToDailyIntake(1L, 10L, 50.0))
                 .isInstanceOf(ResourceNotFoundException.class)
                 .hasMessage("Food not found");
+        verifyNoInteractions(dailyIntakeCache, dailyNutritionTotalsRepository);
+    }
+
+    private IntakeFoodUpsertView upsertedEntry(double totalWeight) {
+        IntakeFoodUpsertView entry = mock(IntakeFoodUpsertView.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        when(entry.getEntryId()).thenReturn(5L);
+        when(entry.getWeight()).thenReturn(totalWeight);
+        when(entry.getUserId()).thenReturn(1L);
+        when(entry.getEmail()).thenReturn("test@email.com");
+        when(entry.getEpochDay()).thenReturn((int) date.toEpochDay());
+        when(entry.getCalories()).thenReturn(food.getCalories());
+        when(entry.getProtein()).thenReturn(food.getProtein());
+        when(entry.getFats()).thenReturn(food.getFats());
+        when(entry.getCarbs()).thenReturn(food.getCarbs());
+        return entry;
     }
 
     @Test
@@ -227,7 +268,7 @@ class DailyIntakeServiceImplAdditionalTest {
         request.setFoodEntries(List.of(new FoodEntry(10L, 200.0)));
 
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-        when(foodRepository.findById(10L)).thenReturn(Optional.of(food));
+        when(foodRepository.findAllById(Set.of(10L))).thenReturn(List.of(food));
         when(dailyIntakeRepository.save(any(DailyIntake.class))).thenReturn(intake);
 
         // Act
@@ -240,6 +281,11 @@ class DailyIntakeServiceImplAdditionalTest {
         assertThat(result.getDailyIntakeFoods().get(0).getFood()).isEqualTo(food);
         assertThat(result.getDailyIntakeFoods().get(0).getWeight()).isEqualTo(200.0);
         verify(dailyIntakeRepository).save(any(DailyIntake.class));
+        verify(foodRepository, never()).findById(anyLong());
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, 200.0, 20.0, 10.0, 40.0);
+        verify(nutritionRollupRepository).addDelta(1L, date, 200.0, 20.0, 10.0, 40.0);
+        verify(dailyIntakeCache).applyNutritionDelta("test@email.com", date, 1L,
+                new NutritionTotals(200.0, 20.0, 10.0, 40.0));
     }
 
     @Test
@@ -253,7 +299,7 @@ class DailyIntakeServiceImplAdditionalTest {
         ));
 
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-        when(foodRepository.findById(10L)).thenReturn(Optional.of(food));
+        when(foodRepository.findAllById(Set.of(10L))).thenReturn(List.of(food));
         when(dailyIntakeRepository.save(any(DailyIntake.class))).thenReturn(intake);
 
         // Act
@@ -274,24 +320,22 @@ class DailyIntakeServiceImplAdditionalTest {
         request.setFoodEntries(List.of(new FoodEntry(10L, 200.0)));
 
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
-        when(foodRepository.findById(10L)).thenReturn(Optional.empty());
+        when(foodRepository.findAllById(Set.of(10L))).thenReturn(List.of());
 
         // Act & Assert
         assertThatThrownBy(() -> dailyIntakeService.createDailyIntake(request))
                 .isInstanceOf(RuntimeException.class)
                 .hasMessage("Food not found");
+        verify(dailyIntakeRepository, never()).save(any());
     }
 
     @Test
     void getDailyNutrition_WhenCachedDataExists_ShouldReturnCachedData() {
         // Arrange
-        Map<String, Double> nutrition = new HashMap<>();
-        nutrition.put("calories", 1000.0);
-        nutrition.put("protein", 50.0);
-        nutrition.put("fats", 30.0);
-        nutrition.put("carbs", 120.0);
+        NutritionTotals nutrition = new NutritionTotals(1000.0, 50.0, 30.0, 120.0);
 
-        when(dailyIntakeCache.getNutritionData("test@email.com", date)).thenReturn(Optional.of(nutrition));
+        when(dailyIntakeCache.getOrLoadNutritionData(eq("test@email.com"), eq(date), any()))
+                .thenReturn(Optional.of(nutrition));
 
         // Act
         DailyNutritionDto result = dailyIntakeService.getDailyNutrition("test@email.com", date);
@@ -302,23 +346,21 @@ class DailyIntakeServiceImplAdditionalTest {
         assertThat(result.getProtein()).isEqualTo(50.0);
         assertThat(result.getFats()).isEqualTo(30.0);
         assertThat(result.getCarbs()).isEqualTo(120.0);
-        verify(dailyIntakeCache).getNutritionData("test@email.com", date);
+        verify(dailyIntakeCache).getOrLoadNutritionData(eq("test@email.com"), eq(date), any());
         verifyNoInteractions(dailyIntakeRepository);
     }
 
     @Test
     void getDailyNutrition_WhenNotCached_ShouldCalculateAndCache() {
         // Arrange
-        Map<String, Double> nutrition = new HashMap<>();
-        nutrition.put("calories", 1000.0);
-        nutrition.put("protein", 50.0);
-        nutrition.put("fats", 30.0);
-        nutrition.put("carbs", 120.0);
+        NutritionTotalsView nutrition = mock(NutritionTotalsView.class);
+        when(nutrition.toTotals()).thenReturn(new NutritionTotals(1000.0, 50.0, 30.0, 120.0));
 
-        when(dailyIntakeCache.getNutritionData("test@email.com", date)).thenReturn(Optional.empty());
+        when(dailyIntakeCache.getOrLoadNutritionData(eq("test@email.com"), eq(date), any()))
+                .thenAnswer(invocation -> Optional.ofNullable(
+                        invocation.<Supplier<NutritionTotals>>getArgument(2).get()));
         when(dailyIntakeRepository.calculateDailyNutrition("test@email.com", date))
                 .thenReturn(Optional.of(nutrition));
-        doNothing().when(dailyIntakeCache).putNutritionData(anyString(), any(LocalDate.class), anyMap());
 
         // Act
         DailyNutritionDto result = dailyIntakeService.getDailyNutrition("test@email.com", date);
@@ -330,13 +372,14 @@ class DailyIntakeServiceImplAdditionalTest {
         assertThat(result.getFats()).isEqualTo(30.0);
         assertThat(result.getCarbs()).isEqualTo(120.0);
         verify(dailyIntakeRepository).calculateDailyNutrition("test@email.com", date);
-        verify(dailyIntakeCache).putNutritionData("test@email.com", date, nutrition);
     }
 
     @Test
     void getDailyNutrition_WhenNoData_ShouldThrowResourceNotFoundException() {
         // Arrange
-        when(dailyIntakeCache.getNutritionData("test@email.com", date)).thenReturn(Optional.empty());
+        when(dailyIntakeCache.getOrLoadNutritionData(eq("test@email.com"), eq(date), any()))
+                .thenAnswer(invocation -> Optional.ofNullable(
+                        invocation.<Supplier<NutritionTotals>>getArgument(2).get()));
         when(dailyIntakeRepository.calculateDailyNutrition("test@email.com", date)).thenReturn(Optional.empty());
 
         // Act & Assert
@@ -345,95 +388,161 @@ class DailyIntakeServiceImplAdditionalTest {
                 .hasMessage("Nutrition data not found");
     }
 
+    @Test
+    void getDailyNutrition_WhenTotalsRoundToZero_ShouldTreatDayAsEmpty() {
+        // Arrange
+        // Остаток после прибавления и вычитания одних и тех же порций
+        NutritionTotalsView nutrition = mock(NutritionTotalsView.class);
+        when(nutrition.toTotals()).thenReturn(new NutritionTotals(1e-12, -1e-12, 0.0, 2e-13));
+        AtomicReference<NutritionTotals> loaded = new AtomicReference<>(NutritionTotals.ZERO);
+        when(dailyIntakeCache.getOrLoadNutritionData(eq("test@email.com"), eq(date), any()))
+                .thenAnswer(invocation -> {
+                    loaded.set(invocation.<Supplier<NutritionTotals>>getArgument(2).get());
+                    return Optional.ofNullable(loaded.get());
+                });
+        when(dailyIntakeRepository.calculateDailyNutrition("test@email.com", date))
+                .thenReturn(Optional.of(nutrition));
+
+        // Act
+        DailyNutritionDto result = dailyIntakeService.getDailyNutrition("test@email.com", date);
+
+        // Assert
+        assertThat(loaded.get()).isNull();
+        assertThat(result).isNull();
+    }
+
     @Test
     void getUserIntakes_WithDateAndCachedData_ShouldReturnCachedIntakes() {
         // Arrange
-        List<DailyIntake> intakes = List.of(intake);
-        when(dailyIntakeCache.getIntakesWithDate("test@email.com", date)).thenReturn(Optional.of(intakes));
+        List<IntakeSnapshot> intakes = List.of(new IntakeSnapshot(1L, date, List.of()));
+        when(dailyIntakeCache.getOrLoadIntakesWithDate(eq("test@email.com"), eq(date), any()))
+                .thenReturn(intakes);
 
         // Act
-        List<DailyIntake> result = dailyIntakeService.getUserIntakes("test@email.com", date);
+        List<IntakeSnapshot> result = dailyIntakeService.getUserIntakes("test@email.com", date);
 
         // Assert
         assertThat(result).isEqualTo(intakes);
-        verify(dailyIntakeCache).getIntakesWithDate("test@email.com", date);
+        verify(dailyIntakeCache).getOrLoadIntakesWithDate(eq("test@email.com"), eq(date), any());
         verifyNoInteractions(dailyIntakeRepository);
     }
 
     @Test
     void getUserIntakes_WithDateAndNotCached_ShouldFetchAndCache() {
         // Arrange
-        List<DailyIntake> intakes = List.of(intake);
-        when(dailyIntakeCache.getIntakesWithDate("test@email.com", date)).thenReturn(Optional.empty());
-        when(dailyIntakeRepository.findUserIntakesWithDate("test@email.com", date)).thenReturn(intakes);
-        doNothing().when(dailyIntakeCache).putIntakesWithDate(anyString(), any(LocalDate.class), anyList());
+        when(dailyIntakeCache.getOrLoadIntakesWithDate(eq("test@email.com"), eq(date), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<List<IntakeSnapshot>>>getArgument(2).get());
+        when(dailyIntakeRepository.findIntakeRowsWithDate("test@email.com", date)).thenReturn(List.of(
+                new IntakeFoodRow("test@email.com", 1L, date, 5L, 150.0, 10L, "Apple", 100.0, 10.0, 5.0, 20.0),
+                new IntakeFoodRow("test@email.com", 2L, date, null, null, null, null, null, null, null, null)));
 
         // Act
-        List<DailyIntake> result = dailyIntakeService.getUserIntakes("test@email.com", date);
+        List<IntakeSnapshot> result = dailyIntakeService.getUserIntakes("test@email.com", date);
 
         // Assert
-        assertThat(result).isEqualTo(intakes);
-        verify(dailyIntakeRepository).findUserIntakesWithDate("test@email.com", date);
-        verify(dailyIntakeCache).putIntakesWithDate("test@email.com", date, intakes);
+        assertThat(result).containsExactly(
+                new IntakeSnapshot(1L, date, List.of(new IntakeFoodSnapshot(5L,
+                        new FoodSnapshot(10L, "Apple", 100.0, 10.0, 5.0, 20.0), 150.0))),
+                new IntakeSnapshot(2L, date, List.of()));
+        verify(dailyIntakeRepository).findIntakeRowsWithDate("test@email.com", date);
     }
 
     @Test
     void getUserIntakes_WithoutDateAndCachedData_ShouldReturnCachedIntakes() {
         // Arrange
-        List<DailyIntake> intakes = List.of(intake);
-        when(dailyIntakeCache.getIntakesWithoutDate("test@email.com")).thenReturn(Optional.of(intakes));
+        List<IntakeSnapshot> intakes = List.of(new IntakeSnapshot(1L, date, List.of()));
+        when(dailyIntakeCache.getOrLoadIntakesWithoutDate(eq("test@email.com"), any())).thenReturn(intakes);
 
         // Act
-        List<DailyIntake> result = dailyIntakeService.getUserIntakes("test@email.com", null);
+        List<IntakeSnapshot> result = dailyIntakeService.getUserIntakes("test@email.com", null);
 
         // Assert
         assertThat(result).isEqualTo(intakes);
-        verify(dailyIntakeCache).getIntakesWithoutDate("test@email.com");
+        verify(dailyIntakeCache).getOrLoadIntakesWithoutDate(eq("test@email.com"), any());
         verifyNoInteractions(dailyIntakeRepository);
     }
 
     @Test
     void getUserIntakes_WithoutDateAndNotCached_ShouldFetchAndCache() {
         // Arrange
-        List<DailyIntake> intakes = List.of(intake);
-        when(dailyIntakeCache.getIntakesWithoutDate("test@email.com")).thenReturn(Optional.empty());
-        when(dailyIntakeRepository.findUserIntakesWithoutDate("test@email.com")).thenReturn(intakes);
-        doNothing().when(dailyIntakeCache).putIntakesWithoutDate(anyString(), anyList());
+        when(dailyIntakeCache.getOrLoadIntakesWithoutDate(eq("test@email.com"), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<List<IntakeSnapshot>>>getArgument(1).get());
+        when(dailyIntakeRepository.findIntakeRowsWithoutDate("test@email.com")).thenReturn(List.of(
+                new IntakeFoodRow("test@email.com", 1L, date, 5L, 150.0, 10L, "Apple", 100.0, 10.0, 5.0, 20.0),
+                new IntakeFoodRow("test@email.com", 1L, date, 6L, 50.0, 11L, "Bread", 250.0, 8.0, 3.0, 50.0)));
 
         // Act
-        List<DailyIntake> result = dailyIntakeService.getUserIntakes("test@email.com", null);
+        List<IntakeSnapshot> result = dailyIntakeService.getUserIntakes("test@email.com", null);
 
         // Assert
-        assertThat(result).isEqualTo(intakes);
-        verify(dailyIntakeRepository).findUserIntakesWithoutDate("test@email.com");
-        verify(dailyIntakeCache).putIntakesWithoutDate("test@email.com", intakes);
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).dailyIntakeFoods())
+                .extracting(IntakeFoodSnapshot::id)
+                .containsExactly(5L, 6L);
+        verify(dailyIntakeRepository).findIntakeRowsWithoutDate("test@email.com");
     }
 
     @Test
     void updateDailyIntake_WhenExistingFoodId_ShouldUpdateWeight() {
         // Arrange
-        DailyIntakeFood existingEntry = new DailyIntakeFood();
-        existingEntry.setFood(food);
-        existingEntry.setWeight(100.0);
-        intake.getDailyIntakeFoods().add(existingEntry);
-
         UpdateDailyIntakeRequest request = new UpdateDailyIntakeRequest();
         request.setFoodIds(List.of(10L));
         request.setWeights(List.of(200.0));
 
         when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
-        when(dailyIntakeRepository.save(any(DailyIntake.class))).thenReturn(intake);
+        when(dailyIntakeRepository.lockIntakes(List.of(1L))).thenReturn(1L);
+        List<IntakeFoodWeightView> rows = List.of(weightRow(10L, 100.0));
+        when(dailyIntakeRepository.findFoodWeightsByIntakeIds(List.of(1L))).thenReturn(rows);
+        NutritionTotalsView before = totalsView(new NutritionTotals(100.0, 10.0, 5.0, 20.0));
+        NutritionTotalsView after = totalsView(new NutritionTotals(200.0, 20.0, 10.0, 40.0));
+        when(dailyIntakeRepository.calculateNutritionForIntake(1L))
+                .thenReturn(Optional.of(before), Optional.of(after));
         doNothing().when(dailyIntakeCache).evictIntakesWithDate(anyString(), any(LocalDate.class));
-        doNothing().when(dailyIntakeCache).evictNutritionData(anyString(), any(LocalDate.class));
 
         // Act
         dailyIntakeService.updateDailyIntake(1L, request);
 
         // Assert
-        assertThat(intake.getDailyIntakeFoods().get(0).getWeight()).isEqualTo(200.0);
-        verify(dailyIntakeRepository).save(intake);
+        verify(dailyIntakeRepository).updateFoodWeights(1L, Map.of(10L, 200.0));
+        verify(dailyIntakeRepository, never()).deleteFoods(anyLong(), anyCollection());
+        verify(dailyIntakeRepository, never()).insertFoods(anyLong(), anyMap());
+        verify(dailyIntakeRepository, never()).save(any());
         verify(dailyIntakeCache).evictIntakesWithDate("test@email.com", date);
-        verify(dailyIntakeCache).evictNutritionData("test@email.com", date);
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, 100.0, 10.0, 5.0, 20.0);
+        verify(nutritionRollupRepository).addDelta(1L, date, 100.0, 10.0, 5.0, 20.0);
+        verify(dailyIntakeCache).applyNutritionDelta("test@email.com", date, 1L,
+                new NutritionTotals(100.0, 10.0, 5.0, 20.0));
+        verify(dailyIntakeCache, never()).evictNutritionData(anyString(), any(LocalDate.class));
+    }
+
+    @Test
+    void updateDailyIntake_ShouldApplyDiffWithOneStatementPerKind() {
+        // Arrange
+        UpdateDailyIntakeRequest request = new UpdateDailyIntakeRequest();
+        request.setFoodIds(List.of(10L, 12L, 12L));
+        request.setWeights(List.of(100.0, 20.0, 30.0));
+
+        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
+        when(dailyIntakeRepository.lockIntakes(List.of(1L))).thenReturn(1L);
+        List<IntakeFoodWeightView> rows = List.of(weightRow(10L, 100.0), weightRow(11L, 40.0));
+        when(dailyIntakeRepository.findFoodWeightsByIntakeIds(List.of(1L))).thenReturn(rows);
+        Food newFood = new Food();
+        newFood.setId(12L);
+        when(foodRepository.findAllById(Set.of(12L))).thenReturn(List.of(newFood));
+        NutritionTotalsView before = totalsView(new NutritionTotals(140.0, 10.0, 5.0, 20.0));
+        NutritionTotalsView after = totalsView(new NutritionTotals(150.0, 10.0, 5.0, 20.0));
+        when(dailyIntakeRepository.calculateNutritionForIntake(1L))
+                .thenReturn(Optional.of(before), Optional.of(after));
+
+        // Act
+        dailyIntakeService.updateDailyIntake(1L, request);
+
+        // Assert
+        verify(dailyIntakeRepository).deleteFoods(1L, List.of(11L));
+        verify(dailyIntakeRepository).insertFoods(1L, Map.of(12L, 50.0));
+        verify(dailyIntakeRepository, never()).updateFoodWeights(anyLong(), anyMap());
+        verify(foodRepository, never()).findById(anyLong());
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, 10.0, 0.0, 0.0, 0.0);
     }
 
     @Test
@@ -444,11 +553,249 @@ class DailyIntakeServiceImplAdditionalTest {
         request.setWeights(List.of(200.0));
 
         when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
-        when(foodRepository.findById(10L)).thenReturn(Optional.empty());
+        when(dailyIntakeRepository.lockIntakes(List.of(1L))).thenReturn(1L);
+        when(dailyIntakeRepository.findFoodWeightsByIntakeIds(List.of(1L))).thenReturn(List.of());
+        when(foodRepository.findAllById(Set.of(10L))).thenReturn(List.of());
 
         // Act & Assert
         assertThatThrownBy(() -> dailyIntakeService.updateDailyIntake(1L, request))
                 .isInstanceOf(ResourceNotFoundException.class)
                 .hasMessage("Food not found");
+        verify(dailyIntakeRepository, never()).insertFoods(anyLong(), anyMap());
+        verifyNoInteractions(dailyIntakeCache, dailyNutritionTotalsRepository);
+    }
+
+    @Test
+    void updateDailyIntake_WhenFoodWasAddedConcurrently_ShouldReadWeightsAfterLockAndTakeDeltaFromDatabase() {
+        // Arrange
+        UpdateDailyIntakeRequest request = new UpdateDailyIntakeRequest();
+        request.setFoodIds(List.of(10L));
+        request.setWeights(List.of(100.0));
+
+        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
+        when(dailyIntakeRepository.lockIntakes(List.of(1L))).thenReturn(1L);
+        // Продукт 12 добавлен параллельным upsertFood, зафиксированным до блокировки
+        List<IntakeFoodWeightView> rows = List.of(weightRow(10L, 100.0), weightRow(12L, 30.0));
+        when(dailyIntakeRepository.findFoodWeightsByIntakeIds(List.of(1L))).thenReturn(rows);
+        NutritionTotalsView before = totalsView(new NutritionTotals(175.0, 12.0, 6.0, 30.0));
+        NutritionTotalsView after = totalsView(new NutritionTotals(100.0, 10.0, 5.0, 20.0));
+        when(dailyIntakeRepository.calculateNutritionForIntake(1L))
+                .thenReturn(Optional.of(before), Optional.of(after));
+
+        // Act
+        dailyIntakeService.updateDailyIntake(1L, request);
+
+        // Assert
+        InOrder order = inOrder(dailyIntakeRepository);
+        order.verify(dailyIntakeRepository).lockIntakes(List.of(1L));
+        order.verify(dailyIntakeRepository).findFoodWeightsByIntakeIds(List.of(1L));
+        order.verify(dailyIntakeRepository).calculateNutritionForIntake(1L);
+        order.verify(dailyIntakeRepository).deleteFoods(1L, List.of(12L));
+        order.verify(dailyIntakeRepository).calculateNutritionForIntake(1L);
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, -75.0, -2.0, -1.0, -10.0);
+        verify(dailyIntakeCache).applyNutritionDelta("test@email.com", date, 1L,
+                new NutritionTotals(-75.0, -2.0, -1.0, -10.0));
+        verifyNoInteractions(foodNutrientIndex);
+    }
+
+    @Test
+    void updateDailyIntake_WhenIntakeDisappearsBeforeLock_ShouldThrowException() {
+        // Arrange
+        UpdateDailyIntakeRequest request = new UpdateDailyIntakeRequest();
+        request.setFoodIds(List.of(10L));
+        request.setWeights(List.of(100.0));
+        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
+        when(dailyIntakeRepository.lockIntakes(List.of(1L))).thenReturn(0L);
+
+        // Act & Assert
+        assertThatThrownBy(() -> dailyIntakeService.updateDailyIntake(1L, request))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("DailyIntake not found");
+        verify(dailyIntakeRepository, never()).findFoodWeightsByIntakeIds(anyCollection());
+    }
+
+    @Test
+    void updateDailyIntake_WhenUserIsMarkedDeleted_ShouldThrowException() {
+        // Arrange
+        user.setDeletedAt(LocalDateTime.now());
+        UpdateDailyIntakeRequest request = new UpdateDailyIntakeRequest();
+        request.setFoodIds(List.of(10L));
+        request.setWeights(List.of(100.0));
+        when(dailyIntakeRepository.findById(1L)).thenReturn(Optional.of(intake));
+
+        // Act & Assert
+        assertThatThrownBy(() -> dailyIntakeService.updateDailyIntake(1L, request))
+                .isInstanceOf(ResourceNotFoundException.class)
+                .hasMessage("DailyIntake not found");
+        verify(dailyIntakeRepository, never()).lockIntakes(anyCollection());
+        verifyNoInteractions(dailyIntakeCache, dailyNutritionTotalsRepository);
+    }
+
+    private static NutritionTotalsView totalsView(NutritionTotals totals) {
+        NutritionTotalsView view = mock(NutritionTotalsView.class);
+        when(view.toTotals()).thenReturn(totals);
+        return view;
+    }
+
+    private static IntakeFoodWeightView weightRow(long foodId, double weight) {
+        IntakeFoodWeightView row = mock(IntakeFoodWeightView.class);
+        when(row.getFoodId()).thenReturn(foodId);
+        when(row.getWeight()).thenReturn(weight);
+        return row;
+    }
+
+    @Test
+    void getNutritionRange_ByWeek_ShouldUseRollupsForFullWeeksAndDaysForEdges() {
+        // Arrange
+        LocalDate from = LocalDate.of(2025, 4, 23);
+        LocalDate to = LocalDate.of(2025, 5, 6);
+        NutritionRollup fullWeek = new NutritionRollup();
+        fullWeek.setUserId(1L);
+        fullWeek.setGranularity(NutritionGranularity.WEEK);
+        fullWeek.setPeriodStart(LocalDate.of(2025, 4, 28));
+        fullWeek.setCalories(1400.0);
+        fullWeek.setProtein(70.0);
+        fullWeek.setFats(35.0);
+        fullWeek.setCarbs(140.0);
+        DailyNutritionTotal firstDay = new DailyNutritionTotal();
+        firstDay.setDate(LocalDate.of(2025, 4, 23));
+        firstDay.setCalories(100.0);
+        DailyNutritionTotal secondDay = new DailyNutritionTotal();
+        secondDay.setDate(LocalDate.of(2025, 4, 27));
+        secondDay.setCalories(50.25);
+
+        when(nutritionRollupRepository.findRange("test@email.com", NutritionGranularity.WEEK,
+                LocalDate.of(2025, 4, 28), LocalDate.of(2025, 5, 5))).thenReturn(List.of(fullWeek));
+        when(dailyNutritionTotalsRepository.findRange("test@email.com", from, LocalDate.of(2025, 4, 27)))
+                .thenReturn(List.of(firstDay, secondDay));
+        when(dailyNutritionTotalsRepository.findRange("test@email.com", LocalDate.of(2025, 5, 5), to))
+                .thenReturn(List.of());
+
+        // Act
+        List<PeriodNutritionDto> result = dailyIntakeService.getNutritionRange(
+                "test@email.com", from, to, NutritionGranularity.WEEK);
+
+        // Assert
+        assertThat(result).containsExactly(
+                new PeriodNutritionDto(from, LocalDate.of(2025, 4, 27), 150.3, 0.0, 0.0, 0.0),
+                new PeriodNutritionDto(LocalDate.of(2025, 4, 28), LocalDate.of(2025, 5, 4), 1400.0, 70.0, 35.0, 140.0),
+                new PeriodNutritionDto(LocalDate.of(2025, 5, 5), to, 0.0, 0.0, 0.0, 0.0));
+    }
+
+    @Test
+    void getNutritionRange_WhenFromAfterTo_ShouldThrowValidationException() {
+        // Act & Assert
+        assertThatThrownBy(() -> dailyIntakeService.getNutritionRange("test@email.com",
+                LocalDate.of(2025, 5, 2), LocalDate.of(2025, 5, 1), NutritionGranularity.MONTH))
+                .isInstanceOf(ValidationException.class);
+        verifyNoInteractions(dailyNutritionTotalsRepository, nutritionRollupRepository);
+    }
+
+    @Test
+    void getNutritionForIntakes_ShouldLoadOnlyCacheMissesInOneQuery() {
+        // Arrange
+        IntakeFoodWeightView row = mock(IntakeFoodWeightView.class);
+        List<IntakeFoodWeightView> rows = List.of(row);
+        when(dailyIntakeRepository.findFoodWeightsByIntakeIds(Set.of(2L, 3L))).thenReturn(rows);
+        when(foodNutrientIndex.totalsByIntake(rows))
+                .thenReturn(new HashMap<>(Map.of(2L, new NutritionTotals(200.0, 20.0, 10.0, 40.0))));
+        when(dailyIntakeCache.getOrLoadNutritionDataForIntakes(eq(List.of(1L, 2L, 3L)), any()))
+                .thenAnswer(invocation -> {
+                    Function<Collection<Long>, Map<Long, NutritionTotals>> loader = invocation.getArgument(1);
+                    Map<Long, NutritionTotals> result = new HashMap<>(loader.apply(Set.of(2L, 3L)));
+                    result.put(1L, new NutritionTotals(100.0, 10.0, 5.0, 20.0));
+                    return result;
+                });
+
+        // Act
+        Map<Long, DailyNutritionDto> result = dailyIntakeService.getNutritionForIntakes(List.of(1L, 2L, 3L));
+
+        // Assert
+        assertThat(result).containsExactly(
+                entry(1L, new DailyNutritionDto(100.0, 10.0, 5.0, 20.0)),
+                entry(2L, new DailyNutritionDto(200.0, 20.0, 10.0, 40.0)));
+        verify(dailyIntakeRepository).findFoodWeightsByIntakeIds(Set.of(2L, 3L));
+    }
+
+    @Test
+    void getNutritionForIntakes_WhenTotalsRoundToZero_ShouldSkipIntakeLikeSingleIntakePath() {
+        // Arrange
+        IntakeFoodWeightView row = mock(IntakeFoodWeightView.class);
+        List<IntakeFoodWeightView> rows = List.of(row);
+        when(dailyIntakeRepository.findFoodWeightsByIntakeIds(Set.of(1L, 2L))).thenReturn(rows);
+        when(foodNutrientIndex.totalsByIntake(rows)).thenReturn(new HashMap<>(Map.of(
+                1L, new NutritionTotals(0.04, 0.01, 0.0, 0.03),
+                2L, new NutritionTotals(0.05, 0.0, 0.0, 0.0))));
+        AtomicReference<Map<Long, NutritionTotals>> loaded = new AtomicReference<>();
+        when(dailyIntakeCache.getOrLoadNutritionDataForIntakes(eq(List.of(1L, 2L)), any()))
+                .thenAnswer(invocation -> {
+                    Function<Collection<Long>, Map<Long, NutritionTotals>> loader = invocation.getArgument(1);
+                    loaded.set(loader.apply(Set.of(1L, 2L)));
+                    return loaded.get();
+                });
+
+        // Act
+        Map<Long, DailyNutritionDto> result = dailyIntakeService.getNutritionForIntakes(List.of(1L, 2L));
+
+        // Assert
+        assertThat(result).containsOnlyKeys(2L);
+        assertThat(result.get(2L)).isEqualTo(new DailyNutritionDto(0.1, 0.0, 0.0, 0.0));
+        // Нулевой после округления рацион не кэшируется, как и в getNutritionForIntake
+        assertThat(loaded.get()).containsOnlyKeys(2L);
+    }
+
+    @Test
+    void addFoodsToDailyIntakes_WhenUserIsMarkedDeleted_ShouldRejectRequests() {
+        // Arrange
+        user.setDeletedAt(LocalDateTime.now());
+        AddFoodToDi request = new AddFoodToDi();
+        request.setDailyIntakeId(1L);
+        request.setFoodId(10L);
+        request.setWeight(50.0);
+        when(dailyIntakeRepository.findAllById(Set.of(1L))).thenReturn(List.of(intake));
+        when(foodRepository.findAllById(Set.of(10L))).thenReturn(List.of(food));
+
+        // Act
+        List<FoodAddResult> results = dailyIntakeService.addFoodsToDailyIntakes(List.of(request));
+
+        // Assert
+        assertThat(results).extracting(FoodAddResult::isSuccess).containsExactly(false);
+        verify(dailyIntakeRepository, never()).addFoods(anyMap());
+        verifyNoInteractions(dailyIntakeCache, dailyNutritionTotalsRepository);
+    }
+
+    @Test
+    void addFoodsToDailyIntakes_ShouldMergeAndApplyOneDeltaPerIntake() {
+        // Arrange
+        AddFoodToDi first = new AddFoodToDi();
+        first.setDailyIntakeId(1L);
+        first.setFoodId(10L);
+        first.setWeight(50.0);
+        AddFoodToDi second = new AddFoodToDi();
+        second.setDailyIntakeId(1L);
+        second.setFoodId(10L);
+        second.setWeight(100.0);
+        AddFoodToDi missingFood = new AddFoodToDi();
+        missingFood.setDailyIntakeId(1L);
+        missingFood.setFoodId(99L);
+        missingFood.setWeight(10.0);
+
+        when(dailyIntakeRepository.findAllById(Set.of(1L))).thenReturn(List.of(intake));
+        when(foodRepository.findAllById(Set.of(10L, 99L))).thenReturn(List.of(food));
+
+        // Act
+        List<FoodAddResult> results = dailyIntakeService.addFoodsToDailyIntakes(
+                List.of(first, second, missingFood));
+
+        // Assert
+        assertThat(results).extracting(FoodAddResult::isSuccess).containsExactly(true, true, false);
+        InOrder order = inOrder(dailyIntakeRepository);
+        order.verify(dailyIntakeRepository).lockIntakes(Set.of(1L));
+        order.verify(dailyIntakeRepository).addFoods(Map.of(1L, Map.of(10L, 150.0)));
+        verify(dailyNutritionTotalsRepository).addDelta(1L, date, 150.0, 15.0, 7.5, 30.0);
+        verify(dailyIntakeCache).applyNutritionDelta("test@email.com", date, 1L,
+                new NutritionTotals(150.0, 15.0, 7.5, 30.0));
+        verify(dailyIntakeRepository, never()).saveAll(anyList());
+        verify(dailyIntakeRepository, never()).findById(anyLong());
     }
-}
\ No newline at end of file
+}
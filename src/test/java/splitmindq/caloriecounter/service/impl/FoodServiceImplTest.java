@@ -7,19 +7,23 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataIntegrityViolationException;
 import splitmindq.caloriecounter.cache.DailyIntakeCache;
+import splitmindq.caloriecounter.cache.FoodNutrientIndex;
+import splitmindq.caloriecounter.cache.UserDateKey;
+import splitmindq.caloriecounter.dao.AffectedIntakeView;
 import splitmindq.caloriecounter.dao.DailyIntakeFoodRepository;
+import splitmindq.caloriecounter.dao.DailyNutritionTotalsRepository;
+import splitmindq.caloriecounter.dao.NutritionRollupRepository;
 import splitmindq.caloriecounter.dao.FoodRepository;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
-import splitmindq.caloriecounter.model.DailyIntake;
-import splitmindq.caloriecounter.model.DailyIntakeFood;
+import splitmindq.caloriecounter.model.DailyNutritionTotal;
 import splitmindq.caloriecounter.model.Food;
-import splitmindq.caloriecounter.model.User;
 import splitmindq.caloriecounter.service.FoodServiceImpl;
 
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -34,9 +38,17 @@ class FoodServiceImplTest {
     @Mock
     private DailyIntakeFoodRepository dailyIntakeFoodRepository;
 
+    @Mock
+    private DailyNutritionTotalsRepository dailyNutritionTotalsRepository;
+    @Mock
+    private NutritionRollupRepository nutritionRollupRepository;
+
     @Mock
     private DailyIntakeCache dailyIntakeCache;
 
+    @Mock
+    private FoodNutrientIndex foodNutrientIndex;
+
     @InjectMocks
     private FoodServiceImpl foodService;
 
@@ -48,6 +60,7 @@ class FoodServiceImplTest {
         foodService.createFood(food);
 
         verify(foodRepository).save(food);
+        verify(foodNutrientIndex).onFoodSaved(food);
     }
 
     @Test
@@ -97,6 +110,9 @@ class FoodServiceImplTest {
         foodService.updateFood(1L, updatedFood);
 
         verify(foodRepository).save(existingFood);
+        verify(dailyNutritionTotalsRepository).recomputeDaysWithFood(1L);
+        verify(foodNutrientIndex).onFoodSaved(existingFood);
+        verify(nutritionRollupRepository).refreshForFood(1L);
         assertEquals("New Name", existingFood.getName());
         assertEquals(100, existingFood.getCalories());
     }
@@ -141,7 +157,7 @@ class FoodServiceImplTest {
     @Test
     void deleteFood_WhenNoRelations_ShouldJustDeleteFood() {
         // Настройка mock-объектов
-        when(dailyIntakeFoodRepository.findByFoodId(1L)).thenReturn(List.of());
+        when(dailyIntakeFoodRepository.removeFoodFromIntakes(1L)).thenReturn(List.of());
 
         // Выполнение тестируемого метода
         boolean result = foodService.deleteFood(1L);
@@ -154,19 +170,20 @@ class FoodServiceImplTest {
 
         // Проверка удаления еды
         verify(foodRepository).deleteById(1L);
+        verify(foodNutrientIndex).onFoodDeleted(1L);
     }
 
     @Test
     void deleteFood_ShouldHandleEmptyRelations() {
-        when(dailyIntakeFoodRepository.findByFoodId(1L)).thenReturn(List.of());
+        when(dailyIntakeFoodRepository.removeFoodFromIntakes(1L)).thenReturn(List.of());
 
         boolean result = foodService.deleteFood(1L);
 
         assertTrue(result);
-        verify(dailyIntakeCache, never()).evictIntakesWithDate(any(), any());
-        verify(dailyIntakeCache, never()).evictNutritionData(any(), any());
-        verify(dailyIntakeFoodRepository).deleteAll(List.of());
+        verify(dailyIntakeCache, never()).evictIntakeData(any(), any());
+        verify(nutritionRollupRepository, never()).refreshForDays(any());
         verify(foodRepository).deleteById(1L);
+        verify(foodNutrientIndex).onFoodDeleted(1L);
     }
 
     @Test
@@ -198,33 +215,94 @@ class FoodServiceImplTest {
 
     @Test
     void deleteFood_WithRelations_ShouldDeleteRelationsAndEvictCache() {
-        // Setup mock data
-        Food food = new Food();
-        food.setId(1L);
-
-        DailyIntakeFood dailyIntakeFood = new DailyIntakeFood();
-        DailyIntake dailyIntake = new DailyIntake();
-        User user = new User();
-        user.setEmail("test@example.com");
-        dailyIntake.setUser(user);
-        dailyIntake.setCreationDate(LocalDate.of(2023, 10, 15));
-        dailyIntakeFood.setDailyIntake(dailyIntake);
-
-        List<DailyIntakeFood> dailyIntakeFoods = List.of(dailyIntakeFood);
-
-        // Mock repository and cache behavior
-        when(dailyIntakeFoodRepository.findByFoodId(1L)).thenReturn(dailyIntakeFoods);
+        // Два рациона одного дня и рацион другого пользователя
+        LocalDate date = LocalDate.of(2023, 10, 15);
+        AffectedIntakeView first = affectedIntake(5L, 2L, "test@example.com", date);
+        AffectedIntakeView second = affectedIntake(6L, 2L, "test@example.com", date);
+        AffectedIntakeView other = affectedIntake(7L, 3L, "other@example.com", date);
+        when(dailyIntakeFoodRepository.removeFoodFromIntakes(1L)).thenReturn(List.of(first, second, other));
 
         // Execute the method
         boolean result = foodService.deleteFood(1L);
 
         // Assertions
         assertTrue(result);
-        verify(dailyIntakeFoodRepository).findByFoodId(1L);
-        verify(dailyIntakeFoodRepository).deleteAll(dailyIntakeFoods);
+        verify(nutritionRollupRepository).refreshForDays(Set.of(
+                new DailyNutritionTotal.Key(2L, date),
+                new DailyNutritionTotal.Key(3L, date)));
+        verify(dailyIntakeCache).evictIntakeData(
+                Set.of(new UserDateKey("test@example.com", date), new UserDateKey("other@example.com", date)),
+                List.of(5L, 6L, 7L));
+        verify(dailyIntakeCache, never()).evictIntakesWithDate(any(), any());
+        verify(dailyIntakeFoodRepository, never()).findByFoodId(any());
+        verifyNoInteractions(dailyNutritionTotalsRepository);
         verify(foodRepository).deleteById(1L);
-        verify(dailyIntakeCache).evictIntakesWithDate("test@example.com", LocalDate.of(2023, 10, 15));
-        verify(dailyIntakeCache).evictNutritionData("test@example.com", LocalDate.of(2023, 10, 15));
+        verify(foodNutrientIndex).onFoodDeleted(1L);
+    }
+
+    @Test
+    void updateFood_ShouldEvictAffectedDaysInOneBatch_WhenNutritionChanged() {
+        // Arrange
+        Food existingFood = new Food();
+        existingFood.setId(1L);
+        existingFood.setName("Apple");
+        existingFood.setCalories(50);
+
+        Food updatedFood = new Food();
+        updatedFood.setName("Apple");
+        updatedFood.setCalories(60);
+
+        LocalDate date = LocalDate.of(2023, 10, 15);
+        AffectedIntakeView first = affectedIntake(5L, "test@example.com", date);
+        AffectedIntakeView second = affectedIntake(6L, "test@example.com", date.plusDays(1));
+        when(foodRepository.findById(1L)).thenReturn(Optional.of(existingFood));
+        when(dailyNutritionTotalsRepository.recomputeDaysWithFood(1L)).thenReturn(List.of(first, second));
+
+        // Act
+        foodService.updateFood(1L, updatedFood);
+
+        // Assert
+        verify(foodRepository).flush();
+        verify(nutritionRollupRepository).refreshForFood(1L);
+        verify(dailyIntakeCache).evictIntakeData(
+                Set.of(new UserDateKey("test@example.com", date), new UserDateKey("test@example.com", date.plusDays(1))),
+                List.of(5L, 6L));
+        verify(dailyIntakeCache, never()).evictIntakesWithDate(any(), any());
+        verifyNoInteractions(dailyIntakeFoodRepository);
+    }
+
+    @Test
+    void updateFood_ShouldNotRecomputeTotals_WhenOnlyNameChanged() {
+        // Arrange
+        Food existingFood = new Food();
+        existingFood.setId(1L);
+        existingFood.setName("Apple");
+
+        Food updatedFood = new Food();
+        updatedFood.setName("Green Apple");
+
+        when(foodRepository.findById(1L)).thenReturn(Optional.of(existingFood));
+        when(foodRepository.existsByName("Green Apple")).thenReturn(false);
+
+        // Act
+        foodService.updateFood(1L, updatedFood);
+
+        // Assert
+        verify(foodRepository).save(existingFood);
+        verifyNoInteractions(dailyNutritionTotalsRepository, nutritionRollupRepository, dailyIntakeCache);
+    }
+
+    private static AffectedIntakeView affectedIntake(long intakeId, long userId, String email, LocalDate date) {
+        AffectedIntakeView intake = affectedIntake(intakeId, email, date);
+        when(intake.getUserId()).thenReturn(userId);
+        return intake;
+    }
+
+    private static AffectedIntakeView affectedIntake(long intakeId, String email, LocalDate date) {
+        AffectedIntakeView intake = mock(AffectedIntakeView.class);
+        when(intake.getIntakeId()).thenReturn(intakeId);
+        when(intake.getEmail()).thenReturn(email);
+        when(intake.getDate()).thenReturn(date);
+        return intake;
     }
-    
 }
\ No newline at end of file
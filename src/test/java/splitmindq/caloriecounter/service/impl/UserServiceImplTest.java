@@ -8,12 +8,13 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataIntegrityViolationException;
 import splitmindq.caloriecounter.cache.DailyIntakeCache;
-import splitmindq.caloriecounter.dao.DailyIntakeRepository;
 import splitmindq.caloriecounter.dao.UserRepository;
 import splitmindq.caloriecounter.excpetions.ResourceNotFoundException;
 import splitmindq.caloriecounter.model.User;
+import splitmindq.caloriecounter.service.UserPurgeService;
 import splitmindq.caloriecounter.service.UserServiceImpl;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -31,7 +32,7 @@ class UserServiceImplTest {
     private UserRepository userRepository;
 
     @Mock
-    private DailyIntakeRepository dailyIntakeRepository;
+    private UserPurgeService userPurgeService;
 
     @Mock
     private DailyIntakeCache dailyIntakeCache;
@@ -45,7 +46,7 @@ class UserServiceImplTest {
         User user1 = new User();
         User user2 = new User();
         List<User> expectedUsers = Arrays.asList(user1, user2);
-        when(userRepository.findAll()).thenReturn(expectedUsers);
+        when(userRepository.findAllByDeletedAtIsNull()).thenReturn(expectedUsers);
 
         // Act
         List<User> result = userService.findAllUsers();
@@ -53,7 +54,7 @@ class UserServiceImplTest {
         // Assert
         assertEquals(2, result.size());
         assertEquals(expectedUsers, result);
-        verify(userRepository).findAll();
+        verify(userRepository).findAllByDeletedAtIsNull();
     }
 
     @Test
@@ -98,38 +99,74 @@ class UserServiceImplTest {
     }
 
     @Test
-    void deleteUser_ShouldReturnTrueAndDelete_WhenUserExists() {
+    void findUserById_ShouldReturnNull_WhenUserMarkedDeleted() {
+        // Arrange
+        User deletedUser = new User();
+        deletedUser.setId(1L);
+        deletedUser.setDeletedAt(LocalDateTime.now());
+        when(userRepository.findById(1L)).thenReturn(Optional.of(deletedUser));
+
+        // Act
+        User result = userService.findUserById(1L);
+
+        // Assert
+        assertNull(result);
+    }
+
+    @Test
+    void deleteUser_ShouldMarkDeletedAndSchedulePurge_WhenUserExists() {
         // Arrange
         User user = new User();
         user.setId(1L);
         user.setEmail("user@example.com");
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(userPurgeService.schedulePurge(1L, "user@example.com")).thenReturn("task-1");
 
         // Act
-        boolean result = userService.deleteUser(1L);
+        String result = userService.deleteUser(1L);
 
         // Assert
-        assertTrue(result);
-        verify(dailyIntakeRepository).deleteAllDailyIntakeFoodByUserId(1L);
-        verify(dailyIntakeRepository).deleteAllByUserId(1L);
+        assertEquals("task-1", result);
+        assertNotNull(user.getDeletedAt());
+        verify(userRepository).save(user);
         verify(dailyIntakeCache).evictAllUserData("user@example.com");
-        verify(userRepository).delete(user);
+        verify(userRepository, never()).delete(any());
     }
 
     @Test
-    void deleteUser_ShouldReturnFalse_WhenUserNotExists() {
+    void deleteUser_ShouldReturnNull_WhenUserNotExists() {
         // Arrange
         when(userRepository.findById(1L)).thenReturn(Optional.empty());
 
         // Act
-        boolean result = userService.deleteUser(1L);
+        String result = userService.deleteUser(1L);
 
         // Assert
-        assertFalse(result);
-        verify(dailyIntakeRepository, never()).deleteAllDailyIntakeFoodByUserId(anyLong());
-        verify(dailyIntakeRepository, never()).deleteAllByUserId(anyLong());
+        assertNull(result);
+        verify(userPurgeService, never()).schedulePurge(anyLong(), anyString());
+        verify(dailyIntakeCache, never()).evictAllUserData(anyString());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void deleteUser_ShouldReturnPurgeTask_WhenUserAlreadyMarkedDeleted() {
+        // Arrange
+        User user = new User();
+        user.setId(1L);
+        user.setEmail("user@example.com");
+        LocalDateTime deletedAt = LocalDateTime.now().minusHours(1);
+        user.setDeletedAt(deletedAt);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(userPurgeService.schedulePurge(1L, "user@example.com")).thenReturn("task-1");
+
+        // Act
+        String result = userService.deleteUser(1L);
+
+        // Assert
+        assertEquals("task-1", result);
+        assertEquals(deletedAt, user.getDeletedAt());
+        verify(userRepository, never()).save(any());
         verify(dailyIntakeCache, never()).evictAllUserData(anyString());
-        verify(userRepository, never()).delete(any());
     }
 
     @Test
@@ -155,6 +192,7 @@ class UserServiceImplTest {
         assertEquals("New", existingUser.getFirstName());
         assertEquals("Name", existingUser.getLastName());
         verify(dailyIntakeCache).evictAllUserData("old@example.com");
+        verify(dailyIntakeCache).evictAllUserData("new@example.com");
         verify(userRepository).save(existingUser);
     }
 